@@ -0,0 +1,109 @@
+package benchmarks.jmh;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import actions.Actions;
+import actions.EnvelopeActions;
+import data.Database;
+import dataObjects.Envelope;
+import tickets.ResponseTicket;
+
+/*
+ * The action hot paths, each parameterized by envelope count and backend (see Envelopes).
+ * Every call goes through the public action, so it includes its unit of work and commit, and looks its envelopes up
+ * by name first the way the UI does.
+ * 	java -jar jmh/target/benchmarks.jar ActionsBenchmark -p envelopes=100 -p backend=memory
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActionsBenchmark {
+
+	private static final BigDecimal amount = new BigDecimal("1.00");
+
+	@Benchmark
+	public ResponseTicket depositSingle(Envelopes state) {
+		return Actions.Deposit(Database.getEnvelope(state.first()), amount);
+	}
+
+	//spread over every envelope by its fill setting
+	@Benchmark
+	public ResponseTicket depositAll(Envelopes state) {
+		return Actions.Deposit(null, amount);
+	}
+
+	//alternates direction so neither envelope runs dry
+	@Benchmark
+	public ResponseTicket transfer(Envelopes state, Toggle toggle) {
+		String from = toggle.next() ? state.first() : state.last();
+		String to = from.equals(state.first()) ? state.last() : state.first();
+		return Actions.Transfer(Database.getEnvelope(from), Database.getEnvelope(to), amount);
+	}
+
+	//moves the last envelope to the top and back, renumbering every envelope in between
+	@Benchmark
+	public ResponseTicket setPriority(Envelopes state, Toggle toggle) {
+		ResponseTicket response = new ResponseTicket();
+		EnvelopeActions.setPriority(response, Database.getEnvelope(state.last()), toggle.next() ? 1 : state.envelopes);
+		return response;
+	}
+
+	@Benchmark
+	public ResponseTicket validate(Envelopes state) {
+		return Actions.validate();
+	}
+
+	//empties the first envelope, then cascades through withdrawFromAll from the lowest priority up
+	@Benchmark
+	public ResponseTicket withdraw(Envelopes state, Withdrawal withdrawal) {
+		return Actions.Withdraw("", withdrawal.envelope, withdrawal.amount);
+	}
+
+	@State(Scope.Thread)
+	public static class Toggle {
+
+		private boolean forward = false;
+
+		boolean next() {
+			forward = !forward;
+			return forward;
+		}
+	}
+
+	/*
+	 * Puts back what the last withdraw took before each call, so every call cascades the same way:
+	 * $100 from the first envelope, none from the default (there isn't one), then $100, $100 and $50 from the three lowest priorities.
+	 */
+	@State(Scope.Thread)
+	public static class Withdrawal {
+
+		private static final int cascade = 3;
+
+		final BigDecimal amount = new BigDecimal("350.00");
+		Envelope envelope;
+
+		@Setup(Level.Invocation)
+		public void refill(Envelopes state) {
+			Database.editAmount(state.first(), Envelopes.startingAmount);
+			for(int index = state.envelopes - cascade; index < state.envelopes; index++) {
+				Database.editAmount(Envelopes.name(index), Envelopes.startingAmount);
+			}
+			envelope = Database.getEnvelope(state.first());
+		}
+	}
+}
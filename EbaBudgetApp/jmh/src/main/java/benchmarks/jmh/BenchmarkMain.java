@@ -0,0 +1,50 @@
+package benchmarks.jmh;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/*
+ * Runs JMH with its usual options, saving the results as JSON unless another result format is asked for.
+ * The file is named after the commit being measured, jmh-results/<commit>.json, so runs on two commits can be compared:
+ * 	java -jar jmh/target/benchmarks.jar DatabaseBenchmark -p rows=10000
+ * Outside a git checkout, or with -Deba.commit=<name>, the name is used instead.
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		List<String> options = new ArrayList<>(Arrays.asList(args));
+		if(!options.contains("-rf") && !options.contains("-h") && !options.contains("-l")) {
+			Path results = Paths.get("jmh-results", commit() + ".json");
+			Files.createDirectories(results.getParent());
+			options.addAll(List.of("-rf", "json", "-rff", results.toString()));
+			System.out.println("Results will be saved to " + results.toAbsolutePath());
+		}
+		Main.main(options.toArray(new String[0]));
+	}
+
+	private static String commit() {
+		String name = System.getProperty("eba.commit");
+		if(name != null) return name;
+		try {
+			Process git = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").redirectErrorStream(true).start();
+			try(BufferedReader output = new BufferedReader(new InputStreamReader(git.getInputStream()))) {
+				String line = output.readLine();
+				if(git.waitFor() == 0 && line != null && !line.isBlank()) return line.trim();
+			}
+		} catch(IOException e) {
+			//no git on the path
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return "results";
+	}
+}
@@ -0,0 +1,77 @@
+package benchmarks.jmh;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.Database;
+import dataObjects.Envelope;
+import settings.EnvelopeSettings;
+
+/*
+ * The first call after the store was closed: no pooled connections, no prepared statements, no SQLite page cache
+ * and an empty envelope cache, so a read pays for opening the database and loading the cache.
+ * The operating system's file cache is still warm, the file was just written.
+ * One call per iteration (single shot), the store is closed before each one.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 50)
+@Fork(1)
+public class ColdDatabaseBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Closed {
+
+		private boolean toggle = false;
+
+		@Setup(Level.Iteration)
+		public void close(DatabaseFile database) {
+			database.store.close();
+		}
+
+		BigDecimal amount() {
+			toggle = !toggle;
+			return toggle ? new BigDecimal("101.00") : Envelopes.startingAmount;
+		}
+	}
+
+	@Benchmark
+	public List<Envelope> getEnvelopes(DatabaseFile database, Closed closed) {
+		return Database.getEnvelopes();
+	}
+
+	@Benchmark
+	public Envelope getEnvelope(DatabaseFile database, Closed closed) {
+		return Database.getEnvelope(database.middle());
+	}
+
+	@Benchmark
+	public Envelope getEnvelopeByPriority(DatabaseFile database, Closed closed) {
+		return Database.getEnvelopeByPriority(database.rows / 2 + 1);
+	}
+
+	@Benchmark
+	public BigDecimal getBalance(DatabaseFile database, Closed closed) {
+		return Database.getBalance();
+	}
+
+	@Benchmark
+	public boolean editEnvelope(DatabaseFile database, Closed closed) {
+		String name = database.middle();
+		return Database.editEnvelope(name, name, database.rows / 2 + 1, closed.amount(), EnvelopeSettings.amount, 10, false, 0, false, false);
+	}
+}
@@ -0,0 +1,203 @@
+package benchmarks.jmh;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.Database;
+import data.UnitOfWork;
+import dataObjects.Envelope;
+import dataObjects.LedgerEntry;
+import settings.EnvelopeSettings;
+
+/*
+ * Every Database method on a scratch SQLite file (see DatabaseFile), with the connections and statements already open.
+ * 	cache warm: reads answered by the envelope cache, loaded before the first call
+ * 	cache off: every read is a query, against SQLite's own page cache
+ * Single row and bulk versions of each write: one envelope in its own transaction, or batch envelopes in one.
+ * ColdDatabaseBenchmark measures the first call after the store was closed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+
+	private static final int batch = 100;
+
+	@State(Scope.Benchmark)
+	public static class Cache {
+
+		@Param({"warm", "off"})
+		public String cache;
+
+		@Setup(Level.Trial)
+		public void apply(DatabaseFile database) {
+			boolean warm = cache.equals("warm");
+			database.store.setCacheEnabled(warm);
+			if(warm) database.store.reloadCache();
+		}
+	}
+
+	//reads
+
+	@Benchmark
+	public List<Envelope> getEnvelopes(DatabaseFile database, Cache cache) {
+		return Database.getEnvelopes();
+	}
+
+	@Benchmark
+	public List<Envelope> getEnvelopesByPriority(DatabaseFile database, Cache cache) {
+		return Database.getEnvelopesByPriority();
+	}
+
+	@Benchmark
+	public Envelope getEnvelope(DatabaseFile database, Cache cache) {
+		return Database.getEnvelope(database.middle());
+	}
+
+	@Benchmark
+	public Envelope getEnvelopeByPriority(DatabaseFile database, Cache cache) {
+		return Database.getEnvelopeByPriority(database.rows / 2 + 1);
+	}
+
+	@Benchmark
+	public boolean hasEnvelope(DatabaseFile database, Cache cache) {
+		return Database.hasEnvelope(database.middle());
+	}
+
+	@Benchmark
+	public BigDecimal getBalance(DatabaseFile database, Cache cache) {
+		return Database.getBalance();
+	}
+
+	//there is no default envelope, so both look through the whole table
+	@Benchmark
+	public Envelope getDefault(DatabaseFile database, Cache cache) {
+		return Database.getDefault();
+	}
+
+	@Benchmark
+	public Envelope getExtra(DatabaseFile database, Cache cache) {
+		return Database.getExtra();
+	}
+
+	@Benchmark
+	public List<LedgerEntry> getHistory(DatabaseFile database, Cache cache) {
+		return Database.getHistory(database.middle());
+	}
+
+	@Benchmark
+	public List<LedgerEntry> getLedger(DatabaseFile database, Cache cache) {
+		return Database.getLedger(0, batch);
+	}
+
+	//writes -- each changes the amount back and forth so the table stays the same size
+
+	@Benchmark
+	public boolean editAmount(DatabaseFile database, Cache cache, Amounts amounts) {
+		return Database.editAmount(database.middle(), amounts.next());
+	}
+
+	@Benchmark
+	public boolean editEnvelope(DatabaseFile database, Cache cache, Amounts amounts) {
+		String name = database.middle();
+		return Database.editEnvelope(name, name, database.rows / 2 + 1, amounts.next(), EnvelopeSettings.amount, 10, false, 0, false, false);
+	}
+
+	//setAmount outside a unit of work saves the envelope straight away, through Database.updateEnvelope
+	@Benchmark
+	public Envelope updateEnvelope(Cache cache, Amounts amounts) {
+		amounts.single.setAmount(amounts.next());
+		return amounts.single;
+	}
+
+	//the unit of work saves them all with one Database.updateEnvelopes when it commits
+	@Benchmark
+	public List<Envelope> updateEnvelopes(Cache cache, Amounts amounts) {
+		BigDecimal amount = amounts.next();
+		UnitOfWork.run("benchmark", () -> {
+			for(Envelope e : amounts.bulk) {
+				e.setAmount(amount);
+			}
+		});
+		return amounts.bulk;
+	}
+
+	@Benchmark
+	public List<Envelope> addEnvelope(Cache cache, Scratch scratch) {
+		Database.addEnvelope(scratch.envelopes.get(0));
+		return scratch.envelopes;
+	}
+
+	@Benchmark
+	public boolean addEnvelopes(Cache cache, Scratch scratch) {
+		return Database.addEnvelopes(scratch.envelopes);
+	}
+
+	@State(Scope.Thread)
+	public static class Amounts {
+
+		private static final BigDecimal[] values = {new BigDecimal("100.00"), new BigDecimal("101.00")};
+
+		private int next = 0;
+		Envelope single;
+		List<Envelope> bulk;
+
+		//the envelopes to update, fetched once like a screen holding on to what it shows
+		@Setup(Level.Trial)
+		public void load(DatabaseFile database) {
+			single = Database.getEnvelope(database.middle());
+			bulk = new ArrayList<>(batch);
+			for(int index = 0; index < Math.min(batch, database.rows); index++) {
+				bulk.add(Database.getEnvelope(Envelopes.name(index)));
+			}
+		}
+
+		BigDecimal next() {
+			next ^= 1;
+			return values[next];
+		}
+	}
+
+	/*
+	 * New envelopes for the add benchmarks, removed again after every call so the table keeps its size.
+	 * Removing them is not timed.
+	 */
+	@State(Scope.Thread)
+	public static class Scratch {
+
+		List<Envelope> envelopes;
+
+		@Setup(Level.Invocation)
+		public void create(DatabaseFile database) {
+			envelopes = new ArrayList<>(batch);
+			for(int index = 0; index < batch; index++) {
+				envelopes.add(new Envelope(database.rows + index + 1, "scratch " + index, Envelopes.startingAmount, EnvelopeSettings.amount, 10, false, 0, false, false));
+			}
+		}
+
+		@TearDown(Level.Invocation)
+		public void remove() {
+			for(Envelope e : envelopes) {
+				if(Database.hasEnvelope(e.getName())) Database.removeEnvelope(e.getName());
+			}
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package benchmarks.jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import data.Database;
+import data.DurabilityProfile;
+import data.SqliteEnvelopeStore;
+
+/*
+ * A scratch SQLite file in the temp directory, filled with envelopes the same way as Envelopes, for each trial.
+ * 	rows: envelopes in the table, any count can be given with -p rows=...
+ * 	pragmas: "default" for SQLite's own settings (rollback journal, full sync), otherwise a DurabilityProfile
+ */
+@State(Scope.Benchmark)
+public class DatabaseFile {
+
+	@Param({"1000", "10000", "100000"})
+	public int rows;
+
+	@Param({"default", "safe", "balanced", "throughput"})
+	public String pragmas;
+
+	SqliteEnvelopeStore store;
+	private Path file;
+
+	@Setup(Level.Trial)
+	public void open() throws IOException {
+		file = Files.createTempFile("eba-jmh-", ".db");
+		store = new SqliteEnvelopeStore("jdbc:sqlite:" + file);
+		store.setDurabilityProfile(pragmas.equals("default") ? null : DurabilityProfile.named(pragmas));
+		Database.useStore(store);
+		Database.createNewDatabase();
+		Envelopes.add(rows);
+	}
+
+	@TearDown(Level.Trial)
+	public void close() throws IOException {
+		Database.useStore(null);
+		Envelopes.delete(file);
+	}
+
+	//an envelope in the middle of the table, away from whatever is first or last in the file
+	public String middle() {
+		return Envelopes.name(rows / 2);
+	}
+}
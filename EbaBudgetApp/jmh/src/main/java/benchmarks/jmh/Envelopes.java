@@ -0,0 +1,98 @@
+package benchmarks.jmh;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import data.Database;
+import data.InMemoryEnvelopeStore;
+import data.SqliteEnvelopeStore;
+import dataObjects.Envelope;
+import settings.EnvelopeSettings;
+
+/*
+ * A fresh database of envelopes for each trial, on a scratch file or in memory, never the real database.
+ * Every envelope starts with $100.00 and an amount fill setting of $10, in priority order "envelope 0" first.
+ */
+@State(Scope.Benchmark)
+public class Envelopes {
+
+	public static final BigDecimal startingAmount = new BigDecimal("100.00");
+
+	@Param({"10", "100", "1000", "10000"})
+	public int envelopes;
+
+	//sqlite: a scratch database file with the durability profile from DatabaseSettings, memory: InMemoryEnvelopeStore
+	@Param({"sqlite", "memory"})
+	public String backend;
+
+	private Path file;
+
+	@Setup(Level.Trial)
+	public void open() throws IOException {
+		switch(backend) {
+			case "sqlite": {
+				file = Files.createTempFile("eba-jmh-", ".db");
+				Database.useStore(new SqliteEnvelopeStore("jdbc:sqlite:" + file));
+			} break;
+			case "memory": {
+				Database.useStore(new InMemoryEnvelopeStore());
+			} break;
+			default: throw new IllegalArgumentException("Unknown backend " + backend);
+		}
+		Database.createNewDatabase();
+
+		add(envelopes);
+	}
+
+	@TearDown(Level.Trial)
+	public void close() throws IOException {
+		Database.useStore(null);
+		if(file != null) {
+			delete(file);
+			file = null;
+		}
+	}
+
+	//adds count envelopes, named and in priority order as described above
+	static void add(int count) {
+		List<Envelope> list = new ArrayList<>(count);
+		for(int index = 0; index < count; index++) {
+			list.add(new Envelope(index + 1, name(index), startingAmount, EnvelopeSettings.amount, 10, false, 0, false, false));
+		}
+		if(!Database.addEnvelopes(list)) {
+			throw new IllegalStateException("Could not add " + count + " envelopes");
+		}
+	}
+
+	//a scratch database file and the files SQLite keeps next to it
+	static void delete(Path file) throws IOException {
+		Files.deleteIfExists(file);
+		Files.deleteIfExists(Paths.get(file + "-wal"));
+		Files.deleteIfExists(Paths.get(file + "-shm"));
+		Files.deleteIfExists(Paths.get(file + "-journal"));
+	}
+
+	public static String name(int index) {
+		return "envelope " + index;
+	}
+
+	public String first() {
+		return name(0);
+	}
+
+	public String last() {
+		return name(envelopes - 1);
+	}
+}
@@ -0,0 +1,4 @@
+package benchmarks.jmh.jmh_generated;
+public class ActionsBenchmark_Withdrawal_jmhType extends ActionsBenchmark_Withdrawal_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package benchmarks.jmh.jmh_generated;
+public class ActionsBenchmark_jmhType extends ActionsBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package benchmarks.jmh.jmh_generated;
+public class ColdDatabaseBenchmark_Closed_jmhType extends ColdDatabaseBenchmark_Closed_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package benchmarks.jmh.jmh_generated;
+public class DatabaseBenchmark_Amounts_jmhType extends DatabaseBenchmark_Amounts_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package benchmarks.jmh.jmh_generated;
+public class DatabaseBenchmark_Scratch_jmhType extends DatabaseBenchmark_Scratch_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package benchmarks.jmh.jmh_generated;
+public class DatabaseBenchmark_jmhType extends DatabaseBenchmark_jmhType_B3 {
+}
+
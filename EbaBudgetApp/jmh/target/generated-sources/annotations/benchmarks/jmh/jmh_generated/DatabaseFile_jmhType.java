@@ -0,0 +1,4 @@
+package benchmarks.jmh.jmh_generated;
+public class DatabaseFile_jmhType extends DatabaseFile_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package benchmarks.jmh.jmh_generated;
+public class Envelopes_jmhType extends Envelopes_jmhType_B3 {
+}
+
@@ -3,6 +3,9 @@ package UI;
 import java.awt.*;
 import java.awt.event.*;
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 import javax.swing.*;
 
@@ -15,6 +18,7 @@ import settings.EnvelopeSettings;
 import settings.UISettings;
 import tickets.ResponseTicket;
 import data.Database;
+import data.WriteQueue;
 
 
 public class PrototypeUI extends JFrame implements UISettings{
@@ -221,7 +225,8 @@ public class PrototypeUI extends JFrame implements UISettings{
 
 	private static void createBody() throws Exception {
 		
-		int numOfEnvelopes = Database.getEnvelopes().size();
+		List<Envelope> envelopes = Database.getEnvelopesByPriority();
+		int numOfEnvelopes = envelopes.size();
 		removeAll(bodyPanel);
 		//panel
 		bodyPanel.setLayout(new GridLayout(numOfEnvelopes,5,0,0));
@@ -234,7 +239,7 @@ public class PrototypeUI extends JFrame implements UISettings{
 		for(int index = 1; index <= numOfEnvelopes; index++) {
 //			System.out.println("" + index);
 			//envelope
-			Envelope envelope = Database.getEnvelopeByPriority(index);
+			Envelope envelope = envelopes.get(index - 1);
 			
 			//priority
 			Label priority;
@@ -313,15 +318,27 @@ public class PrototypeUI extends JFrame implements UISettings{
 	}
 
 
+	//runs a write on the database writer thread so the window never waits on the disk, then validates and redraws
+	//the operation names the write in the transactions ledger, the writer commits it with whatever else is queued
+	//the returned future completes on the event dispatch thread once the write is saved
+	public static CompletableFuture<ResponseTicket> save(String operation, Supplier<ResponseTicket> action) {
+		return WriteQueue.submit(operation, action).whenComplete((response, error) -> {
+			if(error != null) System.out.println("Failed to save: " + error.getMessage());
+			else response.printMessages();
+			update();
+		});
+	}
+
 	//saves info and updates center panel
 	public static void update() {
-		ResponseTicket response = Actions.validate();
-		response.printMessages();
-		
-//		tempInfo.save();
-		
-		updateFrame();
-
+		WriteQueue.submit("validate", Actions::validate).whenComplete((response, error) -> {
+			if(error != null) System.out.println("Failed to validate: " + error.getMessage());
+			else response.printMessages();
+			
+//			tempInfo.save();
+			
+			updateFrame();
+		});
 	}
 	
 	public static void updateFrame() {
@@ -25,6 +25,7 @@ import dataObjects.Envelope;
 import settings.EnvelopeSettings;
 import settings.UISettings;
 import settings.textFilters;
+import tickets.ResponseTicket;
 
 public class addEnvelopeUI extends JFrame implements ActionListener, UISettings{
 
@@ -290,14 +291,13 @@ public class addEnvelopeUI extends JFrame implements ActionListener, UISettings{
 		}
 
 		
-		//create envelope
-		int priority = Database.getEnvelopes().size() + 1;
-		Envelope envelope = new Envelope(priority, name, BigDecimal.ZERO, fill, fillAmount, cap, capAmount, extra, Default);
-		Database.addEnvelope(envelope);
-
-		
-		//update
-		PrototypeUI.update();
+		//create envelope -- last priority counted on the writer thread, after any add still queued ahead of this one
+		int setting = fill;
+		PrototypeUI.save("add", () -> {
+			int priority = Database.getEnvelopes().size() + 1;
+			Database.addEnvelope(new Envelope(priority, name, BigDecimal.ZERO, setting, fillAmount, cap, capAmount, extra, Default));
+			return new ResponseTicket();
+		});
 		
 		
 		//dispose
@@ -18,11 +18,11 @@ import java.util.List;
 import javax.swing.*;
 
 import actions.Actions;
+import actions.EnvelopeSnapshot;
 import data.Database;
 import dataObjects.Envelope;
 import settings.UISettings;
 import settings.textFilters;
-import tickets.ResponseTicket;
 
 public class depositUI extends JFrame implements ActionListener, UISettings{
 
@@ -33,6 +33,9 @@ public class depositUI extends JFrame implements ActionListener, UISettings{
 	@SuppressWarnings("rawtypes")
 	private JComboBox envList;
 	private TextField amount;
+	//where the amount typed would go, updated on every keystroke
+	private Label preview;
+	private EnvelopeSnapshot snapshot;
 
 	
 	public depositUI(int x, int y) {
@@ -76,17 +79,19 @@ public class depositUI extends JFrame implements ActionListener, UISettings{
 
 
 		//envelope list
-		List<Envelope> env = Database.getEnvelopes();
+		List<Envelope> env = Database.getEnvelopesByPriority();
 		String[] envelopes = new String[env.size() + 1];
 		envelopes[0] = "";
 		for(int index = 1; index < env.size() + 1; index++) {
-			envelopes[index] = Database.getEnvelopeByPriority(index).getName();
+			envelopes[index] = env.get(index - 1).getName();
 		}
 		envList = new JComboBox(envelopes);
 		envList.setSelectedIndex(0);
 		envList.setSize(dropListWidth, dropListHeight);
 		envList.setMaximumSize(new Dimension(dropListWidth, dropListHeight));
 		envList.setPreferredSize(new Dimension(dropListWidth, dropListHeight));
+		envList.addActionListener(e -> updatePreview());
+		snapshot = new EnvelopeSnapshot(env);
 
 
 		//amount text field
@@ -109,13 +114,16 @@ public class depositUI extends JFrame implements ActionListener, UISettings{
 
 			@Override
 			public void keyReleased(KeyEvent e) {
-				// TODO Auto-generated method stub
-
+				updatePreview();
 			}
 
 		});
 
 
+		//preview label
+		preview = new Label();
+
+
 		//submit button
 		Button submit = new Button("Submit");
 		submit.addActionListener(this);
@@ -139,6 +147,14 @@ public class depositUI extends JFrame implements ActionListener, UISettings{
 		p3.add(Box.createHorizontalGlue());
 
 
+		//preview
+		Panel previewPanel = new Panel();
+		previewPanel.setLayout(new BoxLayout(previewPanel, BoxLayout.LINE_AXIS));
+		previewPanel.add(Box.createHorizontalStrut(5));
+		previewPanel.add(preview);
+		previewPanel.add(Box.createHorizontalGlue());
+
+
 		//submit button
 		Panel p4 = new Panel();
 		p4.setLayout(new BoxLayout(p4, BoxLayout.LINE_AXIS));
@@ -151,6 +167,7 @@ public class depositUI extends JFrame implements ActionListener, UISettings{
 		panel.add(Box.createVerticalGlue());
 		panel.add(p2);
 		panel.add(p3);
+		panel.add(previewPanel);
 		panel.add(Box.createVerticalGlue());
 		panel.add(p4);
 
@@ -158,16 +175,28 @@ public class depositUI extends JFrame implements ActionListener, UISettings{
 		return panel;
 	}
 
+	//shows where the amount would go against the envelopes as they were when the window opened, nothing is saved
+	private void updatePreview() {
+		BigDecimal depositAmount;
+		try {
+			depositAmount = new BigDecimal(amount.getText());
+		}
+		catch(NumberFormatException ex) {
+			preview.setText("");
+			return;
+		}
+		preview.setText(snapshot.previewDeposit(envList.getSelectedItem().toString(), depositAmount).summary(3));
+	}
+
 	@Override
 	public void actionPerformed(ActionEvent e) {
 		//envelope
-		Envelope envelope = Database.getEnvelope(envList.getSelectedItem().toString());
-
-		ResponseTicket response = Actions.Deposit(envelope, new BigDecimal(amount.getText().toString()));
-		response.printMessages();
+		String envelope = envList.getSelectedItem().toString();
+		BigDecimal depositAmount = new BigDecimal(amount.getText().toString());
 
-		//update
-		PrototypeUI.update();
+		//deposit and update, on the database writer thread
+		//the envelope is read there, so a save still queued ahead of this one is not overwritten
+		PrototypeUI.save("deposit", () -> Actions.Deposit(Database.getEnvelope(envelope), depositAmount));
 
 
 		//dispose
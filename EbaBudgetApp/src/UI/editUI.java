@@ -22,7 +22,6 @@ import dataObjects.Envelope;
 import settings.EnvelopeSettings;
 import settings.UISettings;
 import settings.textFilters;
-import tickets.ResponseTicket;
 
 public class editUI extends JFrame implements ActionListener, UISettings{
 
@@ -302,10 +301,12 @@ public class editUI extends JFrame implements ActionListener, UISettings{
 			System.out.println("Remove button pressed");
 			//check user's decision
 			//remove
-			ResponseTicket response = Actions.Remove(envelope);
-			response.printMessages();
-			if(response.getErrorMessages().size() != 0) return;
-			
+			//the window stays open if the envelope could not be removed
+			String current = envelope.getName();
+			PrototypeUI.save("remove", () -> Actions.Remove(Database.getEnvelope(current))).thenAccept(response -> {
+				if(!response.hasErrorMessage()) dispose();
+			});
+			return;
 		}
 		else if(e.getActionCommand().equals("Submit")) {
 			System.out.println("Submit button pressed");
@@ -326,16 +327,20 @@ public class editUI extends JFrame implements ActionListener, UISettings{
 			boolean Default = defaultBox.getState();
 			
 			
-			ResponseTicket response = Actions.Edit(envelope, p, name, envelope.getAmount(), cap, capAmount, fillSetting, fillAmount, extra, Default);
-			response.printMessages();
+			//read on the writer thread, so the amount kept is the one saved, not the one this window opened with
+			String current = envelope.getName();
+			PrototypeUI.save("edit", () -> {
+				Envelope stored = Database.getEnvelope(current);
+				return Actions.Edit(stored, p, name, stored == null ? null : stored.getAmount(), cap, capAmount, fillSetting, fillAmount, extra, Default);
+			});
 			
 			
 		}
 		else {
 			System.out.println(e.getActionCommand());
+			PrototypeUI.update();
 		}
 		
-		PrototypeUI.update();
 		dispose();
 		
 	}
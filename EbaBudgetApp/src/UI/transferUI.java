@@ -22,7 +22,6 @@ import data.Database;
 import dataObjects.Envelope;
 import settings.UISettings;
 import settings.textFilters;
-import tickets.ResponseTicket;
 
 public class transferUI extends JFrame implements ActionListener, UISettings{
 
@@ -67,11 +66,11 @@ public class transferUI extends JFrame implements ActionListener, UISettings{
 
 
 		//envelope list data
-		List<Envelope> env = Database.getEnvelopes();
+		List<Envelope> env = Database.getEnvelopesByPriority();
 		String[] envelopes = new String[env.size()];
 
 		for(int index = 0; index < env.size(); index++) {
-			envelopes[index] = Database.getEnvelopeByPriority(index + 1).getName();
+			envelopes[index] = env.get(index).getName();
 		}
 
 		//from label
@@ -226,15 +225,11 @@ public class transferUI extends JFrame implements ActionListener, UISettings{
 
 		//if from amount is greater than from envelope's amount -- return
 		BigDecimal amount = new BigDecimal(amountText.getText());
-		Envelope envelope = Database.getEnvelope(envList.getSelectedItem().toString());
-		Envelope envelope2 = Database.getEnvelope(envList2.getSelectedItem().toString());
-		if(amount.doubleValue() > envelope.getAmount().doubleValue()) return;
-		//transfer amount
-		ResponseTicket response = Actions.Transfer(envelope, envelope2, amount);
-		response.printMessages();
-
-		//update
-		PrototypeUI.update();
+		String from = envList.getSelectedItem().toString();
+		String to = envList2.getSelectedItem().toString();
+		if(amount.doubleValue() > Database.getEnvelope(from).getAmount().doubleValue()) return;
+		//transfer amount -- the envelopes are read on the writer thread, so a save still queued ahead of this one is not overwritten
+		PrototypeUI.save("transfer", () -> Actions.Transfer(Database.getEnvelope(from), Database.getEnvelope(to), amount));
 
 
 		//dispose
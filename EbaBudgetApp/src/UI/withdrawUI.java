@@ -3,12 +3,14 @@ package UI;
 import java.awt.*;
 import java.awt.event.*;
 import java.math.BigDecimal;
+import java.util.List;
 
 import javax.swing.*;
 import javax.swing.text.*;
 
 import actions.Actions;
 import actions.EnvelopeActions;
+import actions.EnvelopeSnapshot;
 import data.Database;
 //import dataAccess.EnvelopeAccess;
 //import dataAccess.VendorAccess;
@@ -16,7 +18,6 @@ import dataObjects.Envelope;
 //import dataObjects.Vendor;
 import settings.UISettings;
 import settings.textFilters;
-import tickets.ResponseTicket;
 
 public class withdrawUI extends JFrame implements ActionListener, UISettings {
 
@@ -28,6 +29,9 @@ public class withdrawUI extends JFrame implements ActionListener, UISettings {
 	private TextField amountText;
 	//private TextField name;
 	private JComboBox envelopeList;
+	//where the amount typed would come from, updated on every keystroke
+	private Label preview;
+	private EnvelopeSnapshot snapshot;
 	
 	
 	public withdrawUI(int x, int y) {
@@ -96,22 +100,28 @@ public class withdrawUI extends JFrame implements ActionListener, UISettings {
 
 			@Override
 			public void keyReleased(KeyEvent e) {
-				// TODO Auto-generated method stub
-
+				updatePreview();
 			}
 
 		});
 
 
+		//preview label
+		preview = new Label();
+
+
 		//envelope list
-		int envelopeSize = Database.getEnvelopes().size();
+		List<Envelope> envelopes = Database.getEnvelopesByPriority();
+		int envelopeSize = envelopes.size();
 		String[] envelopeNames = new String[envelopeSize];
 
 		for(int index = 0; index < envelopeSize; index++) {
-			envelopeNames[index] = Database.getEnvelopeByPriority(index + 1).getName();
+			envelopeNames[index] = envelopes.get(index).getName();
 		}
 		envelopeList = new JComboBox(envelopeNames);
 		envelopeList.setSelectedIndex(0);
+		envelopeList.addActionListener(e -> updatePreview());
+		snapshot = new EnvelopeSnapshot(envelopes);
 
 
 		//submit button
@@ -159,6 +169,14 @@ public class withdrawUI extends JFrame implements ActionListener, UISettings {
 		listPanel.add(Box.createHorizontalGlue());
 
 
+		//preview
+		Panel previewPanel = new Panel();
+		previewPanel.setLayout(new BoxLayout(previewPanel, BoxLayout.LINE_AXIS));
+		previewPanel.add(Box.createHorizontalStrut(5));
+		previewPanel.add(preview);
+		previewPanel.add(Box.createHorizontalGlue());
+
+
 		//submit button
 		Panel buttonPanel = new Panel();
 		buttonPanel.setLayout(new BoxLayout(buttonPanel, BoxLayout.LINE_AXIS));
@@ -170,11 +188,25 @@ public class withdrawUI extends JFrame implements ActionListener, UISettings {
 		//add components to panel
 		panel.add(p2);
 		panel.add(listPanel);
+		panel.add(previewPanel);
 		panel.add(Box.createVerticalGlue());
 		panel.add(buttonPanel);
 		panel.add(Box.createVerticalGlue());
 	}
 
+	//shows where the amount would come from against the envelopes as they were when the window opened, nothing is saved
+	private void updatePreview() {
+		BigDecimal amount;
+		try {
+			amount = new BigDecimal(amountText.getText());
+		}
+		catch(NumberFormatException ex) {
+			preview.setText("");
+			return;
+		}
+		preview.setText(snapshot.previewWithdraw(envelopeList.getSelectedItem().toString(), amount).summary(3));
+	}
+
 	@Override
 	public void actionPerformed(ActionEvent e) {
 
@@ -189,13 +221,9 @@ public class withdrawUI extends JFrame implements ActionListener, UISettings {
 
 		//withdraw		
 		BigDecimal amount = new BigDecimal(amountText.getText());
-		Envelope envelope = Database.getEnvelope(envelopeList.getSelectedItem().toString());
-		ResponseTicket response = Actions.Withdraw("", envelope, amount);
-
-		response.printMessages();
-
-		//update
-		PrototypeUI.update();
+		String envelope = envelopeList.getSelectedItem().toString();
+		//the envelope is read on the writer thread, so a save still queued ahead of this one is not overwritten
+		PrototypeUI.save("withdraw", () -> Actions.Withdraw("", Database.getEnvelope(envelope), amount));
 
 		//close
 		this.dispose();
@@ -2,6 +2,7 @@ package actions;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.function.Supplier;
 
 //import UI.tempInfo;
 //import dataAccess.BalanceAccess;
@@ -11,10 +12,43 @@ import dataObjects.Envelope;
 import settings.EnvelopeSettings;
 import tickets.ResponseTicket;
 import data.Database;
+import data.RolledBackException;
+import data.UnitOfWork;
+import metrics.MetricsRegistry;
 
+//every public action runs as one unit of work -- one database transaction, committed once when the action returns
+//and rolled back as a whole if anything in it fails. the action name is recorded with its rows in the transactions ledger
+//and each action is timed in the metrics registry as "actions.<name>"
 public class Actions extends precisionOperations{
 	
+	static {
+		MetricsRegistry.gauge("envelopes.count", () -> Database.getEnvelopeCount());
+		MetricsRegistry.gauge("envelopes.balance", () -> Database.getBalance());
+	}
+	
+	//runs an action as one unit of work, timed, counting the responses that carry an error
+	//if the unit rolls back the action's response is kept, with an error saying nothing was saved
+	private static ResponseTicket run(String action, Supplier<ResponseTicket> work) {
+		ResponseTicket[] result = new ResponseTicket[1];
+		ResponseTicket response;
+		try {
+			response = MetricsRegistry.timer("actions." + action).time(() -> UnitOfWork.execute(action, () -> result[0] = work.get()));
+		}
+		catch(RolledBackException e) {
+			response = result[0] == null ? new ResponseTicket() : result[0];
+			response.addErrorMessage(e.getMessage());
+		}
+		if(response.hasErrorMessage()) {
+			MetricsRegistry.counter("actions." + action + ".errors").increment();
+		}
+		return response;
+	}
+	
 	public static ResponseTicket validate() {
+		return run("validate", () -> validateBalances());
+	}
+	
+	private static ResponseTicket validateBalances() {
 		
 		ResponseTicket response = new ResponseTicket();
 		response.addInfoMessage("validate action called");
@@ -27,7 +61,7 @@ public class Actions extends precisionOperations{
 //		BalanceAccess.getBalance().setBalance(amount);
 		
 		
-		List<Envelope> envelopes = Database.getEnvelopes();
+		List<Envelope> envelopes = Database.getEnvelopesByPriority();
 		
 		//check for discrepancy
 		boolean check = false;
@@ -66,24 +100,13 @@ public class Actions extends precisionOperations{
 		
 		
 		
-		//formatting priority -- 
-		boolean priorityCheck = false;
-		for(int index = 1; index <= envelopes.size() || priorityCheck; index++) {
-			if(index <= 0) index = 1;
-			Envelope e = Database.getEnvelopeByPriority(index);
+		//formatting priority -- envelopes are in priority order, close any gaps so priorities run 1 to size
+		for(int index = 0; index < envelopes.size(); index++) {
+			Envelope e = envelopes.get(index);
 			
-			if(e == null) {
-				priorityCheck = true;
-				continue;
+			if(e.getPriority() != index + 1) {
+				e.setPriority(index + 1);
 			}
-			if(priorityCheck) {
-				e.setPriority(index - 1);
-				index -= 3;
-			}
-			
-			priorityCheck = false;
-		
-			
 		}
 		
 		
@@ -120,6 +143,10 @@ public class Actions extends precisionOperations{
 	
 
 	public static ResponseTicket Withdraw(String name, Envelope envelope, BigDecimal amount) {
+		return run("withdraw", () -> withdraw(name, envelope, amount));
+	}
+	
+	private static ResponseTicket withdraw(String name, Envelope envelope, BigDecimal amount) {
 		ResponseTicket response = new ResponseTicket();
 		
 		response.addInfoMessage("withdraw action called");
@@ -155,6 +182,10 @@ public class Actions extends precisionOperations{
 	
 	
 	public static ResponseTicket Deposit(Envelope e, BigDecimal amount) {
+		return run("deposit", () -> deposit(e, amount));
+	}
+	
+	private static ResponseTicket deposit(Envelope e, BigDecimal amount) {
 		
 		ResponseTicket response = new ResponseTicket();
 		
@@ -186,7 +217,22 @@ public class Actions extends precisionOperations{
 
 	
 	
+	//where Deposit would put the money, read from a fresh snapshot without saving anything
+	//to preview on every keystroke, take one EnvelopeSnapshot and call previewDeposit on it instead
+	public static Preview previewDeposit(Envelope e, BigDecimal amount) {
+		return MetricsRegistry.timer("actions.previewDeposit").time(() -> EnvelopeSnapshot.take().previewDeposit(e == null ? null : e.getName(), amount));
+	}
+	
+	//where Withdraw would take the money from, read from a fresh snapshot without saving anything
+	public static Preview previewWithdraw(Envelope e, BigDecimal amount) {
+		return MetricsRegistry.timer("actions.previewWithdraw").time(() -> EnvelopeSnapshot.take().previewWithdraw(e == null ? null : e.getName(), amount));
+	}
+	
 	public static ResponseTicket Transfer(Envelope e1, Envelope e2, BigDecimal amount) {
+		return run("transfer", () -> transfer(e1, e2, amount));
+	}
+	
+	private static ResponseTicket transfer(Envelope e1, Envelope e2, BigDecimal amount) {
 		ResponseTicket response = new ResponseTicket();
 
 		response.addInfoMessage("transfer action called");
@@ -217,6 +263,10 @@ public class Actions extends precisionOperations{
 	}
 		
 	public static ResponseTicket Edit(Envelope e, int priority, String name, BigDecimal amount, boolean cap, int capAmount, int fillSetting, int fillAmount, boolean extra, boolean Default) {
+		return run("edit", () -> edit(e, priority, name, amount, cap, capAmount, fillSetting, fillAmount, extra, Default));
+	}
+	
+	private static ResponseTicket edit(Envelope e, int priority, String name, BigDecimal amount, boolean cap, int capAmount, int fillSetting, int fillAmount, boolean extra, boolean Default) {
 		
 		ResponseTicket response = new ResponseTicket();
 		response.addInfoMessage("edit action called");
@@ -311,6 +361,10 @@ public class Actions extends precisionOperations{
 	}
 	
 	public static ResponseTicket Remove(Envelope e) {
+		return run("remove", () -> remove(e));
+	}
+	
+	private static ResponseTicket remove(Envelope e) {
 		ResponseTicket response = new ResponseTicket();
 		ResponseTicket transferResponse;
 		List<Envelope> envelopes = Database.getEnvelopes();
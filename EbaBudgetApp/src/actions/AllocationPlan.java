@@ -0,0 +1,145 @@
+package actions;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import data.Database;
+import data.RolledBackException;
+import data.UnitOfWork;
+import dataObjects.Envelope;
+import tickets.ResponseTicket;
+
+//how a deposit into all envelopes is split, worked out by AllocationPlanner without touching the database
+//the plan can't be changed once made -- commit saves every envelope it deposits into in one batch
+public final class AllocationPlan {
+
+	//why an envelope gets its share, in the order the planner hands them out
+	public enum Reason { PERCENTAGE, FILL, EXTRA, FIRST_PRIORITY }
+
+	public static final class Allocation {
+
+		private final String envelope;
+		private final BigDecimal amount;
+		private final Reason reason;
+
+		Allocation(String envelope, BigDecimal amount, Reason reason) {
+			this.envelope = envelope;
+			this.amount = amount;
+			this.reason = reason;
+		}
+
+		public String getEnvelope() {
+			return envelope;
+		}
+
+		public BigDecimal getAmount() {
+			return amount;
+		}
+
+		public Reason getReason() {
+			return reason;
+		}
+
+		@Override
+		public String toString() {
+			return "$" + amount + " into " + envelope + " (" + reason.name().toLowerCase() + ")";
+		}
+	}
+
+	private final BigDecimal amount;
+	private final List<Allocation> allocations;
+	private final BigDecimal unallocated;
+	//the envelopes deposited into, as they were when planned, by name
+	private final Map<String, Envelope> snapshot;
+
+	AllocationPlan(BigDecimal amount, List<Allocation> allocations, BigDecimal unallocated, Map<String, Envelope> snapshot) {
+		this.amount = amount;
+		this.allocations = Collections.unmodifiableList(new ArrayList<>(allocations));
+		this.unallocated = unallocated;
+		this.snapshot = Collections.unmodifiableMap(new LinkedHashMap<>(snapshot));
+	}
+
+	//the amount being deposited
+	public BigDecimal getAmount() {
+		return amount;
+	}
+
+	//every share in the order it was planned, an envelope can get more than one
+	public List<Allocation> getAllocations() {
+		return allocations;
+	}
+
+	//what is left with no envelope to go into, only when there are no envelopes
+	public BigDecimal getUnallocated() {
+		return unallocated;
+	}
+
+	//total planned for one envelope, 0 if it gets nothing
+	public BigDecimal getDeposited(String envelope) {
+		BigDecimal total = BigDecimal.ZERO;
+		for(Allocation allocation : allocations) {
+			if(allocation.envelope.equals(envelope)) total = total.add(allocation.amount);
+		}
+		return total;
+	}
+
+	//amount each envelope ends up with, starting from the amounts it was planned over
+	public Map<String, BigDecimal> getNewAmounts() {
+		Map<String, BigDecimal> amounts = new LinkedHashMap<>();
+		for(Allocation allocation : allocations) {
+			BigDecimal current = amounts.getOrDefault(allocation.envelope, snapshot.get(allocation.envelope).getAmount());
+			amounts.put(allocation.envelope, current.add(allocation.amount));
+		}
+		return amounts;
+	}
+
+	//adds each envelope's share to its amount as read inside one unit of work, so they are written in one batch when it flushes
+	//money moved in or out of an envelope since the plan was made is kept; nothing is deposited if one of them is gone
+	public void commit(ResponseTicket response) {
+		List<String> missing = new ArrayList<>();
+		try {
+			UnitOfWork.run("deposit into all", () -> {
+				List<Envelope> current = new ArrayList<>();
+				for(String name : snapshot.keySet()) {
+					Envelope e = Database.getEnvelope(name);
+					if(e == null) missing.add(name);
+					else current.add(e);
+				}
+				if(!missing.isEmpty()) return;
+
+				for(Envelope e : current) {
+					e.setAmount(e.getAmount().add(getDeposited(e.getName())));
+				}
+			});
+		}
+		catch(RolledBackException e) {
+			response.addErrorMessage(e.getMessage());
+			return;
+		}
+		if(!missing.isEmpty()) {
+			response.addErrorMessage("Envelope " + missing.get(0) + " no longer exists, nothing was deposited");
+			return;
+		}
+
+		for(Allocation allocation : allocations) {
+			response.addInfoMessage("Envelope " + allocation.envelope + " has been deposited $" + allocation.amount);
+			switch(allocation.reason) {
+				case EXTRA: response.addInfoMessage("deposited $" + allocation.amount + " into " + allocation.envelope); break;
+				case FIRST_PRIORITY: response.addInfoMessage("deposited $" + allocation.amount + " into " + allocation.envelope + ". no envelope is marked as extra"); break;
+				default: response.addInfoMessage("deposited $" + allocation.amount + " into " + allocation.envelope);
+			}
+		}
+		if(unallocated.signum() > 0) {
+			response.addErrorMessage("$" + unallocated + " is unaccounted for. No envelopes exist to be deposited into");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "deposit $" + amount + ": " + allocations + (unallocated.signum() > 0 ? ", $" + unallocated + " unallocated" : "");
+	}
+}
@@ -0,0 +1,117 @@
+package actions;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dataObjects.Envelope;
+import settings.EnvelopeSettings;
+
+//works out how a deposit into all envelopes is split, without changing the envelopes or touching the database
+//same rules as always, in three passes over the envelopes in priority order:
+//	percentage envelopes get their share of the full amount, rounded down to the cent
+//	fill and amount envelopes get what their setting asks for, up to their cap, until the amount runs out
+//	whatever is left goes into the extra envelope, or the first priority if there isn't one
+public class AllocationPlanner extends precisionOperations{
+
+	//envelopes must be in priority order, index 0 is priority 1
+	public static AllocationPlan plan(List<Envelope> envelopes, BigDecimal amount) {
+
+		BigDecimal fullAmount = amount;
+		List<AllocationPlan.Allocation> allocations = new ArrayList<>();
+		Map<String, Envelope> snapshot = new LinkedHashMap<>();
+
+		//deposit into those with percent fill setting
+		for(int index = 0; index < envelopes.size() && amount.doubleValue() != 0; index++) {
+
+			Envelope envelope = envelopes.get(index);
+			if(envelope.getFillSetting() != EnvelopeSettings.percentage) continue;
+
+			// EX: 10 / 100 = 0.1
+			BigDecimal percentAmount = divide(envelope.getFillAmount(), 100);
+			// EX: 500 * 0.1 = 50
+			BigDecimal tempAmount = multiply(fullAmount, percentAmount);
+			//format temp amount
+			int formattedAmount = multiply(tempAmount, new BigDecimal(100)).intValue();
+			tempAmount = divide(formattedAmount, 100);
+
+			amount = allocate(allocations, snapshot, envelope, tempAmount, AllocationPlan.Reason.PERCENTAGE, amount);
+		}
+
+		//deposit rest -- in priority order
+		for(int index = 0; index < envelopes.size() && amount.doubleValue() != 0; index++) {
+
+			Envelope e = envelopes.get(index);
+			BigDecimal amountToDeposit;
+
+			switch(e.getFillSetting()) {
+				default: throw new IllegalStateException("envelope has an invalid fill setting");
+				case EnvelopeSettings.percentage: continue;
+
+				case EnvelopeSettings.fill: {
+					//envelope has a cap
+					if(e.hasCap()) {
+						//skip if envelope is full
+						if(e.getAmount().doubleValue() >= e.getCapAmount()) continue;
+						//get max amount envelope can be deposited, no more than the amount left
+						amountToDeposit = subtract(new BigDecimal(e.getCapAmount()), e.getAmount());
+						if(amountToDeposit.doubleValue() > amount.doubleValue()) amountToDeposit = amount;
+					}
+					//envelope does not have a cap
+					else {
+						amountToDeposit = amount;
+					}
+				} break;
+
+				case EnvelopeSettings.amount: {
+					amountToDeposit = new BigDecimal(e.getFillAmount());
+					//if envelope fill amount is greater than amount available, change amountToDeposit to amount available
+					if(amountToDeposit.doubleValue() > amount.doubleValue()) amountToDeposit = amount;
+
+					//checks cap amount
+					if(e.hasCap()) {
+						BigDecimal amountTillFull = subtract(new BigDecimal(e.getCapAmount()), e.getAmount());
+						//if envelope is full continue
+						if(amountTillFull.doubleValue() <= 0) continue;
+						//if amount to deposit is bigger than amount for envelope to be full, amount to deposit is the amount till full
+						if(amountToDeposit.doubleValue() > amountTillFull.doubleValue()) {
+							amountToDeposit = amountTillFull;
+						}
+					}
+				} break;
+			}
+
+			amount = allocate(allocations, snapshot, e, amountToDeposit, AllocationPlan.Reason.FILL, amount);
+		}
+
+		//deposit left over amount into envelope marked extra if there is one, otherwise into the 1st priority envelope
+		if(amount.doubleValue() > 0) {
+			Envelope extra = null;
+			for(Envelope e : envelopes) {
+				if(e.isExtra()) {
+					extra = e;
+					break;
+				}
+			}
+			if(extra != null) {
+				amount = allocate(allocations, snapshot, extra, amount, AllocationPlan.Reason.EXTRA, amount);
+			}
+			else if(!envelopes.isEmpty()) {
+				amount = allocate(allocations, snapshot, envelopes.get(0), amount, AllocationPlan.Reason.FIRST_PRIORITY, amount);
+			}
+		}
+
+		return new AllocationPlan(fullAmount, allocations, amount, snapshot);
+	}
+
+	//adds one share to the plan, returns the amount still to hand out
+	private static BigDecimal allocate(List<AllocationPlan.Allocation> allocations, Map<String, Envelope> snapshot, Envelope e,
+			BigDecimal share, AllocationPlan.Reason reason, BigDecimal amount) {
+		if(share.signum() == 0) return amount;
+		allocations.add(new AllocationPlan.Allocation(e.getName(), share, reason));
+		snapshot.putIfAbsent(e.getName(), e.copy());
+		return subtract(amount, share);
+	}
+}
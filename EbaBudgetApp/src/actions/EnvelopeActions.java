@@ -5,16 +5,31 @@ import java.util.ArrayList;
 import java.util.List;
 
 import data.Database;
+import data.RolledBackException;
+import data.UnitOfWork;
 //import dataAccess.EnvelopeAccess;
 //import dataObjects.Balance;
 import dataObjects.Envelope;
+import metrics.MetricsRegistry;
 import settings.EnvelopeSettings;
 import tickets.ResponseTicket;
 
+//every public method is timed in the metrics registry as "envelopeActions.<method>"
 public class EnvelopeActions extends precisionOperations{
 
-	//sets the priority of envelope, changes the rest accordingly
+	//sets the priority of envelope, changes the rest accordingly -- every envelope moved is saved in one transaction
 	public static void setPriority(ResponseTicket response, Envelope envelope, int priority) {
+		MetricsRegistry.timer("envelopeActions.setPriority").time(() -> {
+			try {
+				UnitOfWork.run("set priority", () -> movePriority(response, envelope, priority));
+			}
+			catch(RolledBackException e) {
+				response.addErrorMessage(e.getMessage());
+			}
+		});
+	}
+
+	private static void movePriority(ResponseTicket response, Envelope envelope, int priority) {
 
 		if(response == null) {
 			throw new IllegalArgumentException("Response is null");
@@ -70,6 +85,10 @@ public class EnvelopeActions extends precisionOperations{
 
 	//changes the name of the envelope
 	public static void EditName(ResponseTicket response, Envelope e, String name) {
+		MetricsRegistry.timer("envelopeActions.editName").time(() -> editName(response, e, name));
+	}
+
+	private static void editName(ResponseTicket response, Envelope e, String name) {
 
 		if(response == null) {
 			throw new IllegalArgumentException("Response is null");
@@ -109,6 +128,10 @@ public class EnvelopeActions extends precisionOperations{
 	/* NOTE: CAP SETTING IS NOT CHECKED IN TRANSFER IT IS ONLY CHECKED FOR DEPOSITS INTO BANK ACCOUNT I.E DEPOSIT BANK STATEMENT*/
 	//Transfers amount from e1 to e2
 	public static void Transfer(ResponseTicket response, Envelope e1, Envelope e2, BigDecimal amount) {
+		MetricsRegistry.timer("envelopeActions.transfer").time(() -> transfer(response, e1, e2, amount));
+	}
+
+	private static void transfer(ResponseTicket response, Envelope e1, Envelope e2, BigDecimal amount) {
 
 		if(amount.doubleValue() <= 0) {
 			response.addErrorMessage("Cannot withdraw an amount less than or equal to 0");
@@ -157,130 +180,13 @@ public class EnvelopeActions extends precisionOperations{
 	}
 	
 	public static void depositIntoAll(ResponseTicket response, BigDecimal amount) {
-				
-		
-		BigDecimal fullAmount = amount;
-		List<Envelope> envelopes = Database.getEnvelopes();
-		//deposit into those with percent fill setting
-		for(int index = 1; index <= envelopes.size(); index++) {
-			
-			Envelope envelope = Database.getEnvelopeByPriority(index);
-			
-			if(envelope.getFillSetting() == EnvelopeSettings.percentage) {
-				
-				// EX: 10 / 100 = 0.1
-				BigDecimal percentAmount = divide(envelope.getFillAmount(), 100);
-				
-				// EX: 500 * 0.1 = 50
-				BigDecimal tempAmount = multiply(fullAmount, percentAmount);
-				
-				//format temp amount
-				int formattedAmount = multiply(tempAmount, new BigDecimal(100)).intValue();
-				tempAmount = divide(formattedAmount, 100);
-				
-				//deposit tempAmount
-				deposit(response, envelope, tempAmount);
-				
-				//subtract tempAmount from amount
-				amount = subtract(amount, tempAmount);
-
-				response.addInfoMessage("deposited " + tempAmount + " into " + envelope.getName());
-			}
-
-			if(amount.doubleValue() == 0) return;
-		}
-		
-		
-		
-		//deposit rest -- index == priority
-		for(int index = 1; index <= envelopes.size(); index++) {
-			
-			Envelope e = Database.getEnvelopeByPriority(index);
-			
-			BigDecimal amountToDeposit;
-			
-			switch(e.getFillSetting()) {
-				default: throw new IllegalStateException("envelope has an invalid fill setting");
-				case EnvelopeSettings.percentage: continue;
-				
-				case EnvelopeSettings.fill: {
-					
-					//envelope has a cap
-					if(e.hasCap()) {
-
-						//get amounts needed
-						int capAmount = e.getCapAmount();
-						BigDecimal envelopeAmount = e.getAmount();
-
-						//skip if envelope is full
-						if(envelopeAmount.doubleValue() >= capAmount) continue;
-
-						//get max amount envelope can be deposited
-						amountToDeposit = subtract(new BigDecimal(capAmount), envelopeAmount);
-
-						//check if deposit amount is less than max amount
-						if(amountToDeposit.doubleValue() > amount.doubleValue()) amountToDeposit = amount;
-
-					}
-					//envelope does not have a cap
-					else {
-						amountToDeposit = amount;
-					}
-					
-					
-				} break;
-				
-				case EnvelopeSettings.amount: {
-					
-					amountToDeposit = new BigDecimal(e.getFillAmount());
-					//if envelope fill amount is greater than amount available, change amountToDeposit to amount available
-					if(amountToDeposit.doubleValue() > amount.doubleValue()) amountToDeposit = amount;
-					
-					//checks cap amount
-					if(e.hasCap()) {
-						
-						BigDecimal amountTillFull = subtract(new BigDecimal(e.getCapAmount()), e.getAmount());
-						//if envelope is full continue
-						if(amountTillFull.doubleValue() <= 0) continue;
-						//if amount to deposit is bigger than amount for envelope to be full, amount to deposit is the amount till full
-						if(amountToDeposit.doubleValue() > amountTillFull.doubleValue()) {
-							amountToDeposit = amountTillFull;
-						}
-					}
-					
-				} break;
-			}
-			
-			
-			deposit(response, e, amountToDeposit);
-			amount = subtract(amount, amountToDeposit);
-			//amount -= amountToDeposit;
-			response.addInfoMessage("deposited $" + amountToDeposit + " into " + e.getName());
-			
-			if(amount.doubleValue() == 0) return;	
-		}
-		
-		
-		//deposit left over amount into envelope marked extra if there is one, otherwise validate will put it into the 1st priority envelope
-		for(int index = 1; index <= envelopes.size(); index++) {
-			Envelope e = Database.getEnvelopeByPriority(index);
-			if(!e.isExtra()) continue;
-			deposit(response, e, amount);
-			amount = BigDecimal.ZERO;
-			response.addInfoMessage("deposited $" + amount + " into " + envelopes.get(index).getName());
+		MetricsRegistry.timer("envelopeActions.depositIntoAll").time(() -> depositAll(response, amount));
+	}
 
-		}
-		if(amount.doubleValue() > 0) {
-			Envelope e = Database.getEnvelopeByPriority(1);
-			if(e != null) {
-				deposit(response, e, amount);
-				response.addInfoMessage("deposited $" + amount + "into " + e.getName() + ". no envelope is marked as extra");
-			}
-			else {
-				response.addErrorMessage("$" + amount + "is unnaccounted for. No envelopes exist to be deposited into");
-			}
-		}
-		
+	//plans the split over a snapshot of the envelopes, then saves every envelope it deposits into in one batch
+	private static void depositAll(ResponseTicket response, BigDecimal amount) {
+		AllocationPlan plan = AllocationPlanner.plan(Database.getEnvelopesByPriority(), amount);
+		plan.commit(response);
 	}
 	
 	private static void deposit(ResponseTicket response, Envelope e, BigDecimal amount) {
@@ -291,6 +197,10 @@ public class EnvelopeActions extends precisionOperations{
 	}
 	
 	public static void depositIntoEnvelope(ResponseTicket response, Envelope envelope, BigDecimal amount) {
+		MetricsRegistry.timer("envelopeActions.depositIntoEnvelope").time(() -> depositInto(response, envelope, amount));
+	}
+
+	private static void depositInto(ResponseTicket response, Envelope envelope, BigDecimal amount) {
 		if(envelope == null) {
 			depositIntoAll(response, amount);
 			return;
@@ -323,6 +233,10 @@ public class EnvelopeActions extends precisionOperations{
 	}
 
 	public static void withdrawFromSingleEnvelope(ResponseTicket response, Envelope envelope, BigDecimal amount) {
+		MetricsRegistry.timer("envelopeActions.withdrawFromSingleEnvelope").time(() -> withdrawFromSingle(response, envelope, amount));
+	}
+
+	private static void withdrawFromSingle(ResponseTicket response, Envelope envelope, BigDecimal amount) {
 		
 		if(envelope == null) {
 			response.addInfoMessage("Cannot withdraw from envelope, envelope does not exist");
@@ -356,6 +270,10 @@ public class EnvelopeActions extends precisionOperations{
 	}
 	
 	public static BigDecimal withdrawFromEnvelope(ResponseTicket response, Envelope envelope, BigDecimal amount) {
+		return MetricsRegistry.timer("envelopeActions.withdrawFromEnvelope").time(() -> withdrawFrom(response, envelope, amount));
+	}
+
+	private static BigDecimal withdrawFrom(ResponseTicket response, Envelope envelope, BigDecimal amount) {
 		
 		if(envelope == null) {
 			response.addInfoMessage("Cannot withdraw from envelope, envelope does not exist");
@@ -392,13 +310,19 @@ public class EnvelopeActions extends precisionOperations{
 
 	
 	public static void withdrawFromAll(ResponseTicket response, BigDecimal amount) {
+		MetricsRegistry.timer("envelopeActions.withdrawFromAll").time(() -> withdrawAll(response, amount));
+	}
+
+	private static void withdrawAll(ResponseTicket response, BigDecimal amount) {
 
 
 
+		List<Envelope> envelopes = Database.getEnvelopesByPriority();
+
 		//loop from lowest to highest priority until looped through all envelopes or until amount is 0
-		for(int index = Database.getEnvelopes().size(); index > 0 && amount.doubleValue() > 0; index--) {
+		for(int index = envelopes.size() - 1; index >= 0 && amount.doubleValue() > 0; index--) {
 			
-			Envelope envelope = Database.getEnvelopeByPriority(index);
+			Envelope envelope = envelopes.get(index);
 			
 			amount = withdrawFromEnvelope(response, envelope, amount);
 			
@@ -416,6 +340,10 @@ public class EnvelopeActions extends precisionOperations{
 
 	//changes the fillSettings in envelope
 	public static void EditSettings(ResponseTicket response, Envelope envelope, int fillSetting, int fillAmount) {
+		MetricsRegistry.timer("envelopeActions.editSettings").time(() -> editSettings(response, envelope, fillSetting, fillAmount));
+	}
+
+	private static void editSettings(ResponseTicket response, Envelope envelope, int fillSetting, int fillAmount) {
 
 		if(response == null) {
 			throw new IllegalArgumentException("Response is null");
@@ -477,6 +405,10 @@ public class EnvelopeActions extends precisionOperations{
 	
 	//changes the cap settings in envelope
 	public static void EditCap(ResponseTicket response, Envelope envelope, boolean cap, int capAmount) {
+		MetricsRegistry.timer("envelopeActions.editCap").time(() -> editCap(response, envelope, cap, capAmount));
+	}
+
+	private static void editCap(ResponseTicket response, Envelope envelope, boolean cap, int capAmount) {
 		
 		if(response == null) {
 			throw new IllegalArgumentException("Response is null");
@@ -514,6 +446,10 @@ public class EnvelopeActions extends precisionOperations{
 		
 	}
 	public static void EditExtra(ResponseTicket response, Envelope e, boolean extra) {
+		MetricsRegistry.timer("envelopeActions.editExtra").time(() -> editExtra(response, e, extra));
+	}
+
+	private static void editExtra(ResponseTicket response, Envelope e, boolean extra) {
 		if(response == null) {
 			throw new IllegalArgumentException("Response is null");
 		}
@@ -545,6 +481,10 @@ public class EnvelopeActions extends precisionOperations{
 		
 	}
 	public static void EditDefault(ResponseTicket response, Envelope e, boolean Default) {
+		MetricsRegistry.timer("envelopeActions.editDefault").time(() -> editDefault(response, e, Default));
+	}
+
+	private static void editDefault(ResponseTicket response, Envelope e, boolean Default) {
 		if(response == null) {
 			throw new IllegalArgumentException("Response is null");
 		}
@@ -578,6 +518,10 @@ public class EnvelopeActions extends precisionOperations{
 	
 	//does not count envelope given
 	public static int getTotalFillPercentage(Envelope e) {
+		return MetricsRegistry.timer("envelopeActions.getTotalFillPercentage").time(() -> totalFillPercentage(e));
+	}
+
+	private static int totalFillPercentage(Envelope e) {
 		List<Envelope> envelopes = Database.getEnvelopes();
 		
 		
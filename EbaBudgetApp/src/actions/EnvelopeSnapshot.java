@@ -0,0 +1,112 @@
+package actions;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import data.Database;
+import dataObjects.Envelope;
+
+//copies of every envelope, to preview deposits and withdrawals against without reading or writing the database
+//take one when a window opens and preview on every keystroke, then take a new one once something has been saved
+//previews follow the same rules as Actions.Deposit and Actions.Withdraw, see AllocationPlanner for deposits into all
+public final class EnvelopeSnapshot extends precisionOperations{
+
+	//in priority order, index 0 is priority 1
+	private final List<Envelope> envelopes;
+	private final Map<String, Envelope> byName = new HashMap<>();
+
+	public EnvelopeSnapshot(List<Envelope> byPriority) {
+		List<Envelope> copies = new ArrayList<>(byPriority.size());
+		for(Envelope e : byPriority) {
+			Envelope copy = e.copy();
+			copies.add(copy);
+			byName.put(copy.getName(), copy);
+		}
+		this.envelopes = Collections.unmodifiableList(copies);
+	}
+
+	public static EnvelopeSnapshot take() {
+		return new EnvelopeSnapshot(Database.getEnvelopesByPriority());
+	}
+
+	public int size() {
+		return envelopes.size();
+	}
+
+	//name of the envelope to deposit into, null or a name not in the snapshot for all envelopes
+	public Preview previewDeposit(String name, BigDecimal amount) {
+		if(amount.doubleValue() <= 0) return Preview.rejected(amount, "amount cannot be less than or equal to 0");
+
+		Envelope envelope = name == null ? null : byName.get(name);
+		if(envelope != null) {
+			return new Preview(amount, Map.of(envelope.getName(), amount), BigDecimal.ZERO, null);
+		}
+
+		AllocationPlan plan = AllocationPlanner.plan(envelopes, amount);
+		Map<String, BigDecimal> deltas = new LinkedHashMap<>();
+		for(AllocationPlan.Allocation allocation : plan.getAllocations()) {
+			deltas.merge(allocation.getEnvelope(), allocation.getAmount(), BigDecimal::add);
+		}
+		if(plan.getUnallocated().signum() > 0) {
+			return new Preview(amount, deltas, BigDecimal.ZERO, "$" + plan.getUnallocated() + " is unaccounted for. No envelopes exist to be deposited into");
+		}
+		return new Preview(amount, deltas, BigDecimal.ZERO, null);
+	}
+
+	//from the envelope named, then the default envelope, then every envelope from the lowest priority up
+	public Preview previewWithdraw(String name, BigDecimal amount) {
+		if(amount.doubleValue() <= 0) return Preview.rejected(amount, "amount cannot be less than or equal to 0");
+
+		//amounts as the withdrawal goes, only for envelopes it has taken from
+		Map<String, BigDecimal> remaining = new HashMap<>();
+		Map<String, BigDecimal> deltas = new LinkedHashMap<>();
+
+		BigDecimal left = withdrawFrom(name == null ? null : byName.get(name), amount, remaining, deltas);
+		left = withdrawFrom(getDefault(), left, remaining, deltas);
+		for(int index = envelopes.size() - 1; index >= 0 && left.doubleValue() > 0; index--) {
+			left = withdrawFrom(envelopes.get(index), left, remaining, deltas);
+		}
+
+		if(left.doubleValue() != 0) {
+			return new Preview(amount, deltas, left, "Withdraw overdrafted account");
+		}
+		return new Preview(amount, deltas, BigDecimal.ZERO, null);
+	}
+
+	//same steps as EnvelopeActions.withdrawFromEnvelope, returns what is still to be withdrawn
+	private BigDecimal withdrawFrom(Envelope envelope, BigDecimal amount, Map<String, BigDecimal> remaining, Map<String, BigDecimal> deltas) {
+		if(envelope == null) return amount;
+		if(amount.doubleValue() == 0) return BigDecimal.ZERO;
+
+		BigDecimal current = remaining.getOrDefault(envelope.getName(), envelope.getAmount());
+		//pointless to continue if envelope is empty
+		if(current.doubleValue() == 0) return amount;
+
+		BigDecimal taken;
+		//if envelope does not have enough to cover amount, withdraw what's possible
+		if(current.doubleValue() < amount.doubleValue()) {
+			taken = current;
+			amount = subtract(amount, current);
+		}
+		else {
+			taken = amount;
+			amount = BigDecimal.ZERO;
+		}
+
+		remaining.put(envelope.getName(), subtract(current, taken));
+		deltas.merge(envelope.getName(), taken.negate(), BigDecimal::add);
+		return amount;
+	}
+
+	private Envelope getDefault() {
+		for(Envelope e : envelopes) {
+			if(e.isDefault()) return e;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,79 @@
+package actions;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//where a deposit or withdrawal would move money, worked out by EnvelopeSnapshot without saving anything
+public final class Preview {
+
+	private final BigDecimal amount;
+	//change to each envelope, in the order the money would move
+	private final Map<String, BigDecimal> deltas;
+	//what a withdrawal could not find in any envelope, 0 otherwise
+	private final BigDecimal shortfall;
+	private final String error;
+
+	Preview(BigDecimal amount, Map<String, BigDecimal> deltas, BigDecimal shortfall, String error) {
+		this.amount = amount;
+		this.deltas = Collections.unmodifiableMap(new LinkedHashMap<>(deltas));
+		this.shortfall = shortfall;
+		this.error = error;
+	}
+
+	static Preview rejected(BigDecimal amount, String error) {
+		return new Preview(amount, Map.of(), BigDecimal.ZERO, error);
+	}
+
+	public BigDecimal getAmount() {
+		return amount;
+	}
+
+	//positive for deposits, negative for withdrawals
+	public Map<String, BigDecimal> getDeltas() {
+		return deltas;
+	}
+
+	public BigDecimal getDelta(String envelope) {
+		return deltas.getOrDefault(envelope, BigDecimal.ZERO);
+	}
+
+	public BigDecimal getShortfall() {
+		return shortfall;
+	}
+
+	//the error message the action would respond with, null if it would go through
+	public String getError() {
+		return error;
+	}
+
+	public boolean isValid() {
+		return error == null;
+	}
+
+	//one line for a small window: the first few changes, then how many more there are
+	public String summary(int shown) {
+		if(error != null) return error;
+		if(deltas.isEmpty()) return "No change";
+
+		StringBuilder summary = new StringBuilder();
+		int count = 0;
+		for(Map.Entry<String, BigDecimal> delta : deltas.entrySet()) {
+			if(count == shown) {
+				summary.append(", ").append(deltas.size() - shown).append(" more");
+				break;
+			}
+			if(count > 0) summary.append(", ");
+			summary.append(delta.getKey()).append(delta.getValue().signum() < 0 ? " -$" : " +$").append(delta.getValue().abs());
+			count++;
+		}
+		if(shortfall.signum() != 0) summary.append(", $").append(shortfall).append(" short");
+		return summary.toString();
+	}
+
+	@Override
+	public String toString() {
+		return summary(deltas.size());
+	}
+}
@@ -0,0 +1,316 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+import actions.Actions;
+import data.Database;
+import data.InMemoryEnvelopeStore;
+import data.LatencyHistogram;
+import data.SqliteEnvelopeStore;
+import dataObjects.Envelope;
+import settings.EnvelopeSettings;
+import tickets.ResponseTicket;
+
+/*
+ * Scale test: a generated budget of thousands of envelopes, driven through actions.Actions at a target rate.
+ * 	java benchmarks.BudgetWorkload [envelopes] [operations/sec] [seconds] [sqlite|memory] [seed]
+ * The budget has random fill settings (percentages adding up to at most 100%), caps, starting amounts, one extra and
+ * one default envelope. The mix is deposits (a third of them into all), withdrawals, transfers and edits, see mix.
+ * Operations are started on a fixed schedule from one thread, like a user who doesn't wait for the app:
+ * 	service: how long the action took
+ * 	response: from when it was due to when it finished, so time spent behind schedule counts too
+ * The first tenth of the run warms up and is left out of the numbers.
+ * Invariants are checked around every operation (how much the balance moved) and every checkEvery operations
+ * (the balance matches the envelopes, no negative amounts, priorities 1 to n, at most one extra and one default).
+ * Runs against a scratch database file or the in-memory store, the real database is not touched.
+ */
+public class BudgetWorkload {
+
+	//operation and its share of the mix, in percent
+	private static final String[] operations = {"deposit", "depositAll", "withdraw", "transfer", "edit"};
+	private static final int[] mix = {25, 12, 30, 25, 8};
+
+	private static final int checkEvery = 500;
+	private static final int examples = 10;
+
+	private final int envelopes;
+	private final long intervalNanos;
+	private final long total;
+	private final Random random;
+
+	private final Map<String, LatencyHistogram> service = new LinkedHashMap<>();
+	private final Map<String, Long> rejected = new LinkedHashMap<>();
+	private final LatencyHistogram response = new LatencyHistogram();
+	private final Map<String, Long> violations = new LinkedHashMap<>();
+	private final List<String> violationExamples = new ArrayList<>();
+	//false while warming up
+	private boolean measuring = false;
+
+	private BudgetWorkload(int envelopes, int rate, int seconds, long seed) {
+		this.envelopes = envelopes;
+		this.intervalNanos = 1_000_000_000L / rate;
+		this.total = (long) rate * seconds;
+		this.random = new Random(seed);
+		for(String operation : operations) {
+			service.put(operation, new LatencyHistogram());
+			rejected.put(operation, 0L);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int envelopes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int rate = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+		boolean memory = args.length > 3 && args[3].equals("memory");
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+
+		Path file = Files.createTempFile("eba-workload-", ".db");
+		Database.useStore(memory ? new InMemoryEnvelopeStore() : new SqliteEnvelopeStore("jdbc:sqlite:" + file));
+		Database.createNewDatabase();
+		try {
+			BudgetWorkload workload = new BudgetWorkload(envelopes, rate, seconds, seed);
+			workload.createBudget();
+			System.out.println("store " + (memory ? "memory" : "sqlite") + ", " + envelopes + " envelopes, " + rate + " operations/sec for "
+					+ seconds + " s, seed " + seed);
+			System.out.println(workload.run());
+		}
+		finally {
+			Database.useStore(null);
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(Paths.get(file + "-wal"));
+			Files.deleteIfExists(Paths.get(file + "-shm"));
+			Files.deleteIfExists(Paths.get(file + "-journal"));
+		}
+	}
+
+	private void createBudget() {
+		if(!Database.addEnvelopes(budget(envelopes, random))) {
+			throw new IllegalStateException("Could not add " + envelopes + " envelopes");
+		}
+	}
+
+	//a generated budget in priority order, not yet added to the database
+	//tests use it too, to compare actions over many budgets
+	public static List<Envelope> budget(int envelopes, Random random) {
+		int extra = random.nextInt(envelopes);
+		int Default = random.nextInt(envelopes);
+		int percentLeft = 100;
+
+		List<Envelope> budget = new ArrayList<>(envelopes);
+		for(int index = 0; index < envelopes; index++) {
+			int fillSetting;
+			int fillAmount;
+			int roll = random.nextInt(100);
+			if(roll < 10 && percentLeft > 0) {
+				fillSetting = EnvelopeSettings.percentage;
+				fillAmount = Math.min(percentLeft, 1 + random.nextInt(5));
+				percentLeft -= fillAmount;
+			}
+			else if(roll < 60) {
+				fillSetting = EnvelopeSettings.amount;
+				fillAmount = 5 + random.nextInt(200);
+			}
+			else {
+				fillSetting = EnvelopeSettings.fill;
+				fillAmount = 0;
+			}
+			boolean cap = random.nextInt(100) < 30;
+			int capAmount = cap ? 100 + random.nextInt(2000) : 0;
+
+			budget.add(new Envelope(index + 1, name(index), money(random.nextInt(50_000)), fillSetting, fillAmount, cap, capAmount,
+					index == extra, index == Default));
+		}
+		return budget;
+	}
+
+	private String run() {
+		long warmup = total / 10;
+		long start = System.nanoTime();
+		long behind = 0;
+
+		for(long index = 0; index < total; index++) {
+			long due = start + index * intervalNanos;
+			long wait = due - System.nanoTime();
+			if(wait > 0) LockSupport.parkNanos(wait);
+
+			measuring = index >= warmup;
+			String operation = pick();
+			BigDecimal before = Database.getBalance();
+			long opStart = System.nanoTime();
+			BigDecimal expected = perform(operation, before);
+			long end = System.nanoTime();
+
+			if(measuring) {
+				service.get(operation).record(end - opStart);
+				response.record(end - due);
+			}
+			behind = Math.max(0, end - due);
+
+			BigDecimal after = Database.getBalance();
+			if(after.compareTo(expected) != 0) {
+				violation("balance moved wrong", operation + " left the balance at $" + after + ", expected $" + expected);
+			}
+			if((index + 1) % checkEvery == 0 || index == total - 1) {
+				checkBudget();
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+		return report(seconds, behind);
+	}
+
+	private String pick() {
+		int roll = random.nextInt(100);
+		for(int index = 0; index < operations.length; index++) {
+			roll -= mix[index];
+			if(roll < 0) return operations[index];
+		}
+		return operations[operations.length - 1];
+	}
+
+	//runs one operation like the UI would, looking envelopes up by name first
+	//returns the balance it should leave
+	private BigDecimal perform(String operation, BigDecimal balance) {
+		ResponseTicket result;
+		BigDecimal expected;
+		switch(operation) {
+			case "deposit": {
+				BigDecimal amount = money(1 + random.nextInt(50_000));
+				result = Actions.Deposit(Database.getEnvelope(randomName()), amount);
+				expected = balance.add(amount);
+			} break;
+			case "depositAll": {
+				BigDecimal amount = money(1 + random.nextInt(200_000));
+				result = Actions.Deposit(null, amount);
+				expected = balance.add(amount);
+			} break;
+			case "withdraw": {
+				BigDecimal amount = money(1 + random.nextInt(30_000));
+				result = Actions.Withdraw("", Database.getEnvelope(randomName()), amount);
+				//an overdraft takes what there is
+				expected = balance.subtract(amount.min(balance));
+			} break;
+			case "transfer": {
+				Envelope from = Database.getEnvelope(randomName());
+				Envelope to = Database.getEnvelope(randomName());
+				long available = from.getAmount().movePointRight(2).longValue();
+				BigDecimal amount = money(1 + random.nextInt((int) Math.max(1, Math.min(available, 20_000))));
+				result = Actions.Transfer(from, to, amount);
+				expected = balance;
+			} break;
+			case "edit": {
+				result = edit();
+				expected = balance;
+			} break;
+			default: throw new IllegalStateException("Unknown operation " + operation);
+		}
+		if(measuring && result.hasErrorMessage()) {
+			rejected.merge(operation, 1L, Long::sum);
+		}
+		return expected;
+	}
+
+	//a new priority, fill setting and cap; the amount, name, extra and default stay the same
+	private ResponseTicket edit() {
+		Envelope e = Database.getEnvelope(randomName());
+		int fillSetting = 1 + random.nextInt(3);
+		int fillAmount;
+		switch(fillSetting) {
+			case EnvelopeSettings.percentage: fillAmount = 1 + random.nextInt(5); break;
+			case EnvelopeSettings.amount: fillAmount = 5 + random.nextInt(200); break;
+			default: fillAmount = 0;
+		}
+		boolean cap = random.nextInt(100) < 30;
+		int capAmount = cap ? 100 + random.nextInt(2000) : 0;
+		return Actions.Edit(e, 1 + random.nextInt(envelopes), e.getName(), e.getAmount(), cap, capAmount, fillSetting, fillAmount,
+				e.isExtra(), e.isDefault());
+	}
+
+	private void checkBudget() {
+		List<Envelope> budget = Database.getEnvelopesByPriority();
+		BigDecimal sum = BigDecimal.ZERO;
+		Set<Integer> priorities = new HashSet<>();
+		int extras = 0;
+		int defaults = 0;
+		int percent = 0;
+
+		for(Envelope e : budget) {
+			sum = sum.add(e.getAmount());
+			if(e.getAmount().signum() < 0) {
+				violation("negative amount", e.getName() + " has $" + e.getAmount());
+			}
+			if(e.getPriority() < 1 || e.getPriority() > budget.size() || !priorities.add(e.getPriority())) {
+				violation("priority out of order", e.getName() + " has priority " + e.getPriority() + " of " + budget.size());
+			}
+			if(e.isExtra()) extras++;
+			if(e.isDefault()) defaults++;
+			if(e.getFillSetting() == EnvelopeSettings.percentage) percent += e.getFillAmount();
+		}
+
+		BigDecimal balance = Database.getBalance();
+		if(sum.compareTo(balance) != 0) {
+			violation("balance does not match envelopes", "balance is $" + balance + ", envelopes add up to $" + sum);
+		}
+		if(budget.size() != envelopes) {
+			violation("envelopes lost", budget.size() + " envelopes, expected " + envelopes);
+		}
+		if(extras > 1) violation("more than one extra", extras + " envelopes are marked extra");
+		if(defaults > 1) violation("more than one default", defaults + " envelopes are marked default");
+		if(percent > 100) violation("percentages over 100", "percentage fill settings add up to " + percent + "%");
+	}
+
+	private void violation(String kind, String example) {
+		violations.merge(kind, 1L, Long::sum);
+		if(violationExamples.size() < examples) {
+			violationExamples.add(kind + ": " + example);
+		}
+	}
+
+	private String report(double seconds, long behindNanos) {
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%d operations in %.1f s, %.0f operations/sec, %.1f ms behind schedule at the end%n", total, seconds,
+				total / seconds, behindNanos / 1_000_000.0));
+
+		report.append("\noperation\tcount\trejected\tp50 us\tp90 us\tp99 us\tp99.9 us\tmax us\n");
+		for(String operation : operations) {
+			report.append(row(operation, service.get(operation), rejected.get(operation)));
+		}
+		report.append(row("response", response, rejected.values().stream().mapToLong(Long::longValue).sum()));
+
+		report.append("\ninvariant violations: ").append(violations.isEmpty() ? "none" : violations).append('\n');
+		for(String example : violationExamples) {
+			report.append('\t').append(example).append('\n');
+		}
+		return report.toString();
+	}
+
+	private static String row(String name, LatencyHistogram latency, long rejected) {
+		return name + "\t" + latency.getCount() + "\t" + rejected + "\t" + latency.getPercentileNanos(50) / 1000 + "\t"
+				+ latency.getPercentileNanos(90) / 1000 + "\t" + latency.getPercentileNanos(99) / 1000 + "\t"
+				+ latency.getPercentileNanos(99.9) / 1000 + "\t" + latency.getMaxNanos() / 1000 + "\n";
+	}
+
+	private String randomName() {
+		return name(random.nextInt(envelopes));
+	}
+
+	private static String name(int index) {
+		return "envelope " + index;
+	}
+
+	private static BigDecimal money(long cents) {
+		return BigDecimal.valueOf(cents, 2);
+	}
+}
@@ -0,0 +1,96 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import actions.Actions;
+import data.Database;
+import data.DurabilityProfile;
+import data.SqliteEnvelopeStore;
+import dataObjects.Envelope;
+import settings.EnvelopeSettings;
+
+/*
+ * Latency and throughput of the Actions workload under each durability profile.
+ * Every operation is one Actions.Deposit or Actions.Transfer, each committed in its own transaction, from one thread.
+ * 	default: no pragmas, SQLite's rollback journal synced on every commit (how the app ran before profiles)
+ * 	ops/sec, p50/p99/max: per operation, including its commit
+ * 	log KiB: size of the write-ahead log at the end of the run
+ * 	checkpoint ms: copying the log back into the database file and emptying it
+ * Runs against scratch database files, the real database is not touched.
+ */
+public class DurabilityBenchmark {
+
+	private static final int operations = 2000;
+	private static final int warmup = 200;
+	private static final int envelopes = 20;
+
+	public static void main(String[] args) throws IOException {
+
+		StringBuilder results = new StringBuilder();
+		results.append("profile\tops/sec\tp50 us\tp99 us\tmax us\tlog KiB\tcheckpoint ms\n");
+
+		results.append(run(null));
+		for(DurabilityProfile profile : DurabilityProfile.values()) {
+			results.append(run(profile));
+		}
+
+		System.out.println(results);
+	}
+
+	private static String run(DurabilityProfile profile) throws IOException {
+		Path file = Files.createTempFile("eba-durability-", ".db");
+		Path log = Paths.get(file + "-wal");
+		SqliteEnvelopeStore store = new SqliteEnvelopeStore("jdbc:sqlite:" + file);
+		store.setDurabilityProfile(profile);
+		Database.useStore(store);
+		Database.createNewDatabase();
+		for(int index = 0; index < envelopes; index++) {
+			Database.addEnvelope(new Envelope(index + 1, "envelope " + index, new BigDecimal("100.00"), EnvelopeSettings.amount, 10, false, 0, false, false));
+		}
+
+		for(int index = 0; index < warmup; index++) operation(index);
+
+		long[] latencies = new long[operations];
+		long start = System.nanoTime();
+		for(int index = 0; index < operations; index++) {
+			long opStart = System.nanoTime();
+			operation(index);
+			latencies[index] = System.nanoTime() - opStart;
+		}
+		double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+		Arrays.sort(latencies);
+
+		long logBytes = Files.exists(log) ? Files.size(log) : 0;
+		long checkpointStart = System.nanoTime();
+		if(profile != null) store.checkpoint();
+		double checkpointMillis = (System.nanoTime() - checkpointStart) / 1_000_000.0;
+
+		Database.useStore(null);
+		Files.deleteIfExists(file);
+		Files.deleteIfExists(log);
+		Files.deleteIfExists(Paths.get(file + "-shm"));
+		Files.deleteIfExists(Paths.get(file + "-journal"));
+
+		return (profile == null ? "default" : profile.name().toLowerCase()) + "\t" + String.format("%.0f", operations / seconds) + "\t"
+				+ (latencies[operations / 2] / 1000) + "\t" + (latencies[operations * 99 / 100] / 1000) + "\t"
+				+ (latencies[operations - 1] / 1000) + "\t" + (logBytes >> 10) + "\t"
+				+ (profile == null ? "-" : String.format("%.3f", checkpointMillis)) + "\n";
+	}
+
+	//alternates a deposit with a transfer between neighbouring envelopes, so amounts never run out
+	private static void operation(int index) {
+		Envelope e = Database.getEnvelope("envelope " + (index % envelopes));
+		if(index % 2 == 0) {
+			Actions.Deposit(e, new BigDecimal("0.01"));
+		}
+		else {
+			Envelope to = Database.getEnvelope("envelope " + ((index + 1) % envelopes));
+			Actions.Transfer(e, to, new BigDecimal("0.01"));
+		}
+	}
+}
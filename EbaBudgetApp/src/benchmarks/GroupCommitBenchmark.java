@@ -0,0 +1,123 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import actions.Actions;
+import data.Database;
+import data.EnvelopeStore;
+import data.GroupCommit;
+import data.InMemoryEnvelopeStore;
+import data.SqliteEnvelopeStore;
+import dataObjects.Envelope;
+import settings.EnvelopeSettings;
+
+/*
+ * Mutations per second through the group committer at different window sizes, against committing every mutation on its own.
+ * Every mutation is a one cent Actions.Deposit into one of the envelopes.
+ * 	waiting: clients threads each submit a deposit and wait for it to be committed before the next one
+ * 	async: one thread submits every deposit without waiting, then waits for the last one
+ * A window of "none" is the baseline: each deposit runs on the client thread in its own transaction.
+ * Runs against a scratch SQLite file, or the in-memory store when run with "memory"; the real database is not touched.
+ */
+public class GroupCommitBenchmark {
+
+	private static final int mutations = 4000;
+	private static final int clients = 8;
+	private static final int envelopes = 20;
+	//window in millis and most mutations per group, a window of -1 is the baseline
+	private static final long[][] windows = {{-1, 1}, {0, 64}, {1, 64}, {2, 64}, {5, 64}, {10, 256}, {20, 1024}};
+
+	public static void main(String[] args) throws IOException {
+		boolean memory = args.length > 0 && args[0].equals("memory");
+
+		StringBuilder results = new StringBuilder();
+		results.append("store\tclients\twindow ms\tmax group\tmutations/sec\taverage group\taverage wait us\n");
+
+		for(long[] window : windows) {
+			for(boolean waiting : new boolean[] {true, false}) {
+				if(window[0] < 0 && !waiting) continue;
+
+				Path file = Files.createTempFile("eba-group-", ".db");
+				EnvelopeStore store = memory ? new InMemoryEnvelopeStore() : new SqliteEnvelopeStore("jdbc:sqlite:" + file);
+				results.append(run(memory ? "memory" : "sqlite", store, window[0], (int) window[1], waiting));
+				Database.useStore(null);
+				Files.deleteIfExists(file);
+			}
+		}
+
+		System.out.println(results);
+	}
+
+	private static String run(String name, EnvelopeStore store, long windowMillis, int maxBatch, boolean waiting) {
+		Database.useStore(store);
+		Database.createNewDatabase();
+		for(int index = 0; index < envelopes; index++) {
+			Database.addEnvelope(new Envelope(index + 1, "envelope " + index, BigDecimal.ZERO, EnvelopeSettings.amount, 10, false, 0, false, false));
+		}
+
+		GroupCommit committer = windowMillis < 0 ? null : new GroupCommit(windowMillis, maxBatch);
+
+		long start = System.nanoTime();
+		if(!waiting) {
+			CompletableFuture<?> last = null;
+			for(int index = 0; index < mutations; index++) {
+				int envelope = index % envelopes;
+				last = committer.submit("deposit", () -> deposit(envelope));
+			}
+			last.join();
+		}
+		else {
+			List<Thread> threads = new ArrayList<>();
+			for(int client = 0; client < clients; client++) {
+				int first = client;
+				Thread thread = new Thread(() -> {
+					for(int index = first; index < mutations; index += clients) {
+						int envelope = index % envelopes;
+						if(committer == null) deposit(envelope);
+						else committer.submitAndWait("deposit", () -> deposit(envelope));
+					}
+				});
+				threads.add(thread);
+				thread.start();
+			}
+			for(Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+		//every deposit has to have landed
+		BigDecimal expected = BigDecimal.valueOf(mutations, 2);
+		if(Database.getBalance().compareTo(expected) != 0) {
+			System.out.println("Balance is " + Database.getBalance() + ", expected " + expected);
+		}
+
+		String window = windowMillis < 0 ? "none" : String.valueOf(windowMillis);
+		String average = "-";
+		String wait = "-";
+		if(committer != null) {
+			GroupCommit.Metrics metrics = committer.getMetrics();
+			average = String.format("%.2f", metrics.getAverageGroupSize());
+			wait = String.format("%.1f", metrics.getAverageWaitMicros());
+			committer.shutdown();
+		}
+
+		return name + "\t" + (waiting ? clients : "async") + "\t" + window + "\t" + (committer == null ? 1 : maxBatch) + "\t"
+				+ String.format("%.0f", mutations / seconds) + "\t" + average + "\t" + wait + "\n";
+	}
+
+	private static Object deposit(int envelope) {
+		Envelope e = Database.getEnvelope("envelope " + envelope);
+		return Actions.Deposit(e, new BigDecimal("0.01"));
+	}
+}
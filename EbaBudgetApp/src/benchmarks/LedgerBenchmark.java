@@ -0,0 +1,123 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import data.Database;
+import data.EnvelopeStore;
+import data.InMemoryEnvelopeStore;
+import data.MappedLedgerFile;
+import data.SqliteEnvelopeStore;
+import data.UnitOfWork;
+import dataObjects.Envelope;
+import dataObjects.LedgerEntry;
+import settings.EnvelopeSettings;
+
+/*
+ * Compares the SQLite transactions table with the memory-mapped ledger file for a growing history.
+ * 	append: writing the ledger, one amount change per entry, 1000 changes per unit of work
+ * 	scan: reading the whole ledger a page at a time through Database.getLedger
+ * 	history: Database.getHistory for one envelope
+ * 	totals: adding up every envelope from the ledger; SQLite through getLedger pages, the file through scan() without building entries
+ * 	reopen: closing the ledger and opening it again, which checks its tail
+ * Runs against scratch files, the real database is not touched.
+ */
+public class LedgerBenchmark {
+
+	private static final int[] ledgerSizes = {1_000, 10_000, 100_000};
+	private static final int envelopes = 20;
+	private static final int changesPerUnit = 1000;
+	private static final int pageSize = 1000;
+
+	public static void main(String[] args) throws IOException {
+
+		StringBuilder results = new StringBuilder();
+		results.append("entries\tledger\tappend ms\tscan ms\thistory ms\ttotals ms\treopen ms\n");
+
+		for(int size : ledgerSizes) {
+			Path file = Files.createTempFile("eba-ledger-", ".db");
+			results.append(run(size, "sqlite", new SqliteEnvelopeStore("jdbc:sqlite:" + file), () -> {}, null));
+			Files.deleteIfExists(file);
+
+			Path ledgerFile = Files.createTempFile("eba-ledger-", ".ledger");
+			Files.delete(ledgerFile);
+			MappedLedgerFile ledger = new MappedLedgerFile(ledgerFile, false, 65536);
+			results.append(run(size, "mapped file", new InMemoryEnvelopeStore(ledger), ledger::force, ledger));
+			Files.deleteIfExists(ledgerFile);
+			Files.deleteIfExists(Paths.get(ledgerFile + ".names"));
+		}
+
+		System.out.println(results);
+	}
+
+	private static String run(int size, String name, EnvelopeStore store, Runnable sync, MappedLedgerFile ledger) throws IOException {
+		Database.useStore(store);
+		Database.createNewDatabase();
+		for(int index = 0; index < envelopes; index++) {
+			Database.addEnvelope(new Envelope(index + 1, "envelope " + index, BigDecimal.ZERO, EnvelopeSettings.amount, 10, false, 0, false, false));
+		}
+
+		long start = System.nanoTime();
+		for(int written = 0; written < size; written += changesPerUnit) {
+			int first = written;
+			UnitOfWork.run("benchmark", () -> {
+				for(int change = first; change < Math.min(first + changesPerUnit, size); change++) {
+					Database.editAmount("envelope " + (change % envelopes), BigDecimal.valueOf(change + 1, 2));
+				}
+			});
+		}
+		sync.run();
+		double appendMillis = millisSince(start);
+
+		start = System.nanoTime();
+		long read = 0;
+		for(List<LedgerEntry> page = Database.getLedger(0, pageSize); !page.isEmpty(); page = Database.getLedger(page.get(page.size() - 1).getSequence(), pageSize)) {
+			read += page.size();
+		}
+		double scanMillis = millisSince(start);
+
+		start = System.nanoTime();
+		Database.getHistory("envelope 0");
+		double historyMillis = millisSince(start);
+
+		start = System.nanoTime();
+		if(ledger != null) {
+			ledger.totals(1, Long.MAX_VALUE);
+		} else {
+			Map<String, Long> totals = new HashMap<>();
+			for(List<LedgerEntry> page = Database.getLedger(0, pageSize); !page.isEmpty(); page = Database.getLedger(page.get(page.size() - 1).getSequence(), pageSize)) {
+				for(LedgerEntry entry : page) totals.merge(entry.getEnvelope(), entry.getAmountCents(), Long::sum);
+			}
+		}
+		double totalsMillis = millisSince(start);
+
+		double reopenMillis;
+		if(ledger != null) {
+			Path path = ledger.getPath();
+			Database.useStore(null);
+			start = System.nanoTime();
+			new MappedLedgerFile(path, false, 65536).close();
+			reopenMillis = millisSince(start);
+		} else {
+			Database.useStore(null);
+			start = System.nanoTime();
+			store.initialize();
+			reopenMillis = millisSince(start);
+			store.close();
+		}
+
+		return read + "\t" + name + "\t" + String.format("%.3f", appendMillis) + "\t" + String.format("%.3f", scanMillis) + "\t"
+				+ String.format("%.3f", historyMillis) + "\t" + String.format("%.3f", totalsMillis) + "\t"
+				+ String.format("%.3f", reopenMillis) + "\n";
+	}
+
+	private static double millisSince(long start) {
+		return (System.nanoTime() - start) / 1_000_000.0;
+	}
+}
@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import data.Database;
+import data.SqliteEnvelopeStore;
+import dataObjects.Envelope;
+import settings.EnvelopeSettings;
+
+/*
+ * Compares the database round trips needed for one pass over every envelope in priority order.
+ * 	before: getEnvelopes() for the count, then getEnvelopeByPriority(index) for every priority (N + 1)
+ * 	after: a single getEnvelopesByPriority() (1)
+ * 	cached: getEnvelopesByPriority() answered by the envelope cache (0)
+ * Every Database call that queries checks a connection out of the pool once, so pool checkouts are the round trips.
+ * The cache is turned off for the before and after passes so they measure the queries.
+ * Runs against a scratch database file, the real database is not touched.
+ */
+public class RoundTripBenchmark {
+
+	private static final int[] envelopeCounts = {10, 50, 100, 500, 1000};
+	private static final int passes = 20;
+
+	public static void main(String[] args) throws IOException {
+
+		StringBuilder results = new StringBuilder();
+		results.append("envelopes\tbefore round trips\tafter round trips\tcached round trips\tbefore ms/pass\tafter ms/pass\tcached ms/pass\n");
+
+		for(int count : envelopeCounts) {
+			Path file = Files.createTempFile("eba-roundtrips-", ".db");
+			SqliteEnvelopeStore store = new SqliteEnvelopeStore("jdbc:sqlite:" + file);
+			Database.useStore(store);
+			Database.createNewDatabase();
+
+			for(int index = 0; index < count; index++) {
+				Database.addEnvelope(new Envelope(index + 1, "envelope " + index, BigDecimal.ZERO, EnvelopeSettings.amount, 10, false, 0, false, false));
+			}
+
+			store.setCacheEnabled(false);
+
+			//warm up the pool and statement caches before measuring
+			legacyPass();
+			bulkPass();
+
+			long checkouts = checkouts(store);
+			long start = System.nanoTime();
+			for(int pass = 0; pass < passes; pass++) legacyPass();
+			double beforeMillis = (System.nanoTime() - start) / 1_000_000.0 / passes;
+			long beforeTrips = (checkouts(store) - checkouts) / passes;
+
+			checkouts = checkouts(store);
+			start = System.nanoTime();
+			for(int pass = 0; pass < passes; pass++) bulkPass();
+			double afterMillis = (System.nanoTime() - start) / 1_000_000.0 / passes;
+			long afterTrips = (checkouts(store) - checkouts) / passes;
+
+			store.setCacheEnabled(true);
+			bulkPass(); //loads the cache
+
+			checkouts = checkouts(store);
+			start = System.nanoTime();
+			for(int pass = 0; pass < passes; pass++) bulkPass();
+			double cachedMillis = (System.nanoTime() - start) / 1_000_000.0 / passes;
+			long cachedTrips = (checkouts(store) - checkouts) / passes;
+
+			results.append(count + "\t" + beforeTrips + "\t" + afterTrips + "\t" + cachedTrips + "\t"
+					+ String.format("%.3f", beforeMillis) + "\t" + String.format("%.3f", afterMillis) + "\t"
+					+ String.format("%.3f", cachedMillis) + "\n");
+
+			Database.useDatabase(null);
+			Files.deleteIfExists(file);
+		}
+
+		System.out.println(results);
+	}
+
+	//how EnvelopeActions and PrototypeUI used to walk the envelopes
+	private static void legacyPass() {
+		int size = Database.getEnvelopes().size();
+		for(int priority = 1; priority <= size; priority++) {
+			Database.getEnvelopeByPriority(priority);
+		}
+	}
+
+	private static void bulkPass() {
+		Database.getEnvelopesByPriority();
+	}
+
+	private static long checkouts(SqliteEnvelopeStore store) {
+		return store.getPoolMetrics().getCheckouts();
+	}
+}
@@ -0,0 +1,58 @@
+package data;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Converts between dollar amounts and the whole cents they are stored as.
+ * <p>
+ * Amounts are stored in INTEGER columns as a count of cents so SQLite can sum
+ * and compare them exactly, without going through text or floating point.
+ * {@link dataObjects.Envelope} rounds every amount it is given with {@link #round(BigDecimal)},
+ * so an envelope in memory holds the same amount as its row.
+ */
+public class Cents {
+
+    private Cents() {
+    }
+
+    /**
+     * Rounds a dollar amount half up to whole cents, the precision amounts are stored with.
+     *
+     * @param amount dollar amount, or null
+     * @return the amount with two decimal places, or null.
+     */
+    public static BigDecimal round(BigDecimal amount) {
+        if (amount == null) return null;
+        return amount.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * @param amount dollar amount
+     * @return true if the amount has a fraction of a cent, which {@link #round(BigDecimal)} would change.
+     */
+    public static boolean hasFractionOfCent(BigDecimal amount) {
+        return amount.signum() != 0 && amount.stripTrailingZeros().scale() > 2;
+    }
+
+    /**
+     * Converts a dollar amount to cents, rounding half up to the nearest cent.
+     *
+     * @param amount dollar amount
+     * @return the amount in cents
+     * @throws ArithmeticException if the amount does not fit in a long
+     */
+    public static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts cents to a dollar amount with two decimal places.
+     *
+     * @param cents amount in cents
+     * @return the dollar amount
+     */
+    public static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+}
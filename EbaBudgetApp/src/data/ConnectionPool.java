@@ -0,0 +1,332 @@
+package data;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a small set of long-lived SQLite connections open for {@link Database}.
+ * <p>
+ * SQLite only allows one writer at a time, so the pool holds a single writer
+ * connection and a fixed number of reader connections. Connections are opened
+ * once when the pool is created, validated on checkout and reopened if they
+ * went bad, and closed when the pool is shut down. Each connection carries
+ * its own {@link StatementCache}, and has the pool's {@link DurabilityProfile}
+ * applied when it is opened.
+ */
+public class ConnectionPool {
+
+    private static final DatabaseLog log = DatabaseLog.forClass(ConnectionPool.class);
+
+    private final String url;
+    private final int readerCount;
+    private final long checkoutTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+    private final DurabilityProfile durability;
+
+    private final BlockingQueue<Connection> writer = new ArrayBlockingQueue<>(1);
+    private final BlockingQueue<Connection> readers;
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+    private final StatementCache.Stats statementCacheStats = new StatementCache.Stats();
+    private volatile boolean closed = false;
+
+    //metrics
+    private final AtomicLong checkouts = new AtomicLong();
+    private final AtomicLong saturatedCheckouts = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong replacedConnections = new AtomicLong();
+    private final AtomicInteger inUse = new AtomicInteger();
+
+    /**
+     * Opens the writer connection and all reader connections.
+     *
+     * @param url                      JDBC url of the database
+     * @param readerCount              number of reader connections to keep open
+     * @param checkoutTimeoutMillis    how long to wait for a free connection
+     * @param validationTimeoutSeconds timeout passed to {@link Connection#isValid(int)} on checkout
+     * @param statementCacheSize       number of prepared statements cached per connection
+     * @param durability               pragmas set on every connection, or null to leave SQLite's defaults
+     * @throws SQLException if any connection could not be opened
+     */
+    public ConnectionPool(String url, int readerCount, long checkoutTimeoutMillis, int validationTimeoutSeconds,
+            int statementCacheSize, DurabilityProfile durability) throws SQLException {
+        if (readerCount <= 0) {
+            throw new IllegalArgumentException("Reader count must be greater than 0");
+        }
+        this.url = url;
+        this.readerCount = readerCount;
+        this.checkoutTimeoutMillis = checkoutTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.durability = durability;
+        this.readers = new ArrayBlockingQueue<>(readerCount);
+
+        try {
+            // the writer is opened first so it can create the database file if it is missing
+            writer.add(open());
+            for (int index = 0; index < readerCount; index++) {
+                readers.add(open());
+            }
+        } catch (SQLException e) {
+            shutdown();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks out the writer connection, waiting if another caller holds it.
+     *
+     * @return the writer connection; close it to give it back to the pool.
+     * @throws SQLException if the pool is shut down or the wait timed out
+     */
+    public PooledConnection writer() throws SQLException {
+        return checkout(writer, "writer");
+    }
+
+    /**
+     * Checks out a reader connection, waiting if all of them are in use.
+     *
+     * @return a reader connection; close it to give it back to the pool.
+     * @throws SQLException if the pool is shut down or the wait timed out
+     */
+    public PooledConnection reader() throws SQLException {
+        return checkout(readers, "reader");
+    }
+
+    private PooledConnection checkout(BlockingQueue<Connection> queue, String kind) throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool has been shut down");
+        }
+
+        long start = System.nanoTime();
+        Connection conn = queue.poll();
+        if (conn == null) {
+            // every connection of this kind is busy
+            saturatedCheckouts.incrementAndGet();
+            try {
+                conn = queue.poll(checkoutTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a " + kind + " connection");
+            }
+            if (conn == null) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Timed out after " + checkoutTimeoutMillis + "ms waiting for a " + kind + " connection");
+            }
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            conn = validate(conn);
+        } catch (SQLException e) {
+            // keep the slot usable for the next caller, it will try to reopen again
+            queue.offer(conn);
+            throw e;
+        }
+
+        checkouts.incrementAndGet();
+        inUse.incrementAndGet();
+        return new PooledConnection(this, queue, conn, statementCaches.get(conn));
+    }
+
+    private Connection validate(Connection conn) throws SQLException {
+        boolean valid;
+        try {
+            valid = !conn.isClosed() && conn.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            valid = false;
+        }
+        if (valid) {
+            return conn;
+        }
+
+        replacedConnections.incrementAndGet();
+        closeQuietly(conn);
+        return open();
+    }
+
+    private Connection open() throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        if (durability != null) {
+            try {
+                durability.apply(conn);
+            } catch (SQLException e) {
+                conn.close();
+                throw e;
+            }
+        }
+        statementCaches.put(conn, new StatementCache(conn, statementCacheSize, statementCacheStats));
+        return conn;
+    }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /**
+     * Returns a connection to the queue it was checked out from.
+     */
+    void release(BlockingQueue<Connection> queue, Connection conn) {
+        inUse.decrementAndGet();
+        if (closed || !queue.offer(conn)) {
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Closes every idle connection. Connections still checked out are closed
+     * when they are returned.
+     */
+    public void shutdown() {
+        closed = true;
+        List<Connection> idle = new ArrayList<>();
+        writer.drainTo(idle);
+        readers.drainTo(idle);
+        for (Connection conn : idle) {
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * @return true if {@link #shutdown()} has been called.
+     */
+    public boolean isShutdown() {
+        return closed;
+    }
+
+    private void closeQuietly(Connection conn) {
+        StatementCache cache = statementCaches.remove(conn);
+        if (cache != null) {
+            cache.close();
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            log.error("Failed to close connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the prepared-statement cache counters, shared by every connection in the pool.
+     */
+    public StatementCache.Stats getStatementCacheStats() {
+        return statementCacheStats;
+    }
+
+    /**
+     * @return the pragmas set on every connection, or null if SQLite's defaults are used.
+     */
+    public DurabilityProfile getDurability() {
+        return durability;
+    }
+
+    /**
+     * @return a snapshot of the pool's checkout and saturation metrics.
+     */
+    public Metrics getMetrics() {
+        return new Metrics(checkouts.get(), saturatedCheckouts.get(), timeouts.get(), totalWaitNanos.get(),
+                maxWaitNanos.get(), replacedConnections.get(), inUse.get(), readerCount + 1);
+    }
+
+    /**
+     * Point-in-time view of the pool metrics.
+     */
+    public static class Metrics {
+
+        private final long checkouts;
+        private final long saturatedCheckouts;
+        private final long timeouts;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+        private final long replacedConnections;
+        private final int inUse;
+        private final int size;
+
+        Metrics(long checkouts, long saturatedCheckouts, long timeouts, long totalWaitNanos, long maxWaitNanos,
+                long replacedConnections, int inUse, int size) {
+            this.checkouts = checkouts;
+            this.saturatedCheckouts = saturatedCheckouts;
+            this.timeouts = timeouts;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.replacedConnections = replacedConnections;
+            this.inUse = inUse;
+            this.size = size;
+        }
+
+        public long getCheckouts() {
+            return checkouts;
+        }
+
+        /**
+         * @return number of checkouts that found no free connection and had to wait.
+         */
+        public long getSaturatedCheckouts() {
+            return saturatedCheckouts;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getTotalWaitNanos() {
+            return totalWaitNanos;
+        }
+
+        public long getMaxWaitNanos() {
+            return maxWaitNanos;
+        }
+
+        public double getAverageWaitMicros() {
+            if (checkouts == 0) return 0;
+            return totalWaitNanos / 1000.0 / checkouts;
+        }
+
+        /**
+         * @return number of connections that failed validation and were reopened.
+         */
+        public long getReplacedConnections() {
+            return replacedConnections;
+        }
+
+        public int getInUse() {
+            return inUse;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return fraction of checkouts that had to wait for a connection.
+         */
+        public double getSaturation() {
+            if (checkouts == 0) return 0;
+            return (double) saturatedCheckouts / checkouts;
+        }
+
+        @Override
+        public String toString() {
+            return "checkouts: " + checkouts +
+                    "\nsaturated checkouts: " + saturatedCheckouts +
+                    "\ntimeouts: " + timeouts +
+                    "\naverage wait (us): " + String.format("%.2f", getAverageWaitMicros()) +
+                    "\nmax wait (us): " + (maxWaitNanos / 1000) +
+                    "\nreplaced connections: " + replacedConnections +
+                    "\nin use: " + inUse + "/" + size;
+        }
+    }
+}
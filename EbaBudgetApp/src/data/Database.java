@@ -1,122 +1,126 @@
 package data;
 
 import java.math.BigDecimal;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.List;
 
 import dataObjects.Envelope;
+import dataObjects.LedgerEntry;
+import settings.DatabaseSettings;
 
 /**
- * Utility class for interacting with a SQLite database.
+ * Utility class the rest of the program uses to store and read envelopes.
+ * <p>
+ * Every call is passed to the current {@link EnvelopeStore}: a {@link SqliteEnvelopeStore}
+ * on the default database file unless {@link DatabaseSettings#storage} or
+ * {@link #useStore(EnvelopeStore)} picks another one.
  */
 public class Database {
 
+    /*
+     * Every query and direct write starts with UnitOfWork.flush(), so envelope
+     * changes still pending in an active unit of work are saved before it runs.
+     * Every method records its time and rows in the DatabaseMetrics when it returns.
+     */
+
     /**
-     * Flag to indicate if the program is running from an IDE.
-     * Set to false when making the program into an application.
+     * Store every method in this class uses, opened on first use.
      */
-    private static final boolean IDE = true;
+    private static EnvelopeStore store;
 
     /**
-     * Checks if the program is running from an IDE.
-     * 
-     * @return true if running from an IDE; false otherwise.
+     * Set once the JVM shutdown hook that closes the store has been registered.
      */
-    private static boolean isRunningFromIDE() {
-        return IDE;
-    }
+    private static boolean shutdownHookRegistered = false;
 
     /**
-     * Gets the database path based on the execution environment.
-     * 
-     * @return the database path as a string.
+     * Latency and row counts of every method in this class.
      */
-    private static String getDatabasePath() {
-        if (isRunningFromIDE()) {
-            System.out.println("Running from IDE");
-            String appDir = System.getProperty("user.dir");
-            // Adjust the database path for IDE environment
-            return "jdbc:sqlite:" + appDir + "/src/data/database.db";
-        } else {
-            System.out.println("Running from Application");
-            // Adjust the database path for executable environment (JAR)
-            String appDir = "/Applications/Envelope Budgeting Application.app";
-            return "jdbc:sqlite:" + appDir + "/Contents/app/src/data/envelopes.db";
-        }
-    }
-    
+    private static final DatabaseMetrics metrics = new DatabaseMetrics();
+
     /**
-     * Initializes the database by creating a new one if it doesn't exist.
+     * Returns the current store, opening the one chosen in {@link DatabaseSettings#storage} on first use.
+     *
+     * @return the current store.
      */
-    public static void Initialize() {
-    	createNewDatabase();
+    public static synchronized EnvelopeStore getStore() {
+        if (store == null) {
+            store = defaultStore();
+        }
+        if (!shutdownHookRegistered) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Database::shutdown, "database-shutdown"));
+            shutdownHookRegistered = true;
+        }
+        return store;
     }
 
+    private static EnvelopeStore defaultStore() {
+        switch (DatabaseSettings.storage) {
+            case "memory": return new InMemoryEnvelopeStore();
+            case "sqlite":
+                SqliteEnvelopeStore sqlite = new SqliteEnvelopeStore(SqliteEnvelopeStore.getDefaultDatabasePath());
+                if (DatabaseSettings.backupIntervalMinutes > 0) {
+                    sqlite.getBackups().schedule(DatabaseSettings.backupIntervalMinutes);
+                }
+                return sqlite;
+            default: throw new IllegalStateException("Unknown storage " + DatabaseSettings.storage);
+        }
+    }
 
     /**
-     * Creates a new SQLite database if it doesn't exist and initializes necessary tables.
+     * Switches to another store, for example an {@link InMemoryEnvelopeStore} for benchmarks.
+     * The previous store is closed.
+     *
+     * @param newStore the store to use, or null to go back to the default store.
      */
-    public static void createNewDatabase() {
-        try (Connection conn = DriverManager.getConnection(getDatabasePath())) {
-            if (conn != null) {
-                System.out.println("A new database has been created.");
-                createTables(conn); // Ensure tables are created after database creation
-            }
-        } catch (SQLException e) {
-            System.out.println("Failed to create database: " + e.getMessage());
+    public static void useStore(EnvelopeStore newStore) {
+        WriteQueue.shutdownShared();
+        GroupCommit.shutdownShared();
+        synchronized (Database.class) {
+            closeStore();
+            store = newStore;
         }
     }
 
     /**
-     * Creates the 'envelopes' table if it doesn't exist.
+     * Points the database at another SQLite file, for example a scratch file for benchmarks.
      *
-     * @param conn Connection to the SQLite database
+     * @param url JDBC url of the database to use, or null to go back to the default store.
+     */
+    public static void useDatabase(String url) {
+        useStore(url == null ? null : new SqliteEnvelopeStore(url));
+    }
+
+    /**
+     * Lets queued writes finish, then closes the current store. It is reopened if the database is used again.
      */
-    public static void createTables(Connection conn) {
-        String sql = "CREATE TABLE IF NOT EXISTS envelopes (\n"
-                + " name TEXT PRIMARY KEY,\n"
-                + " priority INTEGER NOT NULL,\n"
-                + " amount TEXT NOT NULL,\n" // Change to TEXT
-                + " fill_setting INTEGER,\n"
-                + " fill_amount INTEGER,\n"
-                + " cap BOOLEAN,\n"
-                + " cap_amount INTEGER,\n"
-                + " extra BOOLEAN,\n"
-                + " default_env BOOLEAN\n"
-                + ");";
-
-        try (Statement stmt = conn.createStatement()) {
-            stmt.execute(sql);
-            System.out.println("Tables have been created.");
-        } catch (SQLException e) {
-            System.out.println("Failed to create tables: " + e.getMessage());
+    public static void shutdown() {
+        // queued writes call back into this class, so they finish before the lock is taken
+        WriteQueue.shutdownShared();
+        GroupCommit.shutdownShared();
+        closeStore();
+    }
+
+    private static synchronized void closeStore() {
+        if (store != null) {
+            store.close();
         }
     }
 
+    /**
+     * Initializes the database by creating a new one if it doesn't exist.
+     */
+    public static void Initialize() {
+    	createNewDatabase();
+    }
+
 
     /**
-     * Checks if a table with the given name exists in the database.
-     *
-     * @param tableName Name of the table to check
-     * @return true if the table exists; false otherwise
+     * Creates a new database if it doesn't exist and initializes necessary tables.
      */
-    public static boolean tableExists(String tableName) {
-        try (Connection conn = DriverManager.getConnection(getDatabasePath())) {
-            DatabaseMetaData meta = conn.getMetaData();
-            try (ResultSet rs = meta.getTables(null, null, tableName, new String[]{"TABLE"})) {
-                return rs.next();
-            }
-        } catch (SQLException e) {
-            System.out.println("Failed to check table existence: " + e.getMessage());
-        }
-        return false;
+    public static void createNewDatabase() {
+        long start = System.nanoTime();
+        getStore().initialize();
+        metrics.record("createNewDatabase", start, 0, 0);
     }
 
     /**
@@ -134,25 +138,7 @@ public class Database {
      */
     public static void addEnvelope(String name, int priority, BigDecimal amount, int fillSetting, int fillAmount,
     		boolean cap, int capAmount, boolean extra, boolean defaultEnv) {
-
-    	String sql = "INSERT INTO envelopes(name, priority, amount, fill_setting, fill_amount, cap, cap_amount, extra, default_env) VALUES(?,?,?,?,?,?,?,?,?)";
-
-    	try (Connection conn = DriverManager.getConnection(getDatabasePath());
-    			PreparedStatement pstmt = conn.prepareStatement(sql)) {
-    		pstmt.setString(1, name);
-    		pstmt.setInt(2, priority);
-    		pstmt.setString(3, amount.toString()); // Store BigDecimal as String
-    		pstmt.setInt(4, fillSetting);
-    		pstmt.setInt(5, fillAmount);
-    		pstmt.setBoolean(6, cap);
-    		pstmt.setInt(7, capAmount);
-    		pstmt.setBoolean(8, extra);
-    		pstmt.setBoolean(9, defaultEnv);
-    		pstmt.executeUpdate();
-    		System.out.println("Envelope added successfully.");
-    	} catch (SQLException e) {
-    		System.out.println("Failed to add envelope: " + e.getMessage());
-    	}
+    	addEnvelope(new Envelope(priority, name, amount, fillSetting, fillAmount, cap, capAmount, extra, defaultEnv));
     }
 
     /**
@@ -161,25 +147,24 @@ public class Database {
      * @param e The Envelope object to add.
      */
     public static void addEnvelope(Envelope e) {
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        getStore().addEnvelope(e);
+        metrics.record("addEnvelope", start, 0, 1);
+    }
 
-        String sql = "INSERT INTO envelopes(name, priority, amount, fill_setting, fill_amount, cap, cap_amount, extra, default_env) VALUES(?,?,?,?,?,?,?,?,?)";
-
-        try (Connection conn = DriverManager.getConnection(getDatabasePath());
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, e.getName());
-            pstmt.setInt(2, e.getPriority());
-            pstmt.setString(3, e.getAmount().toString()); // Store BigDecimal as String
-            pstmt.setInt(4, e.getFillSetting());
-            pstmt.setInt(5, e.getFillAmount());
-            pstmt.setBoolean(6, e.hasCap());
-            pstmt.setInt(7, e.getCapAmount());
-            pstmt.setBoolean(8, e.isExtra());
-            pstmt.setBoolean(9, e.isDefault());
-            pstmt.executeUpdate();
-            System.out.println("Envelope added successfully.");
-        } catch (SQLException f) {
-            System.out.println("Failed to add envelope: " + f.getMessage());
-        }
+    /**
+     * Adds several envelopes in one transaction, with batched inserts.
+     *
+     * @param envelopes the envelopes to add.
+     * @return true if every envelope was added; false if none were.
+     */
+    public static boolean addEnvelopes(List<Envelope> envelopes) {
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        boolean added = getStore().addEnvelopes(envelopes);
+        metrics.record("addEnvelopes", start, 0, added ? envelopes.size() : 0);
+        return added;
     }
 
     /**
@@ -198,53 +183,45 @@ public class Database {
      * @return true if the envelope was updated successfully; false otherwise.
      */
     public static boolean editEnvelope(String currentName, String newName, int priority, BigDecimal amount, int fillSetting, int fillAmount, boolean cap, int capAmount, boolean extra, boolean defaultEnv) {
-        String url = getDatabasePath();
-        String updateSQL = "UPDATE envelopes SET name = ?, priority = ?, amount = ?, fill_setting = ?, fill_amount = ?, cap = ?, cap_amount = ?, extra = ?, default_env = ? WHERE name = ?";
-
-        try (Connection conn = DriverManager.getConnection(url);
-             PreparedStatement updateStmt = conn.prepareStatement(updateSQL)) {
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        boolean edited = getStore().editEnvelope(currentName,
+                new Envelope(priority, newName, amount, fillSetting, fillAmount, cap, capAmount, extra, defaultEnv));
+        metrics.record("editEnvelope", start, 0, edited ? 1 : 0);
+        return edited;
+    }
 
-            conn.setAutoCommit(false);
 
-            // Check and update other envelopes if 'extra' is true
-            if (extra) {
-                String resetExtraSQL = "UPDATE envelopes SET extra = false WHERE extra = true";
-                try (PreparedStatement resetExtraStmt = conn.prepareStatement(resetExtraSQL)) {
-                    resetExtraStmt.executeUpdate();
-                }
-            }
+    /**
+     * Saves the changed fields of one envelope.
+     *
+     * @param e the envelope to save.
+     * @return true if the changes were saved; false otherwise.
+     */
+    public static boolean updateEnvelope(Envelope e) {
+        return updateEnvelopes(List.of(e));
+    }
 
-            // Check and update other envelopes if 'default_env' is true
-            if (defaultEnv) {
-                String resetDefaultSQL = "UPDATE envelopes SET default_env = false WHERE default_env = true";
-                try (PreparedStatement resetDefaultStmt = conn.prepareStatement(resetDefaultSQL)) {
-                    resetDefaultStmt.executeUpdate();
-                }
-            }
-
-            // Update the specified envelope
-            updateStmt.setString(1, newName);
-            updateStmt.setInt(2, priority);
-            updateStmt.setBigDecimal(3, amount);
-            updateStmt.setInt(4, fillSetting);
-            updateStmt.setInt(5, fillAmount);
-            updateStmt.setBoolean(6, cap);
-            updateStmt.setInt(7, capAmount);
-            updateStmt.setBoolean(8, extra);
-            updateStmt.setBoolean(9, defaultEnv);
-            updateStmt.setString(10, currentName);
-
-            int affectedRows = updateStmt.executeUpdate();
-
-            conn.commit();
-
-            return affectedRows > 0;
-        } catch (SQLException e) {
-            System.out.println("Failed to update envelope: " + e.getMessage());
+    /**
+     * Saves the changed fields of several envelopes in one transaction. Only the
+     * changed fields are written. Envelopes are marked clean once they are saved.
+     *
+     * @param envelopes the envelopes to save.
+     * @return true if every change was saved; false if none were.
+     */
+    public static boolean updateEnvelopes(List<Envelope> envelopes) {
+        long start = System.nanoTime();
+        if (!getStore().updateEnvelopes(envelopes)) {
+            metrics.record("updateEnvelopes", start, 0, 0);
             return false;
         }
+
+        for (Envelope e : envelopes) {
+            e.markClean();
+        }
+        metrics.record("updateEnvelopes", start, 0, envelopes.size());
+        return true;
     }
-    
 
     /**
      * Retrieves all envelope entries from the 'envelopes' table.
@@ -252,31 +229,24 @@ public class Database {
      * @return a list of Envelope objects.
      */
     public static List<Envelope> getEnvelopes() {
-        List<Envelope> envelopes = new ArrayList<>();
-        String sql = "SELECT * FROM envelopes";
-
-        try (Connection conn = DriverManager.getConnection(getDatabasePath());
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                String name = rs.getString("name");
-                int priority = rs.getInt("priority");
-                BigDecimal amount = new BigDecimal(rs.getString("amount")); // Retrieve BigDecimal from String
-                int fillSetting = rs.getInt("fill_setting");
-                int fillAmount = rs.getInt("fill_amount");
-                boolean cap = rs.getBoolean("cap");
-                int capAmount = rs.getInt("cap_amount");
-                boolean extra = rs.getBoolean("extra");
-                boolean defaultEnv = rs.getBoolean("default_env");
-
-                Envelope envelope = new Envelope(priority, name, amount, fillSetting, fillAmount, cap, capAmount, extra, defaultEnv);
-                envelopes.add(envelope);
-            }
-        } catch (SQLException e) {
-            System.out.println("Failed to retrieve envelopes: " + e.getMessage());
-        }
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        List<Envelope> envelopes = getStore().getEnvelopes();
+        metrics.record("getEnvelopes", start, envelopes.size(), 0);
+        return envelopes;
+    }
 
+    /**
+     * Retrieves all envelope entries ordered by priority, lowest priority number first.
+     * Use this instead of calling {@link #getEnvelopeByPriority(int)} for every priority.
+     *
+     * @return a list of Envelope objects in priority order.
+     */
+    public static List<Envelope> getEnvelopesByPriority() {
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        List<Envelope> envelopes = getStore().getEnvelopesByPriority();
+        metrics.record("getEnvelopesByPriority", start, envelopes.size(), 0);
         return envelopes;
     }
 
@@ -287,33 +257,11 @@ public class Database {
      * @return an Envelope object if found; null otherwise.
      */
     public static Envelope getEnvelope(String name) {
-        String sql = "SELECT * FROM envelopes WHERE name = ?";
-        Envelope envelope = null;
-
-        try (Connection conn = DriverManager.getConnection(getDatabasePath());
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, name);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    String envelopeName = rs.getString("name");
-                    int priority = rs.getInt("priority");
-                    BigDecimal amount = new BigDecimal(rs.getString("amount")); // Retrieve BigDecimal from String
-                    int fillSetting = rs.getInt("fill_setting");
-                    int fillAmount = rs.getInt("fill_amount");
-                    boolean cap = rs.getBoolean("cap");
-                    int capAmount = rs.getInt("cap_amount");
-                    boolean extra = rs.getBoolean("extra");
-                    boolean defaultEnv = rs.getBoolean("default_env");
-
-                    envelope = new Envelope(priority, envelopeName, amount, fillSetting, fillAmount, cap, capAmount, extra, defaultEnv);
-                }
-            }
-        } catch (SQLException e) {
-            System.out.println("Failed to retrieve envelope: " + e.getMessage());
-        }
-
-        return envelope;
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        Envelope e = getStore().getEnvelope(name);
+        metrics.record("getEnvelope", start, e == null ? 0 : 1, 0);
+        return e;
     }
 
 
@@ -324,196 +272,127 @@ public class Database {
      * @return true if the envelope was deleted successfully; false otherwise.
      */
     public static boolean removeEnvelope(String name) {
-        String sql = "DELETE FROM envelopes WHERE name = ?";
-
-        try (Connection conn = DriverManager.getConnection(getDatabasePath());
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, name);
-
-            int affectedRows = pstmt.executeUpdate();
-            return affectedRows > 0;
-        } catch (SQLException e) {
-            System.out.println("Failed to remove envelope: " + e.getMessage());
-            return false;
-        }
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        boolean removed = getStore().removeEnvelope(name);
+        metrics.record("removeEnvelope", start, 0, removed ? 1 : 0);
+        return removed;
     }
 
     /**
-     * Prints all envelopes currently stored in the 'envelopes' table.
+     * Prints all envelopes currently stored.
      */
     public static void printAllEnvelopes() {
-        String sql = "SELECT * FROM envelopes";
-
-        try (Connection conn = DriverManager.getConnection(getDatabasePath());
-                Statement stmt = conn.createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                System.out.println(rs.getString("name") + "\t" + rs.getInt("priority") + "\t"
-                        + rs.getDouble("amount") + "\t" + rs.getInt("fill_setting") + "\t"
-                        + rs.getInt("fill_amount") + "\t" + rs.getBoolean("cap") + "\t"
-                        + rs.getInt("cap_amount") + "\t" + rs.getBoolean("extra") + "\t"
-                        + rs.getBoolean("default_env"));
-            }
-        } catch (SQLException e) {
-            System.out.println("Failed to print envelopes: " + e.getMessage());
+        for (Envelope e : getEnvelopes()) {
+            System.out.println(e.getName() + "\t" + e.getPriority() + "\t" + e.getAmount() + "\t"
+                    + e.getFillSetting() + "\t" + e.getFillAmount() + "\t" + e.hasCap() + "\t"
+                    + e.getCapAmount() + "\t" + e.isExtra() + "\t" + e.isDefault());
         }
     }
-    
+
+    /**
+     * @return how many envelopes there are, without copying them like {@link #getEnvelopes()} does.
+     */
+    public static int getEnvelopeCount() {
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        int count = getStore().getEnvelopeCount();
+        metrics.record("getEnvelopeCount", start, 1, 0);
+        return count;
+    }
+
     /**
      * Returns the sum of the amount of all existing envelopes in the database.
      *
      * @return Total balance of all envelopes
      */
     public static BigDecimal getBalance() {
-        BigDecimal balance = BigDecimal.ZERO; // Default value or initial value
-
-        try (Connection conn = DriverManager.getConnection(getDatabasePath());
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT SUM(amount) AS total_amount FROM envelopes")) {
-
-            if (rs.next()) {
-                String totalAmountStr = rs.getString("total_amount");
-                if (totalAmountStr != null) {
-                    balance = new BigDecimal(totalAmountStr);
-                }
-            } else {
-                // Handle case where no envelope data is found
-                System.out.println("No envelopes found in the database.");
-                // Alternatively, you could throw an exception or return a specific value
-                // depending on your application's requirements
-                // throw new IllegalStateException("No envelopes found");
-            }
-
-        } catch (SQLException e) {
-            System.out.println("Error fetching balance: " + e.getMessage());
-            // Handle SQLException appropriately (logging, exception propagation, etc.)
-        }
-
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        BigDecimal balance = getStore().getBalance();
+        metrics.record("getBalance", start, 1, 0);
         return balance;
     }
-    
+
 
 
     public static Envelope getEnvelopeByPriority(int priority) {
-        String sql = "SELECT * FROM envelopes WHERE priority = ?";
-        
-        try (Connection conn = DriverManager.getConnection(getDatabasePath());
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setInt(1, priority);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                String name = rs.getString("name");
-                BigDecimal amount = new BigDecimal(rs.getString("amount")); // Retrieve as String and convert to BigDecimal
-                int fillSetting = rs.getInt("fill_setting");
-                int fillAmount = rs.getInt("fill_amount");
-                boolean cap = rs.getBoolean("cap");
-                int capAmount = rs.getInt("cap_amount");
-                boolean extra = rs.getBoolean("extra");
-                boolean defaultEnv = rs.getBoolean("default_env");
-                
-                return new Envelope(priority, name, amount, fillSetting, fillAmount, cap, capAmount, extra, defaultEnv);
-            }
-        } catch (SQLException e) {
-            System.out.println("Failed to retrieve envelope by priority: " + e.getMessage());
-        }
-        
-        return null; // Return null if envelope with given priority is not found
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        Envelope e = getStore().getEnvelopeByPriority(priority);
+        metrics.record("getEnvelopeByPriority", start, e == null ? 0 : 1, 0);
+        return e;
     }
-    
+
     public static Envelope getDefault() {
-        String sql = "SELECT * FROM envelopes WHERE default_env = 1";
-        
-        try (Connection conn = DriverManager.getConnection(getDatabasePath());
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            if (rs.next()) {
-                int priority = rs.getInt("priority");
-                String name = rs.getString("name");
-                BigDecimal amount = new BigDecimal(rs.getString("amount")); // Retrieve as String and convert to BigDecimal
-                int fillSetting = rs.getInt("fill_setting");
-                int fillAmount = rs.getInt("fill_amount");
-                boolean cap = rs.getBoolean("cap");
-                int capAmount = rs.getInt("cap_amount");
-                boolean extra = rs.getBoolean("extra");
-                boolean defaultEnv = rs.getBoolean("default_env");
-                
-                return new Envelope(priority, name, amount, fillSetting, fillAmount, cap, capAmount, extra, defaultEnv);
-            }
-        } catch (SQLException e) {
-            System.out.println("Failed to retrieve default envelope: " + e.getMessage());
-        }
-        
-        return null; // Return null if default envelope is not found
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        Envelope e = getStore().getDefault();
+        metrics.record("getDefault", start, e == null ? 0 : 1, 0);
+        return e;
     }
-    
+
     public static Envelope getExtra() {
-        String sql = "SELECT * FROM envelopes WHERE extra = 1";
-
-        try (Connection conn = DriverManager.getConnection(getDatabasePath());
-                Statement stmt = conn.createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
-               
-               if (rs.next()) {
-                   int priority = rs.getInt("priority");
-                   String name = rs.getString("name");
-                   BigDecimal amount = new BigDecimal(rs.getString("amount")); // Retrieve as String and convert to BigDecimal
-                   int fillSetting = rs.getInt("fill_setting");
-                   int fillAmount = rs.getInt("fill_amount");
-                   boolean cap = rs.getBoolean("cap");
-                   int capAmount = rs.getInt("cap_amount");
-                   boolean extra = rs.getBoolean("extra");
-                   boolean defaultEnv = rs.getBoolean("default_env");
-                   
-                   return new Envelope(priority, name, amount, fillSetting, fillAmount, cap, capAmount, extra, defaultEnv);
-               }
-           } catch (SQLException e) {
-               System.out.println("Failed to retrieve default envelope: " + e.getMessage());
-           }
-           
-           return null; // Return null if default envelope is not found
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        Envelope e = getStore().getExtra();
+        metrics.record("getExtra", start, e == null ? 0 : 1, 0);
+        return e;
     }
-    
+
     public static boolean editAmount(String name, BigDecimal amount) {
-        String sql = "UPDATE envelopes SET amount = ? WHERE name = ?";
-
-        try (Connection conn = DriverManager.getConnection(getDatabasePath());
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, amount.toString()); // Store BigDecimal as String
-            pstmt.setString(2, name);
-            pstmt.executeUpdate();
-            System.out.println("Amount updated successfully for envelope: " + name);
-            return true;
-        } catch (SQLException e) {
-            System.out.println("Failed to update amount for envelope " + name + ": " + e.getMessage());
-            return false;
-        }
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        boolean edited = getStore().editAmount(name, amount);
+        metrics.record("editAmount", start, 0, edited ? 1 : 0);
+        return edited;
     }
-    
+
 
     public static boolean hasEnvelope(String name) {
-        String sql = "SELECT COUNT(*) FROM envelopes WHERE name = ?";
-        try (Connection conn = DriverManager.getConnection(getDatabasePath());
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            // Set the parameters
-            pstmt.setString(1, name);
-
-            // Execute the query
-            ResultSet rs = pstmt.executeQuery();
-
-            // Check if there is at least one result
-            if (rs.next()) {
-                int count = rs.getInt(1);
-                return count > 0; // Returns true if envelope with name exists, false otherwise
-            }
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
-        return false; // Default to false in case of errors or no results
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        boolean has = getStore().hasEnvelope(name);
+        metrics.record("hasEnvelope", start, has ? 1 : 0, 0);
+        return has;
+    }
+
+    /**
+     * Returns the transactions ledger entries of an envelope.
+     *
+     * @param name The name of the envelope.
+     * @return every entry for that name, oldest first.
+     */
+    public static List<LedgerEntry> getHistory(String name) {
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        List<LedgerEntry> entries = getStore().getHistory(name);
+        metrics.record("getHistory", start, entries.size(), 0);
+        return entries;
+    }
+
+    /**
+     * Reads the transactions ledger in sequence order.
+     *
+     * @param afterSequence only entries after this sequence number are returned; 0 for the start of the ledger
+     * @param limit         most entries to return
+     * @return the entries, oldest first.
+     */
+    public static List<LedgerEntry> getLedger(long afterSequence, int limit) {
+        long start = System.nanoTime();
+        UnitOfWork.flush();
+        List<LedgerEntry> entries = getStore().getLedger(afterSequence, limit);
+        metrics.record("getLedger", start, entries.size(), 0);
+        return entries;
+    }
+
+    /**
+     * Returns the latency and row counts of every method in this class, see {@link DatabaseMetrics}.
+     *
+     * @return the metrics recorded since startup or the last reset.
+     */
+    public static DatabaseMetrics getMetrics() {
+        return metrics;
     }
 
 }
@@ -0,0 +1,381 @@
+package data;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.core.DB;
+
+import settings.DatabaseSettings;
+
+/**
+ * Online backups of a {@link SqliteEnvelopeStore}'s database file, taken with SQLite's
+ * backup API while the app keeps running.
+ * <p>
+ * A backup copies {@link DatabaseSettings#backupPagesPerStep} pages at a time over its own
+ * connection and pauses between steps, so it never holds a lock long enough to hold up
+ * the app's writes. If the database is written during a backup SQLite starts the copy
+ * over, so every backup is a consistent copy. Each copy is written to a '.part' file and
+ * checked with {@code PRAGMA integrity_check} before it is renamed into place, then the
+ * oldest backups beyond {@link DatabaseSettings#backupsKept} are deleted.
+ * <p>
+ * Backups run on a single background thread, either on a schedule or when asked for
+ * with {@link #backupNow()}. {@link #restore(Path)} copies a backup back over the live
+ * database the same way, through the store's writer connection.
+ */
+public class DatabaseBackup {
+
+    private static final DatabaseLog log = DatabaseLog.forClass(DatabaseBackup.class);
+
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final String EXTENSION = ".db";
+    private static final String PART = ".part";
+    // how long SQLite waits and how often it retries a step when the database is locked
+    private static final int BUSY_SLEEP_MILLIS = 100;
+    private static final int BUSY_RETRIES = 50;
+
+    private final SqliteEnvelopeStore store;
+    private final Path directory;
+    private final String prefix;
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param store     the store whose database is backed up
+     * @param directory where backups are kept, created on first backup
+     */
+    public DatabaseBackup(SqliteEnvelopeStore store, Path directory) {
+        this.store = store;
+        this.directory = directory;
+        String file = databaseFile(store.getUrl()).getFileName().toString();
+        this.prefix = (file.endsWith(EXTENSION) ? file.substring(0, file.length() - EXTENSION.length()) : file) + "-";
+    }
+
+    /**
+     * @return backups for the store's database in a 'backups' folder next to the database file.
+     */
+    public static DatabaseBackup nextToDatabase(SqliteEnvelopeStore store) {
+        Path database = databaseFile(store.getUrl()).toAbsolutePath();
+        return new DatabaseBackup(store, database.resolveSibling("backups"));
+    }
+
+    /**
+     * @return the file a "jdbc:sqlite:" url points to.
+     */
+    static Path databaseFile(String url) {
+        String path = url.startsWith("jdbc:sqlite:") ? url.substring("jdbc:sqlite:".length()) : url;
+        int options = path.indexOf('?');
+        return Paths.get(options < 0 ? path : path.substring(0, options));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Backs up the database every {@code intervalMinutes} on the background thread, starting after one interval.
+     */
+    public synchronized void schedule(long intervalMinutes) {
+        executor().scheduleWithFixedDelay(this::backup, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Starts a backup on the background thread.
+     *
+     * @return the backup's result once it is done.
+     */
+    public synchronized Future<Result> backupNow() {
+        return executor().submit(this::backup);
+    }
+
+    /**
+     * Stops scheduled backups. A backup already running is interrupted between steps.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private ScheduledExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "database-backup");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Backs up the database on the calling thread, checks the copy and deletes old backups.
+     *
+     * @return what was copied, or the reason the backup failed.
+     */
+    public Result backup() {
+        return runBackup(true);
+    }
+
+    /**
+     * @param prune false to keep every backup, for the copy {@link #restore(Path)} takes before it overwrites the database.
+     */
+    private Result runBackup(boolean prune) {
+        long start = System.nanoTime();
+        Path target = directory.resolve(prefix + LocalDateTime.now().format(NAME_FORMAT) + EXTENSION);
+        Path part = directory.resolve(target.getFileName() + PART);
+        Progress progress = new Progress();
+
+        try {
+            Files.createDirectories(directory);
+            Files.deleteIfExists(part);
+
+            // its own connection, so the backup never takes one the app is waiting for
+            try (Connection conn = DriverManager.getConnection(store.getUrl())) {
+                DurabilityProfile durability = store.getDurabilityProfile();
+                if (durability != null) durability.apply(conn);
+                DB db = conn.unwrap(SQLiteConnection.class).getDatabase();
+                int rc = db.backup("main", part.toString(), progress, BUSY_SLEEP_MILLIS, BUSY_RETRIES,
+                        DatabaseSettings.backupPagesPerStep);
+                if (rc != SQLiteErrorCode.SQLITE_OK.code) {
+                    throw new SQLException("backup stopped with SQLite error " + rc);
+                }
+            }
+
+            String check = integrityCheck(part);
+            if (!"ok".equals(check)) {
+                Files.deleteIfExists(part);
+                return Result.failed(target, "integrity check failed: " + check, System.nanoTime() - start);
+            }
+
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+            int deleted = prune ? prune(DatabaseSettings.backupsKept, null) : 0;
+            Result result = new Result(target, progress.pages, progress.steps, deleted, null, System.nanoTime() - start);
+            log.info(result.toString());
+            return result;
+        } catch (SQLException | IOException e) {
+            try {
+                Files.deleteIfExists(part);
+            } catch (IOException ignored) {
+                // the next backup deletes it
+            }
+            Result result = Result.failed(target, e.getMessage(), System.nanoTime() - start);
+            log.error(result.toString());
+            return result;
+        }
+    }
+
+    /**
+     * Runs {@code PRAGMA integrity_check} on a database file.
+     *
+     * @return "ok", or the first problem SQLite found.
+     * @throws SQLException if the file could not be opened as a database.
+     */
+    public static String integrityCheck(Path file) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA integrity_check")) {
+            return rs.next() ? rs.getString(1) : "no result";
+        }
+    }
+
+    /**
+     * @return the backups of this database, newest first.
+     */
+    public List<Path> listBackups() {
+        List<Path> backups = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return backups;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + EXTENSION)) {
+            for (Path file : files) {
+                backups.add(file);
+            }
+        } catch (IOException e) {
+            log.error("Failed to list backups in " + directory + ": " + e.getMessage());
+        }
+        // the timestamp in the name sorts in time order
+        backups.sort(Comparator.comparing((Path file) -> file.getFileName().toString()).reversed());
+        return backups;
+    }
+
+    /**
+     * Deletes the oldest backups beyond {@code kept}.
+     *
+     * @param keep a backup that is never deleted however old it is, null for none
+     */
+    private int prune(int kept, Path keep) throws IOException {
+        List<Path> backups = listBackups();
+        int deleted = 0;
+        for (int index = Math.max(kept, 1); index < backups.size(); index++) {
+            if (keep != null && Files.isSameFile(backups.get(index), keep)) continue;
+            Files.deleteIfExists(backups.get(index));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Replaces the live database with a backup. The backup is checked first, and the
+     * current database is backed up before it is overwritten; old backups are only pruned
+     * once the restore has succeeded, and never the one restored. Waits for the writer
+     * connection, so nothing else is written while the backup is copied in; afterwards
+     * the store is initialized again, which upgrades an older backup's schema and
+     * rebuilds the envelope cache.
+     *
+     * @param backup the backup file to restore
+     * @return true if the backup was restored; false otherwise.
+     */
+    public boolean restore(Path backup) {
+        if (UnitOfWork.isActive()) {
+            throw new IllegalStateException("Cannot restore a backup inside a unit of work");
+        }
+
+        try {
+            String check = integrityCheck(backup);
+            if (!"ok".equals(check)) {
+                log.error("Not restoring " + backup + ", its integrity check failed: " + check);
+                return false;
+            }
+        } catch (SQLException e) {
+            log.error("Not restoring " + backup + ": " + e.getMessage());
+            return false;
+        }
+
+        // not pruned yet, that could delete the backup being restored when it is the oldest kept
+        Result safety = runBackup(false);
+        if (!safety.isSucceeded()) {
+            log.error("Not restoring " + backup + ", the current database could not be backed up first");
+            return false;
+        }
+
+        try (PooledConnection pc = store.checkoutWriter()) {
+            DB db = pc.getConnection().unwrap(SQLiteConnection.class).getDatabase();
+            int rc = db.restore("main", backup.toString(), (remaining, pageCount) -> { }, BUSY_SLEEP_MILLIS, BUSY_RETRIES,
+                    DatabaseSettings.backupPagesPerStep);
+            if (rc != SQLiteErrorCode.SQLITE_OK.code) {
+                throw new SQLException("restore stopped with SQLite error " + rc);
+            }
+        } catch (SQLException e) {
+            log.error("Failed to restore " + backup + ": " + e.getMessage());
+            return false;
+        }
+
+        store.reopen();
+        log.info("Restored the database from " + backup + ", the previous database was saved as " + safety.getFile());
+        try {
+            int deleted = prune(DatabaseSettings.backupsKept, backup);
+            if (deleted > 0) log.info("Deleted " + deleted + " old backup(s)");
+        } catch (IOException e) {
+            log.error("Failed to delete old backups: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Counts the pages copied and pauses between backup steps.
+     */
+    private static class Progress implements DB.ProgressObserver {
+
+        private int pages = 0;
+        private int steps = 0;
+
+        @Override
+        public void progress(int remaining, int pageCount) {
+            pages = pageCount;
+            steps++;
+            if (remaining == 0) return;
+            try {
+                Thread.sleep(DatabaseSettings.backupStepPauseMillis);
+            } catch (InterruptedException e) {
+                // finish the copy quickly, the thread is being stopped
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * What one backup did.
+     */
+    public static class Result {
+
+        private final Path file;
+        private final int pages;
+        private final int steps;
+        private final int deletedBackups;
+        private final String error;
+        private final long nanos;
+
+        Result(Path file, int pages, int steps, int deletedBackups, String error, long nanos) {
+            this.file = file;
+            this.pages = pages;
+            this.steps = steps;
+            this.deletedBackups = deletedBackups;
+            this.error = error;
+            this.nanos = nanos;
+        }
+
+        static Result failed(Path file, String error, long nanos) {
+            return new Result(file, 0, 0, 0, error, nanos);
+        }
+
+        public boolean isSucceeded() {
+            return error == null;
+        }
+
+        /**
+         * @return the backup file, which does not exist if the backup failed.
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        public int getPages() {
+            return pages;
+        }
+
+        /**
+         * @return backup steps taken; more than pages / pages per step means the copy started over.
+         */
+        public int getSteps() {
+            return steps;
+        }
+
+        public int getDeletedBackups() {
+            return deletedBackups;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public double getMillis() {
+            return nanos / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) return String.format("Backup to %s failed after %.1f ms: %s", file, getMillis(), error);
+            return String.format("Backed up %d pages in %d steps to %s in %.1f ms, deleted %d old backup(s)",
+                    pages, steps, file, getMillis(), deletedBackups);
+        }
+    }
+}
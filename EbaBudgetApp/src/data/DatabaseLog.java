@@ -0,0 +1,102 @@
+package data;
+
+import settings.DatabaseSettings;
+
+/**
+ * Leveled messages from the data layer.
+ * <p>
+ * With {@link DatabaseSettings#slf4jLogging} on, messages go through slf4j to whichever
+ * binding is on the classpath (the bundled slf4j-simple prints info and above to
+ * stderr, so routine messages such as "Envelope added successfully." are hidden
+ * unless debug is turned on for the data package). With it off every message is
+ * printed to stdout as it always was, whatever its level.
+ */
+public final class DatabaseLog {
+
+    private final String name;
+
+    private DatabaseLog(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the log for a class, named after it like an slf4j logger.
+     */
+    public static DatabaseLog forClass(Class<?> type) {
+        return new DatabaseLog(type.getName());
+    }
+
+    /**
+     * Routine progress, such as a successful write.
+     */
+    public void debug(String message) {
+        if (DatabaseSettings.slf4jLogging) {
+            Slf4j.debug(name, message);
+        } else {
+            System.out.println(message);
+        }
+    }
+
+    public void info(String message) {
+        if (DatabaseSettings.slf4jLogging) {
+            Slf4j.info(name, message);
+        } else {
+            System.out.println(message);
+        }
+    }
+
+    /**
+     * Something was wrong but was dealt with, such as a rollback or a repaired total.
+     */
+    public void warn(String message) {
+        if (DatabaseSettings.slf4jLogging) {
+            Slf4j.warn(name, message);
+        } else {
+            System.out.println(message);
+        }
+    }
+
+    /**
+     * An operation failed.
+     */
+    public void error(String message) {
+        if (DatabaseSettings.slf4jLogging) {
+            Slf4j.error(name, message);
+        } else {
+            System.out.println(message);
+        }
+    }
+
+    /**
+     * @return true if debug messages are shown; callers can skip building them otherwise.
+     */
+    public boolean isDebugEnabled() {
+        return !DatabaseSettings.slf4jLogging || Slf4j.isDebugEnabled(name);
+    }
+
+    /**
+     * Every call to slf4j, so its classes are only loaded once it is turned on.
+     */
+    private static class Slf4j {
+
+        static void debug(String name, String message) {
+            org.slf4j.LoggerFactory.getLogger(name).debug(message);
+        }
+
+        static void info(String name, String message) {
+            org.slf4j.LoggerFactory.getLogger(name).info(message);
+        }
+
+        static void warn(String name, String message) {
+            org.slf4j.LoggerFactory.getLogger(name).warn(message);
+        }
+
+        static void error(String name, String message) {
+            org.slf4j.LoggerFactory.getLogger(name).error(message);
+        }
+
+        static boolean isDebugEnabled(String name) {
+            return org.slf4j.LoggerFactory.getLogger(name).isDebugEnabled();
+        }
+    }
+}
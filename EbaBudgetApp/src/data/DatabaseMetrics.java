@@ -0,0 +1,110 @@
+package data;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import settings.DatabaseSettings;
+
+/**
+ * Time spent in each {@link Database} method, and the envelope and ledger rows it read
+ * and wrote. Every method records one call when it returns, including the flush of the
+ * unit of work's pending changes it starts with. Turned off with
+ * {@link DatabaseSettings#databaseMetrics}.
+ */
+public class DatabaseMetrics {
+
+    private final Map<String, MethodStats> methods = new ConcurrentHashMap<>();
+
+    /**
+     * Records one call of a method.
+     *
+     * @param method      the Database method, for example "getEnvelope"
+     * @param startNanos  {@link System#nanoTime()} when the call started
+     * @param rowsRead    rows the call returned
+     * @param rowsWritten rows the call added, changed or removed
+     */
+    void record(String method, long startNanos, long rowsRead, long rowsWritten) {
+        if (!DatabaseSettings.databaseMetrics) return;
+        MethodStats stats = methods.computeIfAbsent(method, MethodStats::new);
+        stats.latency.record(System.nanoTime() - startNanos);
+        if (rowsRead > 0) stats.rowsRead.addAndGet(rowsRead);
+        if (rowsWritten > 0) stats.rowsWritten.addAndGet(rowsWritten);
+    }
+
+    /**
+     * @return the stats of every method called so far, by method name.
+     */
+    public Map<String, MethodStats> getMethods() {
+        return new TreeMap<>(methods);
+    }
+
+    /**
+     * @return the stats of one method, or null if it has not been called.
+     */
+    public MethodStats getMethod(String method) {
+        return methods.get(method);
+    }
+
+    /**
+     * @return statements logged by the {@link SlowQueryLog} since startup.
+     */
+    public long getSlowQueries() {
+        return SlowQueryLog.getSlowQueries();
+    }
+
+    /**
+     * Forgets every recorded call, for example before a benchmark.
+     */
+    public void reset() {
+        methods.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder table = new StringBuilder("method\tcalls\tavg us\tp50 us\tp99 us\tmax us\trows read\trows written");
+        for (MethodStats stats : getMethods().values()) {
+            table.append('\n').append(stats);
+        }
+        return table.append("\nslow queries: ").append(getSlowQueries()).toString();
+    }
+
+    /**
+     * Latency and row counts of one method.
+     */
+    public static class MethodStats {
+
+        private final String method;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong rowsRead = new AtomicLong();
+        private final AtomicLong rowsWritten = new AtomicLong();
+
+        MethodStats(String method) {
+            this.method = method;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getRowsRead() {
+            return rowsRead.get();
+        }
+
+        public long getRowsWritten() {
+            return rowsWritten.get();
+        }
+
+        @Override
+        public String toString() {
+            return method + "\t" + latency.getCount() + "\t" + String.format("%.1f", latency.getAverageMicros()) + "\t"
+                    + latency.getPercentileNanos(50) / 1000 + "\t" + latency.getPercentileNanos(99) / 1000 + "\t"
+                    + latency.getMaxNanos() / 1000 + "\t" + rowsRead.get() + "\t" + rowsWritten.get();
+        }
+    }
+}
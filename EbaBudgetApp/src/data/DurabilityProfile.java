@@ -0,0 +1,112 @@
+package data;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * How hard SQLite works to keep committed writes safe, set with pragmas on every
+ * connection a {@link SqliteEnvelopeStore} opens.
+ * <p>
+ * Every profile runs the database in write-ahead log mode, so readers never wait for
+ * the writer and a commit appends to the log instead of rewriting pages. They differ in
+ * when the log is synced to disk, how much memory each connection uses, and how often
+ * the log is copied back into the database file (a checkpoint):
+ * <ul>
+ * <li>{@link #SAFE}: every commit is synced, nothing committed is lost on a power failure.</li>
+ * <li>{@link #BALANCED}: the log is only synced at checkpoints. A power failure can lose
+ * the last commits but never corrupts the database; a crash of the app loses nothing.</li>
+ * <li>{@link #THROUGHPUT}: nothing is synced, the operating system writes the log when it
+ * chooses. A power failure can lose recent commits or corrupt the database, so this is
+ * for benchmarks and bulk imports with a backup at hand.</li>
+ * </ul>
+ * Every profile keeps the log to {@link #JOURNAL_SIZE_LIMIT} bytes once checkpointed.
+ */
+public enum DurabilityProfile {
+
+    SAFE("FULL", 2_000, 0, 1_000),
+    BALANCED("NORMAL", 8_000, 64L << 20, 1_000),
+    THROUGHPUT("OFF", 32_000, 256L << 20, 10_000);
+
+    /**
+     * Bytes the log is truncated to after a checkpoint, so one large write does not leave a large file behind.
+     */
+    public static final long JOURNAL_SIZE_LIMIT = 16L << 20;
+
+    private final String synchronous;
+    private final int cacheKiB;
+    private final long mmapBytes;
+    private final int checkpointPages;
+
+    /**
+     * @param synchronous     PRAGMA synchronous level
+     * @param cacheKiB        page cache per connection
+     * @param mmapBytes       how much of the database file is read through memory mapping, 0 for none
+     * @param checkpointPages log pages written before a commit runs an automatic checkpoint
+     */
+    DurabilityProfile(String synchronous, int cacheKiB, long mmapBytes, int checkpointPages) {
+        this.synchronous = synchronous;
+        this.cacheKiB = cacheKiB;
+        this.mmapBytes = mmapBytes;
+        this.checkpointPages = checkpointPages;
+    }
+
+    /**
+     * @param name a profile name in any case, for example "balanced" from {@link settings.DatabaseSettings#durabilityProfile}
+     * @return the profile.
+     * @throws IllegalArgumentException if there is no profile with that name.
+     */
+    public static DurabilityProfile named(String name) {
+        for (DurabilityProfile profile : values()) {
+            if (profile.name().equalsIgnoreCase(name)) return profile;
+        }
+        throw new IllegalArgumentException("Unknown durability profile " + name);
+    }
+
+    /**
+     * Sets the profile's pragmas on a connection. Called before the connection is used.
+     *
+     * @param conn a connection outside any transaction
+     * @throws SQLException if a pragma failed, or the database could not be switched to write-ahead logging.
+     */
+    public void apply(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // journal_mode answers with the mode it ended up in, which stays the old one if it could not switch
+            try (ResultSet rs = stmt.executeQuery("PRAGMA journal_mode = WAL")) {
+                String mode = rs.next() ? rs.getString(1) : null;
+                if (!"wal".equalsIgnoreCase(mode) && !"memory".equalsIgnoreCase(mode)) {
+                    throw new SQLException("Could not switch the database to write-ahead logging, it is in " + mode + " mode");
+                }
+            }
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+            // a negative cache_size is in KiB rather than pages
+            stmt.execute("PRAGMA cache_size = -" + cacheKiB);
+            stmt.execute("PRAGMA mmap_size = " + mmapBytes);
+            stmt.execute("PRAGMA wal_autocheckpoint = " + checkpointPages);
+            stmt.execute("PRAGMA journal_size_limit = " + JOURNAL_SIZE_LIMIT);
+        }
+    }
+
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    public int getCacheKiB() {
+        return cacheKiB;
+    }
+
+    public long getMmapBytes() {
+        return mmapBytes;
+    }
+
+    public int getCheckpointPages() {
+        return checkpointPages;
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase() + " (synchronous " + synchronous + ", cache " + cacheKiB + " KiB, mmap "
+                + (mmapBytes >> 20) + " MiB, checkpoint every " + checkpointPages + " pages)";
+    }
+}
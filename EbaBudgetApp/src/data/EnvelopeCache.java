@@ -0,0 +1,352 @@
+package data;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import dataObjects.Envelope;
+import dataObjects.EnvelopeField;
+
+/**
+ * In-memory copy of the 'envelopes' table used by {@link Database} to answer reads
+ * without a query.
+ * <p>
+ * The cache is loaded once with every envelope and then kept in step by {@link Database},
+ * which applies each successful write to it (write-through). Envelopes handed out are
+ * copies, so changing them never changes the cache. The cache is only trustworthy while
+ * this process is the only writer of the database file; call {@link SqliteEnvelopeStore#reloadCache()}
+ * if the file was changed some other way.
+ * <p>
+ * {@link InMemoryEnvelopeStore} uses the same class as its committed table, with an
+ * {@link EnvelopeOverlay} over it for each transaction.
+ */
+public class EnvelopeCache implements EnvelopeTable {
+
+    static final Comparator<Envelope> PRIORITY_ORDER =
+            Comparator.comparingInt(Envelope::getPriority).thenComparing(Envelope::getName);
+
+    private final Map<String, Envelope> byName = new HashMap<>();
+    //byName sorted by priority, rebuilt on the next read after a change
+    private List<Envelope> byPriority = null;
+    private long totalCents = 0;
+    private boolean loaded = false;
+    //bumped by every change so a load that raced with a write can be thrown away
+    private long version = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bypasses = new AtomicLong();
+
+    /**
+     * @return true if the cache holds every envelope.
+     */
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return the current version, pass it to {@link #load(List, long)} after reading the table.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Replaces the cache contents with the envelopes read from the database, unless
+     * the cache changed since {@code readVersion} was taken.
+     *
+     * @param envelopes   every envelope in the database
+     * @param readVersion {@link #getVersion()} taken before the envelopes were read
+     * @return true if the envelopes were loaded.
+     */
+    public synchronized boolean load(List<Envelope> envelopes, long readVersion) {
+        if (readVersion != version) return false;
+
+        byName.clear();
+        totalCents = 0;
+        for (Envelope e : envelopes) {
+            put(e);
+        }
+        changed();
+        loaded = true;
+        return true;
+    }
+
+    /**
+     * The cached envelope itself rather than a copy, for {@link EnvelopeOverlay}.
+     * Cached envelopes are never changed in place, so it can be shared but must not be changed.
+     */
+    synchronized Envelope stored(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * @return the cached envelopes themselves that match, see {@link #stored(String)}.
+     */
+    synchronized List<Envelope> stored(Predicate<Envelope> filter) {
+        List<Envelope> matching = new ArrayList<>();
+        for (Envelope e : byName.values()) {
+            if (filter.test(e)) matching.add(e);
+        }
+        return matching;
+    }
+
+    /**
+     * Drops everything; the next read loads the table again.
+     */
+    public synchronized void invalidate() {
+        byName.clear();
+        totalCents = 0;
+        loaded = false;
+        changed();
+    }
+
+    public synchronized List<Envelope> getEnvelopes() {
+        hits.incrementAndGet();
+        return copies(byName.values());
+    }
+
+    public synchronized List<Envelope> getEnvelopesByPriority() {
+        hits.incrementAndGet();
+        return copies(priorityView());
+    }
+
+    public synchronized Envelope getEnvelope(String name) {
+        hits.incrementAndGet();
+        return copyOf(byName.get(name));
+    }
+
+    public synchronized Envelope getEnvelopeByPriority(int priority) {
+        hits.incrementAndGet();
+        for (Envelope e : priorityView()) {
+            if (e.getPriority() == priority) return e.copy();
+            if (e.getPriority() > priority) break;
+        }
+        return null;
+    }
+
+    public synchronized Envelope getDefault() {
+        hits.incrementAndGet();
+        for (Envelope e : priorityView()) {
+            if (e.isDefault()) return e.copy();
+        }
+        return null;
+    }
+
+    public synchronized Envelope getExtra() {
+        hits.incrementAndGet();
+        for (Envelope e : priorityView()) {
+            if (e.isExtra()) return e.copy();
+        }
+        return null;
+    }
+
+    public synchronized boolean hasEnvelope(String name) {
+        hits.incrementAndGet();
+        return byName.containsKey(name);
+    }
+
+    public synchronized int getEnvelopeCount() {
+        hits.incrementAndGet();
+        return byName.size();
+    }
+
+    /**
+     * @return the sum of every envelope amount, kept up to date on every write.
+     */
+    public synchronized BigDecimal getBalance() {
+        hits.incrementAndGet();
+        return Cents.fromCents(totalCents);
+    }
+
+    //write-through -- called by Database after a write has been committed, ignored until loaded
+    //each one moves the version even then, so a load that read the table before the write is thrown away
+
+    synchronized void added(Envelope e) {
+        changed();
+        if (!loaded) return;
+        remove(e.getName());
+        put(e.copy());
+    }
+
+    synchronized void replaced(String storedName, Envelope e) {
+        changed();
+        if (!loaded) return;
+        remove(storedName);
+        put(e.copy());
+    }
+
+    /**
+     * Applies a partial update: only the given fields are taken from {@code changes}.
+     */
+    synchronized void updated(String storedName, Envelope changes, Set<EnvelopeField> fields) {
+        changed();
+        if (!loaded) return;
+        Envelope base = remove(storedName);
+        // not cached, the row was not there either so the update matched nothing
+        if (base == null) return;
+        put(merge(base, changes, fields));
+    }
+
+    synchronized void amountChanged(String name, BigDecimal amount) {
+        changed();
+        if (!loaded) return;
+        Envelope base = remove(name);
+        if (base != null) {
+            put(new Envelope(base.getPriority(), base.getName(), amount, base.getFillSetting(), base.getFillAmount(),
+                    base.hasCap(), base.getCapAmount(), base.isExtra(), base.isDefault()));
+        }
+    }
+
+    synchronized void removed(String name) {
+        changed();
+        if (!loaded) return;
+        remove(name);
+    }
+
+    /**
+     * Applies a committed {@link EnvelopeOverlay} in one step, so readers see all of its changes or none.
+     *
+     * @param changes envelopes by name, null for a removed one
+     */
+    synchronized void applied(Map<String, Envelope> changes) {
+        changed();
+        if (!loaded) return;
+        for (Map.Entry<String, Envelope> change : changes.entrySet()) {
+            remove(change.getKey());
+            if (change.getValue() != null) put(change.getValue());
+        }
+    }
+
+    synchronized void extraCleared() {
+        changed();
+        if (!loaded) return;
+        for (Envelope e : new ArrayList<>(byName.values())) {
+            if (!e.isExtra()) continue;
+            byName.put(e.getName(), new Envelope(e.getPriority(), e.getName(), e.getAmount(), e.getFillSetting(),
+                    e.getFillAmount(), e.hasCap(), e.getCapAmount(), false, e.isDefault()));
+        }
+    }
+
+    synchronized void defaultCleared() {
+        changed();
+        if (!loaded) return;
+        for (Envelope e : new ArrayList<>(byName.values())) {
+            if (!e.isDefault()) continue;
+            byName.put(e.getName(), new Envelope(e.getPriority(), e.getName(), e.getAmount(), e.getFillSetting(),
+                    e.getFillAmount(), e.hasCap(), e.getCapAmount(), e.isExtra(), false));
+        }
+    }
+
+    //metrics
+
+    /**
+     * Counts a read answered by an {@link EnvelopeOverlay} over the cache.
+     */
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * Counts a read that had to load the table first.
+     */
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Counts a read inside a unit of work that went to the database, because the unit wrote
+     * before the cache was loaded or the cache changed under it.
+     */
+    void recordBypass() {
+        bypasses.incrementAndGet();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getBypasses() {
+        return bypasses.get();
+    }
+
+    /**
+     * @return fraction of reads answered from memory.
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses() + getBypasses();
+        if (total == 0) return 0;
+        return (double) hits / total;
+    }
+
+    public String getMetrics() {
+        return "hits: " + getHits() +
+                "\nmisses (loads): " + getMisses() +
+                "\nbypasses (inside a unit of work): " + getBypasses() +
+                "\nhit rate: " + String.format("%.2f", getHitRate() * 100) + "%";
+    }
+
+    //helpers
+
+    private void put(Envelope e) {
+        byName.put(e.getName(), e);
+        totalCents += Cents.toCents(e.getAmount());
+    }
+
+    private Envelope remove(String name) {
+        Envelope e = byName.remove(name);
+        if (e != null) {
+            totalCents -= Cents.toCents(e.getAmount());
+        }
+        return e;
+    }
+
+    private void changed() {
+        byPriority = null;
+        version++;
+    }
+
+    private List<Envelope> priorityView() {
+        if (byPriority == null) {
+            byPriority = new ArrayList<>(byName.values());
+            byPriority.sort(PRIORITY_ORDER);
+        }
+        return byPriority;
+    }
+
+    private static List<Envelope> copies(Iterable<Envelope> envelopes) {
+        List<Envelope> copies = new ArrayList<>();
+        for (Envelope e : envelopes) {
+            copies.add(e.copy());
+        }
+        return copies;
+    }
+
+    private static Envelope copyOf(Envelope e) {
+        return e == null ? null : e.copy();
+    }
+
+    static Envelope merge(Envelope base, Envelope changes, Set<EnvelopeField> fields) {
+        return new Envelope(
+                fields.contains(EnvelopeField.PRIORITY) ? changes.getPriority() : base.getPriority(),
+                fields.contains(EnvelopeField.NAME) ? changes.getName() : base.getName(),
+                fields.contains(EnvelopeField.AMOUNT) ? changes.getAmount() : base.getAmount(),
+                fields.contains(EnvelopeField.FILL_SETTING) ? changes.getFillSetting() : base.getFillSetting(),
+                fields.contains(EnvelopeField.FILL_AMOUNT) ? changes.getFillAmount() : base.getFillAmount(),
+                fields.contains(EnvelopeField.CAP) ? changes.hasCap() : base.hasCap(),
+                fields.contains(EnvelopeField.CAP_AMOUNT) ? changes.getCapAmount() : base.getCapAmount(),
+                fields.contains(EnvelopeField.EXTRA) ? changes.isExtra() : base.isExtra(),
+                fields.contains(EnvelopeField.DEFAULT) ? changes.isDefault() : base.isDefault());
+    }
+}
@@ -0,0 +1,244 @@
+package data;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import dataObjects.Envelope;
+import dataObjects.EnvelopeField;
+
+/**
+ * The envelopes a transaction has changed, read through over the committed table.
+ * <p>
+ * Only touched envelopes are held, so starting a transaction, writing and taking a
+ * savepoint cost as much as the envelopes changed rather than the whole table. The
+ * committed table must not change while the overlay is in use: {@link InMemoryEnvelopeStore}'s
+ * write lock sees to that, and {@link SqliteEnvelopeStore} stops reading through an overlay
+ * once its cache has moved on. Writes take the same calls as {@link EnvelopeCache}'s
+ * write-through. Reads count as cache hits.
+ */
+final class EnvelopeOverlay implements EnvelopeTable {
+
+    private final EnvelopeCache base;
+    //changed envelopes by name, null for a removed one; never changed in place, so copies share them
+    private final Map<String, Envelope> changes;
+    private long centsChange;
+    //base and changes together sorted by priority, rebuilt on the next read after a change
+    private List<Envelope> byPriority = null;
+
+    EnvelopeOverlay(EnvelopeCache base) {
+        this(base, new HashMap<>(), 0);
+    }
+
+    private EnvelopeOverlay(EnvelopeCache base, Map<String, Envelope> changes, long centsChange) {
+        this.base = base;
+        this.changes = changes;
+        this.centsChange = centsChange;
+    }
+
+    /**
+     * @return an overlay with the same changes that can be changed without changing this one.
+     */
+    EnvelopeOverlay copy() {
+        return new EnvelopeOverlay(base, new HashMap<>(changes), centsChange);
+    }
+
+    /**
+     * @return the changed envelopes by name, null for a removed one, to pass to {@link EnvelopeCache#applied(Map)}.
+     */
+    Map<String, Envelope> getChanges() {
+        return Collections.unmodifiableMap(changes);
+    }
+
+    @Override
+    public List<Envelope> getEnvelopes() {
+        if (changes.isEmpty()) return base.getEnvelopes();
+        base.recordHit();
+        return copies(merged());
+    }
+
+    @Override
+    public List<Envelope> getEnvelopesByPriority() {
+        if (changes.isEmpty()) return base.getEnvelopesByPriority();
+        base.recordHit();
+        return copies(priorityView());
+    }
+
+    @Override
+    public Envelope getEnvelope(String name) {
+        base.recordHit();
+        Envelope e = current(name);
+        return e == null ? null : e.copy();
+    }
+
+    @Override
+    public Envelope getEnvelopeByPriority(int priority) {
+        if (changes.isEmpty()) return base.getEnvelopeByPriority(priority);
+        base.recordHit();
+        for (Envelope e : priorityView()) {
+            if (e.getPriority() == priority) return e.copy();
+            if (e.getPriority() > priority) break;
+        }
+        return null;
+    }
+
+    @Override
+    public Envelope getDefault() {
+        if (changes.isEmpty()) return base.getDefault();
+        base.recordHit();
+        for (Envelope e : priorityView()) {
+            if (e.isDefault()) return e.copy();
+        }
+        return null;
+    }
+
+    @Override
+    public Envelope getExtra() {
+        if (changes.isEmpty()) return base.getExtra();
+        base.recordHit();
+        for (Envelope e : priorityView()) {
+            if (e.isExtra()) return e.copy();
+        }
+        return null;
+    }
+
+    @Override
+    public boolean hasEnvelope(String name) {
+        base.recordHit();
+        return current(name) != null;
+    }
+
+    @Override
+    public int getEnvelopeCount() {
+        if (changes.isEmpty()) return base.getEnvelopeCount();
+        base.recordHit();
+        int count = base.stored(e -> !changes.containsKey(e.getName())).size();
+        for (Envelope e : changes.values()) {
+            if (e != null) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        return base.getBalance().add(Cents.fromCents(centsChange));
+    }
+
+    //writes
+
+    void added(Envelope e) {
+        remove(e.getName());
+        put(e.copy());
+    }
+
+    void replaced(String storedName, Envelope e) {
+        remove(storedName);
+        put(e.copy());
+    }
+
+    /**
+     * Applies a partial update: only the given fields are taken from {@code changes}.
+     */
+    void updated(String storedName, Envelope changes, Set<EnvelopeField> fields) {
+        Envelope base = remove(storedName);
+        // the update matched nothing
+        if (base == null) return;
+        put(EnvelopeCache.merge(base, changes, fields));
+    }
+
+    void amountChanged(String name, BigDecimal amount) {
+        Envelope base = remove(name);
+        if (base != null) {
+            put(new Envelope(base.getPriority(), base.getName(), amount, base.getFillSetting(), base.getFillAmount(),
+                    base.hasCap(), base.getCapAmount(), base.isExtra(), base.isDefault()));
+        }
+    }
+
+    void removed(String name) {
+        remove(name);
+    }
+
+    void extraCleared() {
+        for (Envelope e : marked(base.stored(Envelope::isExtra), Envelope::isExtra)) {
+            remove(e.getName());
+            put(new Envelope(e.getPriority(), e.getName(), e.getAmount(), e.getFillSetting(), e.getFillAmount(),
+                    e.hasCap(), e.getCapAmount(), false, e.isDefault()));
+        }
+    }
+
+    void defaultCleared() {
+        for (Envelope e : marked(base.stored(Envelope::isDefault), Envelope::isDefault)) {
+            remove(e.getName());
+            put(new Envelope(e.getPriority(), e.getName(), e.getAmount(), e.getFillSetting(), e.getFillAmount(),
+                    e.hasCap(), e.getCapAmount(), e.isExtra(), false));
+        }
+    }
+
+    //helpers
+
+    private Envelope current(String name) {
+        return changes.containsKey(name) ? changes.get(name) : base.stored(name);
+    }
+
+    private void put(Envelope e) {
+        changes.put(e.getName(), e);
+        centsChange += Cents.toCents(e.getAmount());
+        byPriority = null;
+    }
+
+    private Envelope remove(String name) {
+        Envelope e = current(name);
+        if (e != null) {
+            changes.put(name, null);
+            centsChange -= Cents.toCents(e.getAmount());
+            byPriority = null;
+        }
+        return e;
+    }
+
+    /**
+     * @return the envelopes the flag is set on: those of the base it is set on that were not changed, and the changed ones.
+     */
+    private List<Envelope> marked(List<Envelope> inBase, Predicate<Envelope> flag) {
+        List<Envelope> marked = new ArrayList<>();
+        for (Envelope e : inBase) {
+            if (!changes.containsKey(e.getName())) marked.add(e);
+        }
+        for (Envelope e : changes.values()) {
+            if (e != null && flag.test(e)) marked.add(e);
+        }
+        return marked;
+    }
+
+    private List<Envelope> merged() {
+        List<Envelope> merged = new ArrayList<>();
+        for (Envelope e : base.stored(stored -> !changes.containsKey(stored.getName()))) {
+            merged.add(e);
+        }
+        for (Envelope e : changes.values()) {
+            if (e != null) merged.add(e);
+        }
+        return merged;
+    }
+
+    private List<Envelope> priorityView() {
+        if (byPriority == null) {
+            byPriority = merged();
+            byPriority.sort(EnvelopeCache.PRIORITY_ORDER);
+        }
+        return byPriority;
+    }
+
+    private static List<Envelope> copies(List<Envelope> envelopes) {
+        List<Envelope> copies = new ArrayList<>(envelopes.size());
+        for (Envelope e : envelopes) {
+            copies.add(e.copy());
+        }
+        return copies;
+    }
+}
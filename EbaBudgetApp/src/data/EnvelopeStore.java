@@ -0,0 +1,172 @@
+package data;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+
+import dataObjects.Envelope;
+import dataObjects.LedgerEntry;
+
+/**
+ * Storage backend for envelopes, used by {@link Database}.
+ * <p>
+ * Implementations run every call inside the active {@link UnitOfWork}'s transaction
+ * when there is one (see {@link UnitOfWork#transaction(EnvelopeStore)}), and call
+ * {@link UnitOfWork#setRollbackOnly()} when a write fails. Envelopes returned are
+ * new objects owned by the caller; changing them does not change the store.
+ * <p>
+ * Every write that changes an envelope's amount, including adding, renaming and
+ * removing an envelope that holds money, also appends the change to the transactions
+ * ledger in the same transaction, so each envelope's amount equals the sum of its
+ * ledger entries. Entries carry the unit of work's operation name and id.
+ *
+ * @see SqliteEnvelopeStore
+ * @see InMemoryEnvelopeStore
+ */
+public interface EnvelopeStore {
+
+    /**
+     * Creates or upgrades whatever the store needs before it is used.
+     */
+    void initialize();
+
+    /**
+     * Adds a new envelope.
+     *
+     * @param e the envelope to add
+     */
+    void addEnvelope(Envelope e);
+
+    /**
+     * Adds several new envelopes in one transaction.
+     *
+     * @param envelopes the envelopes to add
+     * @return true if every envelope was added; false if none were.
+     */
+    boolean addEnvelopes(List<Envelope> envelopes);
+
+    /**
+     * Replaces every field of an envelope.
+     *
+     * @param currentName the name the envelope is stored under
+     * @param e           the new values, including the new name
+     * @return true if the envelope was updated; false otherwise.
+     */
+    boolean editEnvelope(String currentName, Envelope e);
+
+    /**
+     * Saves the changed fields ({@link Envelope#getDirtyFields()}) of several envelopes in one transaction.
+     * The envelopes are not marked clean, the caller does that.
+     *
+     * @param envelopes the envelopes to save
+     * @return true if every change was saved; false if none were.
+     */
+    boolean updateEnvelopes(List<Envelope> envelopes);
+
+    /**
+     * @return true if the envelope was removed; false otherwise.
+     */
+    boolean removeEnvelope(String name);
+
+    /**
+     * @return true if the amount was saved; false otherwise.
+     */
+    boolean editAmount(String name, BigDecimal amount);
+
+    List<Envelope> getEnvelopes();
+
+    /**
+     * @return every envelope, lowest priority number first.
+     */
+    List<Envelope> getEnvelopesByPriority();
+
+    /**
+     * @return the envelope, or null if there is none with that name.
+     */
+    Envelope getEnvelope(String name);
+
+    /**
+     * @return the envelope, or null if there is none with that priority.
+     */
+    Envelope getEnvelopeByPriority(int priority);
+
+    /**
+     * @return the default envelope, or null if there is none.
+     */
+    Envelope getDefault();
+
+    /**
+     * @return the extra envelope, or null if there is none.
+     */
+    Envelope getExtra();
+
+    boolean hasEnvelope(String name);
+
+    /**
+     * @return how many envelopes there are, without reading them.
+     */
+    int getEnvelopeCount();
+
+    /**
+     * @return the sum of every envelope amount.
+     */
+    BigDecimal getBalance();
+
+    /**
+     * @return every ledger entry for the envelope name, oldest first.
+     */
+    List<LedgerEntry> getHistory(String name);
+
+    /**
+     * Reads the ledger in sequence order.
+     *
+     * @param afterSequence only entries with a higher sequence number are returned; 0 for the start of the ledger
+     * @param limit         most entries to return
+     * @return the entries, oldest first.
+     */
+    List<LedgerEntry> getLedger(long afterSequence, int limit);
+
+    /**
+     * Starts a transaction for a unit of work. Only called by {@link UnitOfWork}.
+     *
+     * @return the open transaction.
+     * @throws SQLException if the transaction could not be started.
+     */
+    Transaction begin() throws SQLException;
+
+    /**
+     * Releases everything the store holds open. The store may be used again afterwards.
+     */
+    void close();
+
+    /**
+     * A transaction opened by {@link EnvelopeStore#begin()}.
+     */
+    interface Transaction {
+
+        /**
+         * Marks a point the transaction can be rolled back to without ending it.
+         */
+        void savepoint(String name) throws SQLException;
+
+        /**
+         * Undoes everything since the savepoint and drops it.
+         */
+        void rollbackTo(String name) throws SQLException;
+
+        /**
+         * Keeps everything since the savepoint and drops it.
+         */
+        void release(String name) throws SQLException;
+
+
+        void commit() throws SQLException;
+
+        void rollback() throws SQLException;
+
+        /**
+         * Ends the transaction, rolling back anything not committed.
+         */
+        void close();
+    }
+}
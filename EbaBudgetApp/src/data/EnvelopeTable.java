@@ -0,0 +1,32 @@
+package data;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import dataObjects.Envelope;
+
+/**
+ * Envelope reads the stores answer from memory: the committed {@link EnvelopeCache},
+ * or a transaction's {@link EnvelopeOverlay} over it.
+ * Envelopes returned are copies.
+ */
+interface EnvelopeTable {
+
+    List<Envelope> getEnvelopes();
+
+    List<Envelope> getEnvelopesByPriority();
+
+    Envelope getEnvelope(String name);
+
+    Envelope getEnvelopeByPriority(int priority);
+
+    Envelope getDefault();
+
+    Envelope getExtra();
+
+    boolean hasEnvelope(String name);
+
+    int getEnvelopeCount();
+
+    BigDecimal getBalance();
+}
@@ -0,0 +1,290 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import settings.DatabaseSettings;
+
+/**
+ * Commits mutations from any thread in groups, so many small writes share one transaction
+ * and one sync to disk instead of paying for a commit each.
+ * <p>
+ * A group starts with the first mutation submitted and takes every mutation that arrives
+ * within the window after it, up to the maximum group size; then it runs them in order on
+ * the committer thread, inside one group {@link UnitOfWork}, and commits once. Each mutation
+ * is still its own operation in the ledger and runs behind its own savepoint, so one that
+ * throws or whose write fails is rolled back alone and the rest of the group is kept.
+ * <p>
+ * The future returned by {@link #submit(String, Supplier)} completes, on the committer
+ * thread, only once the group's transaction has committed, so a caller that needs to know
+ * its write is durable waits for it; {@link #submitAndWait(String, Supplier)} does that.
+ * A caller that does not can carry on and let the write land with its group.
+ */
+public class GroupCommit {
+
+    private static GroupCommit shared;
+
+    private final BlockingQueue<GroupMember<?>> queue = new LinkedBlockingQueue<>();
+    private final long windowNanos;
+    private final int maxBatch;
+    private final Thread committer;
+    private volatile boolean closed = false;
+
+    //metrics
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong kept = new AtomicLong();
+    private final AtomicLong rolledBack = new AtomicLong();
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicLong failedGroups = new AtomicLong();
+    private final AtomicLong maxGroupSize = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong totalCommitNanos = new AtomicLong();
+
+    /**
+     * Starts the committer thread.
+     *
+     * @param windowMillis how long a group waits for more mutations after its first one, 0 to not wait
+     * @param maxBatch     the most mutations committed in one group
+     */
+    public GroupCommit(long windowMillis, int maxBatch) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(windowMillis, 0));
+        this.maxBatch = Math.max(maxBatch, 1);
+        this.committer = new Thread(this::commitGroups, "database-group-commit");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * @return the shared group committer, started on first use with the window in {@link DatabaseSettings}.
+     */
+    public static synchronized GroupCommit shared() {
+        if (shared == null || shared.closed) {
+            shared = new GroupCommit(DatabaseSettings.groupCommitWindowMillis, DatabaseSettings.groupCommitMaxBatch);
+        }
+        return shared;
+    }
+
+    /**
+     * Commits the mutations already submitted to the shared committer, then stops it.
+     */
+    public static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.shutdown();
+            shared = null;
+        }
+    }
+
+    /**
+     * Adds a mutation to the next group.
+     *
+     * @param operation name recorded with the mutation's ledger rows, for example "deposit"
+     * @param mutation  the write to run, usually an action
+     * @return completed with the mutation's result once its group has committed, or with its
+     *         exception; failed with a {@link RolledBackException} if its changes were not kept, because
+     *         one of its writes failed or the group could not be committed, and right away if the
+     *         committer is shut down.
+     */
+    public <T> CompletableFuture<T> submit(String operation, Supplier<T> mutation) {
+        GroupMember<T> queued = new GroupMember<>(operation, mutation);
+        if (closed) {
+            queued.reject(new RejectedExecutionException("The group committer is shut down"));
+            return queued.getFuture();
+        }
+        queue.add(queued);
+        submitted.incrementAndGet();
+        return queued.getFuture();
+    }
+
+    /**
+     * Submits a mutation and waits until its group has committed.
+     *
+     * @return the mutation's result.
+     * @throws RuntimeException the mutation's exception, or a {@link RolledBackException} if its changes were not kept.
+     */
+    public <T> T submitAndWait(String operation, Supplier<T> mutation) {
+        if (Thread.currentThread() == committer || UnitOfWork.isActive()) {
+            throw new IllegalStateException("Cannot wait for a group commit inside a unit of work");
+        }
+        try {
+            return submit(operation, mutation).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    private void commitGroups() {
+        List<GroupMember<?>> group = new ArrayList<>(maxBatch);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                GroupMember<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                group.add(first);
+
+                // the window starts when the first mutation arrived, so none waits longer than it
+                long deadline = first.getQueuedAt() + windowNanos;
+                while (group.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    GroupMember<?> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    group.add(next);
+                }
+            } catch (InterruptedException e) {
+                // nothing interrupts the committer; shutdown() is seen on the next poll
+                if (group.isEmpty()) continue;
+            }
+
+            commit(group);
+            group.clear();
+        }
+
+        // submitted while shutting down, after the last poll
+        GroupMember<?> left;
+        while ((left = queue.poll()) != null) {
+            left.reject(new RejectedExecutionException("The group committer is shut down"));
+        }
+    }
+
+    private void commit(List<GroupMember<?>> group) {
+        long start = System.nanoTime();
+        boolean committed = GroupMember.runGroup(group);
+
+        groups.incrementAndGet();
+        if (!committed) failedGroups.incrementAndGet();
+        maxGroupSize.accumulateAndGet(group.size(), Math::max);
+        totalCommitNanos.addAndGet(System.nanoTime() - start);
+
+        for (GroupMember<?> mutation : group) {
+            totalWaitNanos.addAndGet(start - mutation.getQueuedAt());
+            if (mutation.isKept()) {
+                kept.incrementAndGet();
+            } else {
+                rolledBack.incrementAndGet();
+            }
+            mutation.complete();
+        }
+    }
+
+    /**
+     * Commits the mutations already submitted, then stops the committer thread.
+     */
+    public void shutdown() {
+        closed = true;
+        if (Thread.currentThread() == committer) return;
+        try {
+            committer.join(DatabaseSettings.checkoutTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return a snapshot of the committer's group size, latency and outcome metrics.
+     */
+    public Metrics getMetrics() {
+        return new Metrics(submitted.get(), kept.get(), rolledBack.get(), groups.get(), failedGroups.get(),
+                maxGroupSize.get(), totalWaitNanos.get(), totalCommitNanos.get());
+    }
+
+    /**
+     * Point-in-time view of the group commit metrics.
+     */
+    public static class Metrics {
+
+        private final long submitted;
+        private final long kept;
+        private final long rolledBack;
+        private final long groups;
+        private final long failedGroups;
+        private final long maxGroupSize;
+        private final long totalWaitNanos;
+        private final long totalCommitNanos;
+
+        Metrics(long submitted, long kept, long rolledBack, long groups, long failedGroups, long maxGroupSize,
+                long totalWaitNanos, long totalCommitNanos) {
+            this.submitted = submitted;
+            this.kept = kept;
+            this.rolledBack = rolledBack;
+            this.groups = groups;
+            this.failedGroups = failedGroups;
+            this.maxGroupSize = maxGroupSize;
+            this.totalWaitNanos = totalWaitNanos;
+            this.totalCommitNanos = totalCommitNanos;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        /**
+         * @return mutations committed.
+         */
+        public long getKept() {
+            return kept;
+        }
+
+        /**
+         * @return mutations that failed, alone or with their group, and were not saved.
+         */
+        public long getRolledBack() {
+            return rolledBack;
+        }
+
+        public long getGroups() {
+            return groups;
+        }
+
+        /**
+         * @return groups whose transaction did not commit.
+         */
+        public long getFailedGroups() {
+            return failedGroups;
+        }
+
+        public long getMaxGroupSize() {
+            return maxGroupSize;
+        }
+
+        public double getAverageGroupSize() {
+            if (groups == 0) return 0;
+            return (double) (kept + rolledBack) / groups;
+        }
+
+        /**
+         * @return average time a mutation waited for its group to start.
+         */
+        public double getAverageWaitMicros() {
+            long ran = kept + rolledBack;
+            if (ran == 0) return 0;
+            return totalWaitNanos / 1000.0 / ran;
+        }
+
+        /**
+         * @return average time to run and commit a group.
+         */
+        public double getAverageCommitMicros() {
+            if (groups == 0) return 0;
+            return totalCommitNanos / 1000.0 / groups;
+        }
+
+        @Override
+        public String toString() {
+            return "submitted: " + submitted +
+                    "\nkept: " + kept +
+                    "\nrolled back: " + rolledBack +
+                    "\ngroups: " + groups + String.format(" (average %.2f mutations, max %d)", getAverageGroupSize(), maxGroupSize) +
+                    "\nfailed groups: " + failedGroups +
+                    "\naverage wait for group (us): " + String.format("%.2f", getAverageWaitMicros()) +
+                    "\naverage group commit (us): " + String.format("%.2f", getAverageCommitMicros());
+        }
+    }
+}
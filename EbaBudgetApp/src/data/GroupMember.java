@@ -0,0 +1,123 @@
+package data;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * One queued write, run as a member of a group {@link UnitOfWork}: behind its own savepoint
+ * and under its own ledger operation, committed once with the rest of its group.
+ * <p>
+ * {@link GroupCommit} and {@link WriteQueue} both queue their writes as members and run a
+ * group of them with {@link #runGroup(List)}. A member that throws, errors included, or
+ * whose write fails is rolled back alone; its future fails with that exception or a
+ * {@link RolledBackException}, and the rest of the group is kept.
+ *
+ * @param <T> what the write returns
+ */
+final class GroupMember<T> {
+
+    private static final DatabaseLog log = DatabaseLog.forClass(GroupMember.class);
+
+    private final String operation;
+    private final Supplier<T> work;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private final long queuedAt = System.nanoTime();
+    //0 until it runs, it may never run if the group fails to start
+    private long startedAt = 0;
+    private long runNanos = 0;
+    private T result;
+    private Throwable error;
+    private boolean kept;
+    private boolean committed;
+
+    GroupMember(String operation, Supplier<T> work) {
+        this.operation = operation;
+        this.work = work;
+    }
+
+    /**
+     * Runs the members in order in one group unit of work on the current store and commits it.
+     * Nothing thrown gets out, so the thread running groups lives on.
+     *
+     * @return true if the group's transaction committed.
+     */
+    static boolean runGroup(List<? extends GroupMember<?>> group) {
+        boolean committed;
+        try {
+            EnvelopeStore store = Database.getStore();
+            committed = UnitOfWork.executeGroup(() -> {
+                for (GroupMember<?> member : group) {
+                    member.run(store);
+                }
+            });
+        } catch (Throwable e) {
+            log.error("Group of " + group.size() + " write(s) failed: " + e);
+            committed = false;
+        }
+
+        for (GroupMember<?> member : group) {
+            member.committed = committed;
+        }
+        return committed;
+    }
+
+    private void run(EnvelopeStore store) {
+        startedAt = System.nanoTime();
+        try {
+            kept = UnitOfWork.executeMember(store, operation, () -> result = work.get());
+        } catch (Throwable e) {
+            // rolled back to its savepoint, the rest of the group goes on
+            error = e;
+            log.error("Write " + operation + " failed: " + e);
+        }
+        runNanos = System.nanoTime() - startedAt;
+    }
+
+    /**
+     * Completes the future with the result if the member's changes were committed, otherwise fails it.
+     */
+    void complete() {
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else if (!isKept()) {
+            // rolled back with its group, or alone because one of its writes failed
+            future.completeExceptionally(new RolledBackException(operation));
+        } else {
+            future.complete(result);
+        }
+    }
+
+    /**
+     * Fails the future without running the write, for example when the queue is shut down.
+     */
+    void reject(Throwable reason) {
+        future.completeExceptionally(reason);
+    }
+
+    /**
+     * @return true once the group has committed with this member's changes in it.
+     */
+    boolean isKept() {
+        return error == null && kept && committed;
+    }
+
+    CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+    long getQueuedAt() {
+        return queuedAt;
+    }
+
+    /**
+     * @return when the write started, 0 if it never ran.
+     */
+    long getStartedAt() {
+        return startedAt;
+    }
+
+    long getRunNanos() {
+        return runNanos;
+    }
+}
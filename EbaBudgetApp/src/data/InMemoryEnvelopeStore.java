@@ -0,0 +1,455 @@
+package data;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import dataObjects.Envelope;
+import dataObjects.EnvelopeField;
+import dataObjects.LedgerEntry;
+import settings.EnvelopeSettings;
+
+/**
+ * {@link EnvelopeStore} that keeps envelopes in memory only. Nothing is saved
+ * when the program exits; used for benchmarks and tests that should not do any I/O.
+ * <p>
+ * A transaction keeps the envelopes it changes in an {@link EnvelopeOverlay} over the
+ * committed table and commit applies them in one step, so other threads only ever see
+ * committed envelopes and rollback just drops the overlay. Only touched envelopes are
+ * copied, a write does not copy the table. One transaction runs at a time, like SQLite's single writer.
+ * Ledger entries written by a transaction are appended to the ledger when it commits.
+ * The ledger is kept in memory too unless a {@link LedgerStore} such as a
+ * {@link MappedLedgerFile} is given. The envelopes themselves are still not saved:
+ * opening a store on a ledger that already has entries brings back each envelope with
+ * money in it from the ledger's totals, so envelope amounts and the ledger agree, but
+ * with default settings, and envelopes that add up to nothing are not brought back.
+ */
+public class InMemoryEnvelopeStore implements EnvelopeStore {
+
+    private static final DatabaseLog log = DatabaseLog.forClass(InMemoryEnvelopeStore.class);
+
+    //committed envelopes, changed in place by each commit and replaced on close
+    private volatile EnvelopeCache committed = emptyTable();
+    //committed ledger entries, only appended to while holding writeLock
+    private final LedgerStore ledger;
+    //held by the running transaction
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final AtomicLong lastOperationId = new AtomicLong();
+
+    public InMemoryEnvelopeStore() {
+        this(new MemoryLedger());
+    }
+
+    /**
+     * @param ledger where committed ledger entries go; the store closes it when it is closed.
+     *               Envelopes are rebuilt from the entries it already has, see the class comment.
+     */
+    public InMemoryEnvelopeStore(LedgerStore ledger) {
+        this.ledger = ledger;
+        List<LedgerEntry> last = ledger.read(ledger.lastSequence() - 1, 1);
+        if (!last.isEmpty()) {
+            lastOperationId.set(last.get(0).getOperationId());
+            committed = rebuiltTable(ledger.totals());
+        }
+    }
+
+    /**
+     * @return an envelope for every ledger total, with its amount and default settings, in name order.
+     */
+    private static EnvelopeCache rebuiltTable(Map<String, Long> totals) {
+        List<String> names = new ArrayList<>(totals.keySet());
+        Collections.sort(names);
+        List<Envelope> envelopes = new ArrayList<>();
+        for (String name : names) {
+            envelopes.add(new Envelope(envelopes.size() + 1, name, Cents.fromCents(totals.get(name)), EnvelopeSettings.fill, 0,
+                    false, 0, false, false));
+        }
+        if (!envelopes.isEmpty()) {
+            log.warn("Rebuilt " + envelopes.size() + " envelope(s) from the ledger, their settings were not saved");
+        }
+
+        EnvelopeCache table = new EnvelopeCache();
+        table.load(envelopes, table.getVersion());
+        return table;
+    }
+
+    private static EnvelopeCache emptyTable() {
+        EnvelopeCache table = new EnvelopeCache();
+        table.load(Collections.emptyList(), table.getVersion());
+        return table;
+    }
+
+    @Override
+    public void initialize() {
+        // nothing to create
+    }
+
+    /**
+     * Drops every envelope and closes the ledger, which drops its entries too unless it is saved somewhere.
+     */
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            committed = emptyTable();
+            ledger.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public MemoryTransaction begin() {
+        writeLock.lock();
+        return new MemoryTransaction(new EnvelopeOverlay(committed));
+    }
+
+    /**
+     * @return the unit of work's transaction, or null outside one.
+     */
+    private MemoryTransaction transaction() {
+        try {
+            return (MemoryTransaction) UnitOfWork.transaction(this);
+        } catch (SQLException e) {
+            // begin() never throws
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the table reads should use: the unit of work's overlay inside one, otherwise the committed table.
+     */
+    private EnvelopeTable table() {
+        MemoryTransaction tx = transaction();
+        return tx != null ? tx.table : committed;
+    }
+
+    /**
+     * Runs a write in the unit of work's transaction, or outside a unit in one of its own committed right after.
+     */
+    private <T> T write(Function<MemoryTransaction, T> op) {
+        MemoryTransaction tx = transaction();
+        if (tx != null) return op.apply(tx);
+
+        MemoryTransaction own = begin();
+        try {
+            T result = op.apply(own);
+            own.commit();
+            return result;
+        } catch (SQLException e) {
+            // only the ledger can fail to commit, the table is left as it was
+            throw new IllegalStateException(e.getMessage(), e);
+        } finally {
+            own.close();
+        }
+    }
+
+    @Override
+    public void addEnvelope(Envelope e) {
+        boolean added = write(tx -> {
+            if (tx.table.hasEnvelope(e.getName())) return false;
+            tx.table.added(e);
+            tx.record(e.getName(), Cents.toCents(e.getAmount()));
+            return true;
+        });
+        if (added) {
+            log.debug("Envelope added successfully.");
+        } else {
+            UnitOfWork.setRollbackOnly();
+            log.error("Failed to add envelope: an envelope named " + e.getName() + " already exists");
+        }
+    }
+
+    @Override
+    public boolean addEnvelopes(List<Envelope> envelopes) {
+        // every name is checked before anything is added, so a conflict leaves the table untouched
+        String conflict = write(tx -> {
+            Set<String> taken = new HashSet<>();
+            for (Envelope e : envelopes) {
+                if (tx.table.hasEnvelope(e.getName()) || !taken.add(e.getName())) return e.getName();
+            }
+            for (Envelope e : envelopes) {
+                tx.table.added(e.copy());
+                tx.record(e.getName(), Cents.toCents(e.getAmount()));
+            }
+            return null;
+        });
+        if (conflict != null) {
+            UnitOfWork.setRollbackOnly();
+            log.error("Failed to add envelopes: an envelope named " + conflict + " already exists");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean editEnvelope(String currentName, Envelope e) {
+        // null when the new name is already taken
+        Boolean edited = write(tx -> {
+            Envelope stored = tx.table.getEnvelope(currentName);
+            if (stored == null) return false;
+            if (!e.getName().equals(currentName) && tx.table.hasEnvelope(e.getName())) return null;
+
+            tx.recordMove(currentName, Cents.toCents(stored.getAmount()), e.getName(), Cents.toCents(e.getAmount()));
+            if (e.isExtra()) tx.table.extraCleared();
+            if (e.isDefault()) tx.table.defaultCleared();
+            tx.table.replaced(currentName, e);
+            return true;
+        });
+        if (edited == null) {
+            UnitOfWork.setRollbackOnly();
+            log.error("Failed to update envelope: an envelope named " + e.getName() + " already exists");
+            return false;
+        }
+        return edited;
+    }
+
+    @Override
+    public boolean updateEnvelopes(List<Envelope> envelopes) {
+        // every rename is checked before anything is written, so a conflict leaves the table untouched
+        String conflict = write(tx -> {
+            Set<String> taken = new HashSet<>();
+            for (Envelope e : envelopes) {
+                if (!e.getDirtyFields().contains(EnvelopeField.NAME) || e.getName().equals(e.getStoredName())) continue;
+                if (tx.table.hasEnvelope(e.getName()) || !taken.add(e.getName())) return e.getName();
+            }
+
+            for (Envelope e : envelopes) {
+                Set<EnvelopeField> fields = e.getDirtyFields();
+                if (fields.isEmpty()) continue;
+                Envelope stored = tx.table.getEnvelope(e.getStoredName());
+                if (stored == null) continue;
+
+                long storedCents = Cents.toCents(stored.getAmount());
+                long newCents = fields.contains(EnvelopeField.AMOUNT) ? Cents.toCents(e.getAmount()) : storedCents;
+                String newName = fields.contains(EnvelopeField.NAME) ? e.getName() : e.getStoredName();
+                tx.recordMove(e.getStoredName(), storedCents, newName, newCents);
+
+                if (fields.contains(EnvelopeField.EXTRA) && e.isExtra()) tx.table.extraCleared();
+                if (fields.contains(EnvelopeField.DEFAULT) && e.isDefault()) tx.table.defaultCleared();
+                tx.table.updated(e.getStoredName(), e.copy(), EnumSet.copyOf(fields));
+            }
+            return null;
+        });
+        if (conflict != null) {
+            UnitOfWork.setRollbackOnly();
+            log.error("Failed to save envelope changes: an envelope named " + conflict + " already exists");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean removeEnvelope(String name) {
+        return write(tx -> {
+            Envelope stored = tx.table.getEnvelope(name);
+            if (stored == null) return false;
+            tx.record(name, -Cents.toCents(stored.getAmount()));
+            tx.table.removed(name);
+            return true;
+        });
+    }
+
+    @Override
+    public boolean editAmount(String name, BigDecimal amount) {
+        write(tx -> {
+            Envelope stored = tx.table.getEnvelope(name);
+            if (stored == null) return null;
+            tx.record(name, Cents.toCents(amount) - Cents.toCents(stored.getAmount()));
+            tx.table.amountChanged(name, amount);
+            return null;
+        });
+        log.debug("Amount updated successfully for envelope: " + name);
+        return true;
+    }
+
+    @Override
+    public List<Envelope> getEnvelopes() {
+        return table().getEnvelopes();
+    }
+
+    @Override
+    public List<Envelope> getEnvelopesByPriority() {
+        return table().getEnvelopesByPriority();
+    }
+
+    @Override
+    public Envelope getEnvelope(String name) {
+        return table().getEnvelope(name);
+    }
+
+    @Override
+    public Envelope getEnvelopeByPriority(int priority) {
+        return table().getEnvelopeByPriority(priority);
+    }
+
+    @Override
+    public Envelope getDefault() {
+        return table().getDefault();
+    }
+
+    @Override
+    public Envelope getExtra() {
+        return table().getExtra();
+    }
+
+    @Override
+    public boolean hasEnvelope(String name) {
+        return table().hasEnvelope(name);
+    }
+
+    @Override
+    public int getEnvelopeCount() {
+        return table().getEnvelopeCount();
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        return table().getBalance();
+    }
+
+    @Override
+    public List<LedgerEntry> getHistory(String name) {
+        List<LedgerEntry> entries = ledger.history(name);
+        MemoryTransaction tx = transaction();
+        if (tx == null) return entries;
+        for (LedgerEntry entry : tx.pending) {
+            if (entry.getEnvelope().equals(name)) entries.add(entry);
+        }
+        return entries;
+    }
+
+    @Override
+    public List<LedgerEntry> getLedger(long afterSequence, int limit) {
+        // inside a unit of work its uncommitted entries follow the committed ones
+        List<LedgerEntry> entries = ledger.read(afterSequence, limit);
+        MemoryTransaction tx = transaction();
+        if (tx == null) return entries;
+        for (LedgerEntry entry : tx.pending) {
+            if (entries.size() >= limit) break;
+            if (entry.getSequence() > afterSequence) entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * A unit of work's changed envelopes and new ledger entries, both published on commit.
+     */
+    class MemoryTransaction implements Transaction {
+
+        private EnvelopeOverlay table;
+        private final List<LedgerEntry> pending = new ArrayList<>();
+        private final Map<String, Savepoint> savepoints = new HashMap<>();
+        private final long timestamp = System.currentTimeMillis();
+        private long operationId = 0;
+        private boolean open = true;
+
+        MemoryTransaction(EnvelopeOverlay table) {
+            this.table = table;
+        }
+
+        /**
+         * Adds a ledger entry for money moving into (positive) or out of the envelope.
+         */
+        void record(String envelope, long cents) {
+            if (cents == 0) return;
+            if (operationId == 0) {
+                operationId = UnitOfWork.operationId(lastOperationId::incrementAndGet);
+            }
+            // one transaction at a time, so these are the sequence numbers the ledger will have
+            long sequence = ledger.lastSequence() + pending.size() + 1;
+            pending.add(new LedgerEntry(sequence, timestamp, envelope, cents, operationId,
+                    UnitOfWork.operationName()));
+        }
+
+        /**
+         * Adds the ledger entries for an envelope changing its amount and maybe its name.
+         */
+        void recordMove(String storedName, long storedCents, String newName, long newCents) {
+            if (storedName.equals(newName)) {
+                record(storedName, newCents - storedCents);
+            } else {
+                record(storedName, -storedCents);
+                record(newName, newCents);
+            }
+        }
+
+        @Override
+        public void savepoint(String name) {
+            savepoints.put(name, new Savepoint(table.copy(), pending.size(), operationId));
+            // what follows is a new operation, it takes its own id
+            operationId = 0;
+        }
+
+        @Override
+        public void rollbackTo(String name) throws SQLException {
+            Savepoint savepoint = removeSavepoint(name);
+            table = savepoint.table;
+            pending.subList(savepoint.ledgerRows, pending.size()).clear();
+            operationId = savepoint.operationId;
+        }
+
+        @Override
+        public void release(String name) throws SQLException {
+            removeSavepoint(name);
+        }
+
+        private Savepoint removeSavepoint(String name) throws SQLException {
+            Savepoint savepoint = savepoints.remove(name);
+            if (savepoint == null) throw new SQLException("No such savepoint: " + name);
+            return savepoint;
+        }
+
+        @Override
+        public void commit() throws SQLException {
+            try {
+                ledger.append(pending);
+            } catch (IOException e) {
+                throw new SQLException("Failed to write the ledger: " + e.getMessage(), e);
+            }
+            if (!table.getChanges().isEmpty()) committed.applied(table.getChanges());
+            pending.clear();
+        }
+
+        @Override
+        public void rollback() {
+            // the overlay is dropped on close
+            pending.clear();
+        }
+
+        @Override
+        public void close() {
+            if (!open) return;
+            open = false;
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * What a {@link MemoryTransaction} had at a savepoint.
+     */
+    private static class Savepoint {
+
+        private final EnvelopeOverlay table;
+        private final int ledgerRows;
+        private final long operationId;
+
+        Savepoint(EnvelopeOverlay table, int ledgerRows, long operationId) {
+            this.table = table;
+            this.ledgerRows = ledgerRows;
+            this.operationId = operationId;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package data;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in buckets that grow geometrically, four to every doubling, so any
+ * percentile it reports is within about 20% of the true value whether calls take
+ * microseconds or seconds. Recording is lock-free and never allocates.
+ */
+public class LatencyHistogram {
+
+    // four buckets per power of two over the whole range of a long
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param nanos how long one call took
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        // the two bits below the highest one pick the quarter of the doubling
+        int sub = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return exponent * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        int exponent = bucket / SUB_BUCKETS;
+        if (exponent < 2) return bucket;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getAverageMicros() {
+        long calls = count.get();
+        if (calls == 0) return 0;
+        return totalNanos.get() / 1000.0 / calls;
+    }
+
+    /**
+     * @param percentile between 0 and 100, for example 99 for the 99th percentile
+     * @return the duration that many percent of calls took at most, as the middle of its bucket; 0 before any call.
+     */
+    public long getPercentileNanos(double percentile) {
+        long calls = count.get();
+        if (calls == 0) return 0;
+
+        long rank = (long) Math.ceil(calls * Math.min(Math.max(percentile, 0), 100) / 100.0);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= Math.max(rank, 1)) {
+                long low = lowerBound(bucket);
+                long high = bucket + 1 < BUCKETS ? lowerBound(bucket + 1) : Long.MAX_VALUE;
+                // never more than the slowest call actually seen
+                return Math.min(low + (high - low) / 2, maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Forgets every recorded call.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+}
@@ -0,0 +1,289 @@
+package data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact snapshots of every envelope amount, keyed by the ledger sequence number
+ * they include, so the amounts can be rebuilt from the ledger without reading all of it.
+ * <p>
+ * On startup {@link #recover(Connection, int, int)} loads the latest snapshot and replays
+ * only the ledger rows written after it. The result is checked against the amounts in
+ * 'envelopes', and any amount that disagrees with the ledger is corrected, since the
+ * ledger is the record of what happened. A new snapshot is taken whenever the tail has
+ * grown past the snapshot interval.
+ * <p>
+ * A snapshot is one row of 'ledger_snapshots' holding a binary blob: a format version,
+ * the number of envelopes, then each envelope name and amount in cents. Envelopes
+ * holding nothing are left out.
+ */
+public class LedgerSnapshots {
+
+    private static final DatabaseLog log = DatabaseLog.forClass(LedgerSnapshots.class);
+
+    static final String CREATE_SNAPSHOTS_SQL = "CREATE TABLE IF NOT EXISTS ledger_snapshots (\n"
+            + " seq INTEGER PRIMARY KEY,\n"
+            + " created_at INTEGER NOT NULL,\n"
+            + " envelope_count INTEGER NOT NULL,\n"
+            + " state BLOB NOT NULL\n"
+            + ");";
+
+    private static final int FORMAT_VERSION = 1;
+
+    private LedgerSnapshots() {
+    }
+
+    /**
+     * Rebuilds every envelope amount from the latest snapshot and the ledger tail,
+     * corrects amounts in 'envelopes' that disagree, and takes a new snapshot if the
+     * tail was at least {@code interval} rows long. Runs in one transaction.
+     *
+     * @param conn     connection to the database, in auto-commit mode
+     * @param interval ledger rows between snapshots
+     * @param kept     number of snapshots to keep
+     * @return what recovery found and how long each part took.
+     * @throws SQLException if the database could not be read or corrected.
+     */
+    public static Recovery recover(Connection conn, int interval, int kept) throws SQLException {
+        long start = System.nanoTime();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            // latest snapshot
+            long snapshotSeq = 0;
+            Map<String, Long> amounts = new HashMap<>();
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT seq, state FROM ledger_snapshots ORDER BY seq DESC LIMIT 1");
+                 ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    snapshotSeq = rs.getLong("seq");
+                    amounts = decode(rs.getBytes("state"));
+                }
+            }
+            long loaded = System.nanoTime();
+
+            // tail of the ledger
+            long lastSeq = snapshotSeq;
+            long tailRows = 0;
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT seq, envelope, amount_cents FROM transactions WHERE seq > ? ORDER BY seq")) {
+                pstmt.setLong(1, snapshotSeq);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        amounts.merge(rs.getString("envelope"), rs.getLong("amount_cents"), Long::sum);
+                        lastSeq = rs.getLong("seq");
+                        tailRows++;
+                    }
+                }
+            }
+            long replayed = System.nanoTime();
+
+            // check the envelopes table against the ledger
+            int corrected = 0;
+            try (PreparedStatement select = conn.prepareStatement("SELECT name, amount_cents FROM envelopes");
+                 PreparedStatement update = conn.prepareStatement("UPDATE envelopes SET amount_cents = ? WHERE name = ?");
+                 ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString("name");
+                    long stored = rs.getLong("amount_cents");
+                    long expected = amounts.getOrDefault(name, 0L);
+                    if (stored == expected) continue;
+
+                    log.warn("Envelope " + name + " holds " + Cents.fromCents(stored)
+                            + " but the ledger says " + Cents.fromCents(expected) + ", correcting it");
+                    update.setLong(1, expected);
+                    update.setString(2, name);
+                    update.addBatch();
+                    corrected++;
+                }
+                if (corrected > 0) update.executeBatch();
+            }
+            long verified = System.nanoTime();
+
+            boolean snapshotTaken = false;
+            if (tailRows >= interval && tailRows > 0) {
+                write(conn, lastSeq, amounts, kept);
+                snapshotTaken = true;
+            }
+
+            conn.commit();
+            return new Recovery(snapshotSeq, tailRows, corrected, snapshotTaken, loaded - start, replayed - loaded,
+                    verified - replayed, System.nanoTime() - start);
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the current envelope amounts at the current end of the ledger.
+     * The caller must hold the writer connection so nothing is written in between.
+     *
+     * @param conn the writer connection, in auto-commit mode
+     * @param kept number of snapshots to keep
+     * @return the ledger sequence number the snapshot includes, or 0 if the ledger is empty.
+     * @throws SQLException if the snapshot could not be written.
+     */
+    public static long take(Connection conn, int kept) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            long seq;
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT COALESCE(MAX(seq), 0) FROM transactions");
+                 ResultSet rs = pstmt.executeQuery()) {
+                seq = rs.next() ? rs.getLong(1) : 0;
+            }
+            if (seq == 0) {
+                conn.rollback();
+                return 0;
+            }
+
+            Map<String, Long> amounts = new HashMap<>();
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT name, amount_cents FROM envelopes WHERE amount_cents <> 0");
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    amounts.put(rs.getString("name"), rs.getLong("amount_cents"));
+                }
+            }
+
+            write(conn, seq, amounts, kept);
+            conn.commit();
+            return seq;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void write(Connection conn, long seq, Map<String, Long> amounts, int kept) throws SQLException {
+        int count = 0;
+        for (long cents : amounts.values()) {
+            if (cents != 0) count++;
+        }
+
+        try (PreparedStatement insert = conn.prepareStatement("INSERT OR REPLACE INTO ledger_snapshots(seq, created_at, envelope_count, state) VALUES(?,?,?,?)")) {
+            insert.setLong(1, seq);
+            insert.setLong(2, System.currentTimeMillis());
+            insert.setInt(3, count);
+            insert.setBytes(4, encode(amounts));
+            insert.executeUpdate();
+        }
+        try (PreparedStatement prune = conn.prepareStatement("DELETE FROM ledger_snapshots WHERE seq NOT IN (SELECT seq FROM ledger_snapshots ORDER BY seq DESC LIMIT ?)")) {
+            prune.setInt(1, Math.max(kept, 1));
+            prune.executeUpdate();
+        }
+    }
+
+    static byte[] encode(Map<String, Long> amounts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            int count = 0;
+            for (long cents : amounts.values()) {
+                if (cents != 0) count++;
+            }
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(count);
+            for (Map.Entry<String, Long> entry : amounts.entrySet()) {
+                if (entry.getValue() == 0) continue;
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        } catch (IOException e) {
+            // writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Map<String, Long> decode(byte[] state) throws SQLException {
+        Map<String, Long> amounts = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(state))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new SQLException("Unknown ledger snapshot format " + version);
+            }
+            int count = in.readInt();
+            for (int index = 0; index < count; index++) {
+                amounts.put(in.readUTF(), in.readLong());
+            }
+        } catch (IOException e) {
+            throw new SQLException("Ledger snapshot is damaged: " + e.getMessage(), e);
+        }
+        return amounts;
+    }
+
+    /**
+     * What {@link #recover(Connection, int, int)} did, with its timings.
+     */
+    public static class Recovery {
+
+        private final long snapshotSequence;
+        private final long tailRows;
+        private final int correctedEnvelopes;
+        private final boolean snapshotTaken;
+        private final long loadNanos;
+        private final long replayNanos;
+        private final long verifyNanos;
+        private final long totalNanos;
+
+        Recovery(long snapshotSequence, long tailRows, int correctedEnvelopes, boolean snapshotTaken, long loadNanos,
+                long replayNanos, long verifyNanos, long totalNanos) {
+            this.snapshotSequence = snapshotSequence;
+            this.tailRows = tailRows;
+            this.correctedEnvelopes = correctedEnvelopes;
+            this.snapshotTaken = snapshotTaken;
+            this.loadNanos = loadNanos;
+            this.replayNanos = replayNanos;
+            this.verifyNanos = verifyNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        /**
+         * @return ledger sequence number of the snapshot recovery started from, 0 if there was none.
+         */
+        public long getSnapshotSequence() {
+            return snapshotSequence;
+        }
+
+        /**
+         * @return ledger rows replayed on top of the snapshot.
+         */
+        public long getTailRows() {
+            return tailRows;
+        }
+
+        /**
+         * @return envelopes whose stored amount disagreed with the ledger and was corrected.
+         */
+        public int getCorrectedEnvelopes() {
+            return correctedEnvelopes;
+        }
+
+        public boolean isSnapshotTaken() {
+            return snapshotTaken;
+        }
+
+        public double getTotalMillis() {
+            return totalNanos / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return "ledger recovery from snapshot #" + snapshotSequence + ": replayed " + tailRows + " rows, corrected "
+                    + correctedEnvelopes + " envelope(s)" + (snapshotTaken ? ", took a new snapshot" : "")
+                    + String.format(" in %.2f ms (load %.2f, replay %.2f, verify %.2f)", getTotalMillis(),
+                            loadNanos / 1_000_000.0, replayNanos / 1_000_000.0, verifyNanos / 1_000_000.0);
+        }
+    }
+}
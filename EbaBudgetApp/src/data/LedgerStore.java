@@ -0,0 +1,51 @@
+package data;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import dataObjects.LedgerEntry;
+
+/**
+ * Where an {@link EnvelopeStore} keeps its committed transactions ledger when the
+ * ledger is not part of its database. Sequence numbers are contiguous: the first
+ * entry is 1 and every appended entry is one more than the last.
+ *
+ * @see MemoryLedger
+ * @see MappedLedgerFile
+ */
+public interface LedgerStore {
+
+    /**
+     * Appends committed entries. Their sequence numbers must carry on from {@link #lastSequence()}.
+     *
+     * @param entries the entries, in sequence order
+     * @throws IOException if the entries could not be written.
+     */
+    void append(List<LedgerEntry> entries) throws IOException;
+
+    /**
+     * @return the sequence number of the last entry, 0 if the ledger is empty.
+     */
+    long lastSequence();
+
+    /**
+     * @return up to {@code limit} entries after {@code afterSequence}, oldest first.
+     */
+    List<LedgerEntry> read(long afterSequence, int limit);
+
+    /**
+     * @return every entry for the envelope name, oldest first.
+     */
+    List<LedgerEntry> history(String envelope);
+
+    /**
+     * @return cents per envelope name over the whole ledger, leaving out envelopes that add up to nothing.
+     */
+    Map<String, Long> totals();
+
+    /**
+     * Releases whatever the ledger holds open.
+     */
+    void close();
+}
@@ -0,0 +1,262 @@
+package data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import dataObjects.Envelope;
+import settings.EnvelopeSettings;
+import tickets.ResponseTicket;
+
+/**
+ * Imports envelopes from the old text format the app saved to info.txt before it used
+ * a database: a balance line, then one envelope per line as
+ * {@code priority#name#amount#fillSetting#fillAmount#cap#capAmount#extra#default}.
+ * <p>
+ * The file is read one line at a time and each record is checked before it is added.
+ * Records are inserted in batches, all in one unit of work, so an import is a single
+ * transaction: if any record is invalid nothing is added, and the response lists
+ * every problem found with its line number. Imported priorities follow the envelopes
+ * already in the database.
+ */
+public class LegacyImporter {
+
+    private static final char SEPARATOR = '#';
+    private static final int FIELDS = 9;
+    // envelopes handed to the store at a time
+    private static final int BATCH_SIZE = 500;
+    // problems reported before the rest are only counted
+    private static final int MAX_ERRORS = 50;
+
+    private final ResponseTicket response = new ResponseTicket();
+    private final String source;
+    private final String[] fields = new String[FIELDS];
+    private final List<Envelope> batch = new ArrayList<>(BATCH_SIZE);
+    private final Set<String> names = new HashSet<>();
+    private final BitSet priorities = new BitSet();
+
+    private int priorityOffset;
+    private boolean hasExtra;
+    private boolean hasDefault;
+    private int lineNumber = 0;
+    private int records = 0;
+    private int errors = 0;
+    private long totalCents = 0;
+
+    private LegacyImporter(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Imports an info.txt file.
+     *
+     * @param file the file to read
+     * @return errors for every invalid record, or an info message with the number of envelopes imported.
+     */
+    public static ResponseTicket importFile(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader, file.toString());
+        } catch (IOException e) {
+            ResponseTicket response = new ResponseTicket();
+            response.addErrorMessage("Failed to read " + file + ": " + e.getMessage());
+            return response;
+        }
+    }
+
+    /**
+     * Imports envelopes in the info.txt format.
+     *
+     * @param reader where to read them from
+     * @param source name of the file, used in messages
+     * @return errors for every invalid record, or an info message with the number of envelopes imported.
+     */
+    public static ResponseTicket importFrom(Reader reader, String source) {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        LegacyImporter importer = new LegacyImporter(source);
+        try {
+            return UnitOfWork.execute("import", () -> importer.run(lines));
+        } catch (RolledBackException e) {
+            ResponseTicket response = new ResponseTicket();
+            response.addErrorMessage("Failed to import " + source + ": " + e.getMessage());
+            return response;
+        }
+    }
+
+    private ResponseTicket run(BufferedReader lines) {
+        List<Envelope> existing = Database.getEnvelopes();
+        priorityOffset = existing.size();
+        for (Envelope e : existing) {
+            names.add(e.getName());
+            hasExtra |= e.isExtra();
+            hasDefault |= e.isDefault();
+        }
+
+        BigDecimal balance = null;
+        try {
+            String line = nextLine(lines);
+            if (line == null) {
+                error("the file is empty");
+            } else {
+                balance = parseAmount(line.trim(), "balance");
+            }
+
+            while ((line = nextLine(lines)) != null) {
+                if (line.isBlank()) continue;
+                Envelope e = parse(line);
+                if (e == null) continue;
+
+                records++;
+                totalCents += Cents.toCents(e.getAmount());
+                if (errors > 0) continue;
+                batch.add(e);
+                if (batch.size() == BATCH_SIZE) addBatch();
+            }
+        } catch (IOException e) {
+            errors++;
+            response.addErrorMessage("Failed to read " + source + ": " + e.getMessage());
+        }
+
+        // priorities have to be 1 to n with none missing
+        int missing = priorities.nextClearBit(1);
+        if (errors == 0 && missing <= records) {
+            lineNumber = 0;
+            error("no envelope has priority " + missing);
+        }
+        if (errors == 0 && !batch.isEmpty()) addBatch();
+
+        if (errors > 0) {
+            UnitOfWork.setRollbackOnly();
+            if (errors > MAX_ERRORS) {
+                response.addErrorMessage((errors - MAX_ERRORS) + " more problem(s) in " + source);
+            }
+            response.addErrorMessage("Nothing was imported from " + source);
+            return response;
+        }
+
+        if (balance != null && Cents.toCents(balance) != totalCents) {
+            response.addInfoMessage("The balance in " + source + " was " + balance + " but its envelopes hold "
+                    + Cents.fromCents(totalCents) + ", the envelopes were imported as they are");
+        }
+        response.addInfoMessage("Imported " + records + " envelope(s) from " + source);
+        return response;
+    }
+
+    private String nextLine(BufferedReader lines) throws IOException {
+        String line = lines.readLine();
+        if (line != null) lineNumber++;
+        return line;
+    }
+
+    private void addBatch() {
+        if (!Database.addEnvelopes(batch)) {
+            error("the database refused the envelopes");
+        }
+        batch.clear();
+    }
+
+    /**
+     * @return the envelope on the line, or null if it is not valid.
+     */
+    private Envelope parse(String line) {
+        int count = 0;
+        int start = 0;
+        while (count < FIELDS) {
+            int end = line.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                fields[count++] = line.substring(start);
+                break;
+            }
+            fields[count++] = line.substring(start, end);
+            start = end + 1;
+            if (count == FIELDS) {
+                // a separator after the last field means there are too many
+                count++;
+            }
+        }
+        if (count != FIELDS) {
+            error("expected " + FIELDS + " fields separated by '" + SEPARATOR + "'");
+            return null;
+        }
+
+        int errorsBefore = errors;
+        int priority = parseInt(fields[0], "priority", 1);
+        String name = fields[1];
+        BigDecimal amount = parseAmount(fields[2], "amount");
+        int fillSetting = parseInt(fields[3], "fill setting", EnvelopeSettings.fill);
+        int fillAmount = parseInt(fields[4], "fill amount", 0);
+        boolean cap = parseBoolean(fields[5], "cap");
+        int capAmount = parseInt(fields[6], "cap amount", 0);
+        boolean extra = parseBoolean(fields[7], "extra");
+        boolean isDefault = parseBoolean(fields[8], "default");
+
+        if (name.isBlank()) {
+            error("the name is empty");
+        } else if (!names.add(name)) {
+            error("an envelope named " + name + " already exists");
+        }
+        if (priority > 0 && priorities.get(priority)) {
+            error("more than one envelope has priority " + priority);
+        }
+        if (fillSetting > EnvelopeSettings.amount) {
+            error("unknown fill setting " + fillSetting);
+        }
+        if (extra && hasExtra) {
+            error("there is already an extra envelope");
+        }
+        if (isDefault && hasDefault) {
+            error("there is already a default envelope");
+        }
+        if (errors > errorsBefore) return null;
+
+        priorities.set(priority);
+        hasExtra |= extra;
+        hasDefault |= isDefault;
+        return new Envelope(priority + priorityOffset, name, amount, fillSetting, fillAmount, cap, capAmount, extra, isDefault);
+    }
+
+    private int parseInt(String field, String what, int min) {
+        try {
+            int value = Integer.parseInt(field.trim());
+            if (value >= min) return value;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        error("the " + what + " '" + field + "' is not a whole number of at least " + min);
+        return -1;
+    }
+
+    private BigDecimal parseAmount(String field, String what) {
+        try {
+            BigDecimal value = new BigDecimal(field.trim());
+            if (value.signum() >= 0) return value;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        error("the " + what + " '" + field + "' is not an amount of at least 0");
+        return BigDecimal.ZERO;
+    }
+
+    private boolean parseBoolean(String field, String what) {
+        String value = field.trim();
+        if (value.equalsIgnoreCase("true")) return true;
+        if (!value.equalsIgnoreCase("false")) {
+            error("the " + what + " flag '" + field + "' is not true or false");
+        }
+        return false;
+    }
+
+    private void error(String message) {
+        errors++;
+        if (errors > MAX_ERRORS) return;
+        response.addErrorMessage(source + (lineNumber > 0 ? " line " + lineNumber : "") + ": " + message);
+    }
+}
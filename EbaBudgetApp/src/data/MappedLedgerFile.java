@@ -0,0 +1,464 @@
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import dataObjects.LedgerEntry;
+
+/**
+ * {@link LedgerStore} kept in a binary file of fixed-width records, read and appended
+ * through a memory mapping. Meant for budgets with a long history: since entry n is
+ * always at the same place in the file, a range of the ledger is found without an
+ * index, and {@link #scan(long, long, RecordVisitor)} hands records to the caller as
+ * plain numbers without building a {@link LedgerEntry} or a BigDecimal for each one.
+ * <p>
+ * The file starts with a {@value #HEADER_SIZE} byte header (magic number, format version,
+ * record size, number of records). Each {@value #RECORD_SIZE} byte record holds:
+ * <pre>
+ *  0  sequence        long
+ *  8  timestamp       long, epoch millis
+ * 16  amount          long, cents
+ * 24  operation id    long
+ * 32  envelope        int, name id
+ * 36  operation       int, name id
+ * 40  (unused)        int
+ * 44  checksum        int, CRC32 of bytes 0-43
+ * </pre>
+ * Envelope and operation names are kept once each in a second file next to the ledger
+ * ({@code <ledger>.names}), in the order they were first used; a name's id is its place
+ * in that file. A new name is forced to disk before any record that uses it.
+ * <p>
+ * The record count in the header is only updated after the records it covers were
+ * written, so after a crash the file is recovered by checking the records past the
+ * header count: every record whose sequence and checksum are right is kept, and the
+ * first torn or half-written record and anything after it are zeroed out.
+ * <p>
+ * The file is mapped as a single region, which caps it at about 44 million records.
+ */
+public class MappedLedgerFile implements LedgerStore {
+
+    private static final DatabaseLog log = DatabaseLog.forClass(MappedLedgerFile.class);
+
+    static final int MAGIC = 0x4542414C; // "EBAL"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 48;
+
+    //header fields
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_RECORD_SIZE = 8;
+    private static final int HEADER_COUNT = 16;
+
+    //record fields
+    private static final int SEQUENCE = 0;
+    private static final int TIMESTAMP = 8;
+    private static final int CENTS = 16;
+    private static final int OPERATION_ID = 24;
+    private static final int ENVELOPE = 32;
+    private static final int OPERATION = 36;
+    private static final int CHECKSUM = 44;
+
+    private static final long MAX_RECORDS = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    private final Path path;
+    private final boolean sync;
+    private final int growRecords;
+    private final FileChannel channel;
+    private final NameFile names;
+    private final long truncatedRecords;
+
+    //replaced when the file grows; readers only use absolute gets so they can share it
+    private volatile MappedByteBuffer map;
+    private long capacity;
+    //records in the file, published after they are written
+    private volatile long count;
+    private boolean closed = false;
+
+    /**
+     * Opens the ledger file, creating it if needed, and recovers its tail.
+     *
+     * @param path        the ledger file; the names file is kept next to it
+     * @param sync        force every append to disk before returning
+     * @param growRecords how many records the file grows by when it is full
+     * @throws IOException if the file could not be opened or is not a ledger file.
+     */
+    public MappedLedgerFile(Path path, boolean sync, int growRecords) throws IOException {
+        this.path = path;
+        this.sync = sync;
+        this.growRecords = Math.max(growRecords, 1);
+        this.names = new NameFile(Paths.get(path.toString() + ".names"));
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean created = channel.size() < HEADER_SIZE;
+            long size = Math.max(channel.size(), HEADER_SIZE);
+            capacity = (size - HEADER_SIZE) / RECORD_SIZE;
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity * RECORD_SIZE);
+
+            if (created) {
+                map.putInt(HEADER_MAGIC, MAGIC);
+                map.putInt(HEADER_VERSION, FORMAT_VERSION);
+                map.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+                map.putLong(HEADER_COUNT, 0);
+                map.force();
+            } else {
+                checkHeader();
+            }
+            truncatedRecords = recover();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            names.close();
+            throw e;
+        }
+    }
+
+    private void checkHeader() throws IOException {
+        if (map.getInt(HEADER_MAGIC) != MAGIC) {
+            throw new IOException(path + " is not a ledger file");
+        }
+        if (map.getInt(HEADER_VERSION) != FORMAT_VERSION) {
+            throw new IOException("Unknown ledger file format " + map.getInt(HEADER_VERSION) + " in " + path);
+        }
+        if (map.getInt(HEADER_RECORD_SIZE) != RECORD_SIZE) {
+            throw new IOException("Unexpected record size " + map.getInt(HEADER_RECORD_SIZE) + " in " + path);
+        }
+    }
+
+    /**
+     * Keeps every good record past the header count and zeroes out the rest of the tail.
+     *
+     * @return the number of records zeroed out.
+     */
+    private long recover() {
+        long good = Math.min(Math.max(map.getLong(HEADER_COUNT), 0), capacity);
+        // records before the header count were written before the count was, but check the last one anyway
+        while (good > 0 && !isValid(good - 1)) {
+            good--;
+        }
+        while (good < capacity && isValid(good)) {
+            good++;
+        }
+
+        long truncated = 0;
+        for (long index = good; index < capacity && !isEmpty(index); index++) {
+            int offset = offset(index);
+            for (int b = 0; b < RECORD_SIZE; b += 8) {
+                map.putLong(offset + b, 0);
+            }
+            truncated++;
+        }
+        if (truncated > 0) {
+            log.warn("Ledger file " + path + " had " + truncated + " unfinished record(s) after #" + good + ", dropped them");
+        }
+
+        count = good;
+        map.putLong(HEADER_COUNT, good);
+        map.force();
+        return truncated;
+    }
+
+    private boolean isValid(long index) {
+        int offset = offset(index);
+        return map.getLong(offset + SEQUENCE) == index + 1
+                && isName(map.getInt(offset + ENVELOPE))
+                && isName(map.getInt(offset + OPERATION))
+                && map.getInt(offset + CHECKSUM) == checksum(offset);
+    }
+
+    private boolean isName(int id) {
+        return id >= 0 && id < names.size();
+    }
+
+    private boolean isEmpty(long index) {
+        int offset = offset(index);
+        for (int b = 0; b < RECORD_SIZE; b += 8) {
+            if (map.getLong(offset + b) != 0) return false;
+        }
+        return true;
+    }
+
+    private int checksum(int offset) {
+        ByteBuffer record = map.duplicate();
+        record.limit(offset + CHECKSUM).position(offset);
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private static int offset(long index) {
+        return (int) (HEADER_SIZE + index * RECORD_SIZE);
+    }
+
+    /**
+     * @return the records zeroed out by recovery when the file was opened.
+     */
+    public long getTruncatedRecords() {
+        return truncatedRecords;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized void append(List<LedgerEntry> entries) throws IOException {
+        if (closed) throw new IllegalStateException("Ledger file " + path + " is closed");
+        if (entries.isEmpty()) return;
+
+        long first = count;
+        long expected = first + 1;
+        for (LedgerEntry entry : entries) {
+            if (entry.getSequence() != expected) {
+                throw new IllegalArgumentException("Expected ledger sequence " + expected + " but got " + entry.getSequence());
+            }
+            expected++;
+        }
+        ensureCapacity(first + entries.size());
+
+        long index = first;
+        for (LedgerEntry entry : entries) {
+            int offset = offset(index++);
+            map.putLong(offset + SEQUENCE, entry.getSequence());
+            map.putLong(offset + TIMESTAMP, entry.getTimestamp());
+            map.putLong(offset + CENTS, entry.getAmountCents());
+            map.putLong(offset + OPERATION_ID, entry.getOperationId());
+            map.putInt(offset + ENVELOPE, names.idOf(entry.getEnvelope()));
+            map.putInt(offset + OPERATION, names.idOf(entry.getOperation()));
+            map.putInt(offset + CHECKSUM, checksum(offset));
+        }
+
+        // records first, then the count that covers them
+        if (sync) map.force(offset(first), entries.size() * RECORD_SIZE);
+        map.putLong(HEADER_COUNT, index);
+        if (sync) map.force(HEADER_COUNT, 8);
+        count = index;
+    }
+
+    private void ensureCapacity(long records) throws IOException {
+        if (records <= capacity) return;
+        if (records > MAX_RECORDS) {
+            throw new IOException("Ledger file " + path + " is full at " + capacity + " records");
+        }
+        long grown = Math.min(Math.max(records, capacity + growRecords), MAX_RECORDS);
+        // mapping past the end of the file grows the file, the new part reads as zeros
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + grown * RECORD_SIZE);
+        capacity = grown;
+    }
+
+    /**
+     * Forces everything appended so far to disk. Only needed when appends are not synced.
+     */
+    public synchronized void force() {
+        if (!closed) map.force();
+    }
+
+    @Override
+    public long lastSequence() {
+        return count;
+    }
+
+    /**
+     * Hands every record from sequence {@code from} through {@code to} to the visitor, in order.
+     * The range is clipped to the records in the file. Names are passed as ids, see {@link #name(int)}.
+     */
+    public void scan(long from, long to, RecordVisitor visitor) {
+        // count before map: a grown map is published before the count that needs it
+        long last = Math.min(to, count);
+        MappedByteBuffer records = map;
+        for (long seq = Math.max(from, 1); seq <= last; seq++) {
+            int offset = offset(seq - 1);
+            visitor.visit(seq, records.getLong(offset + TIMESTAMP), records.getInt(offset + ENVELOPE),
+                    records.getLong(offset + CENTS), records.getLong(offset + OPERATION_ID), records.getInt(offset + OPERATION));
+        }
+    }
+
+    /**
+     * @return the name with this id.
+     */
+    public String name(int id) {
+        return names.name(id);
+    }
+
+    /**
+     * @return the id of the name, or -1 if the ledger has never used it.
+     */
+    public int id(String name) {
+        return names.find(name);
+    }
+
+    @Override
+    public List<LedgerEntry> read(long afterSequence, int limit) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        long from = Math.max(afterSequence, 0) + 1;
+        scan(from, from + limit - 1, (seq, timestamp, envelope, cents, operationId, operation) ->
+                entries.add(new LedgerEntry(seq, timestamp, name(envelope), cents, operationId, name(operation))));
+        return entries;
+    }
+
+    @Override
+    public List<LedgerEntry> history(String envelope) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        int id = id(envelope);
+        if (id < 0) return entries;
+
+        scan(1, count, (seq, timestamp, envelopeId, cents, operationId, operation) -> {
+            if (envelopeId == id) {
+                entries.add(new LedgerEntry(seq, timestamp, envelope, cents, operationId, name(operation)));
+            }
+        });
+        return entries;
+    }
+
+    @Override
+    public Map<String, Long> totals() {
+        return totals(1, count);
+    }
+
+    /**
+     * Adds up the money moved in or out of each envelope from sequence {@code from} through {@code to}.
+     *
+     * @return cents per envelope name, leaving out envelopes that add up to nothing.
+     */
+    public Map<String, Long> totals(long from, long to) {
+        // names are saved before the records that use them, so reading the count first covers every id
+        long last = Math.min(to, count);
+        long[] cents = new long[names.size()];
+        scan(from, last, (seq, timestamp, envelope, amount, operationId, operation) -> cents[envelope] += amount);
+
+        Map<String, Long> totals = new HashMap<>();
+        for (int id = 0; id < cents.length; id++) {
+            if (cents[id] != 0) totals.put(name(id), cents[id]);
+        }
+        return totals;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            map.force();
+            channel.close();
+            names.close();
+        } catch (IOException e) {
+            log.error("Failed to close ledger file " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Receives one ledger record from {@link MappedLedgerFile#scan(long, long, RecordVisitor)}.
+     */
+    public interface RecordVisitor {
+        void visit(long sequence, long timestamp, int envelope, long cents, long operationId, int operation);
+    }
+
+    /**
+     * The names file: each name once, as its length, its UTF-8 bytes and a CRC32 of them.
+     * A torn name at the end of the file is cut off when it is opened.
+     */
+    private static class NameFile {
+
+        private final Path path;
+        private final FileChannel channel;
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        NameFile(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                load();
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private void load() throws IOException {
+            long size = channel.size();
+            ByteBuffer contents = ByteBuffer.allocate((int) size);
+            while (contents.hasRemaining() && channel.read(contents, contents.position()) >= 0) {
+                // keep reading
+            }
+            contents.flip();
+
+            while (contents.remaining() >= 4) {
+                int start = contents.position();
+                int length = contents.getInt();
+                if (length < 0 || contents.remaining() < length + 4) {
+                    contents.position(start);
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                contents.get(bytes);
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                if (contents.getInt() != (int) crc.getValue()) {
+                    contents.position(start);
+                    break;
+                }
+                add(new String(bytes, StandardCharsets.UTF_8));
+            }
+
+            if (contents.position() < size) {
+                log.warn("Ledger names file " + path + " had an unfinished name at the end, dropped it");
+                channel.truncate(contents.position());
+                channel.force(true);
+            }
+            channel.position(contents.position());
+        }
+
+        private synchronized int add(String name) {
+            int id = names.size();
+            names.add(name);
+            ids.put(name, id);
+            return id;
+        }
+
+        synchronized int size() {
+            return names.size();
+        }
+
+        synchronized String name(int id) {
+            return names.get(id);
+        }
+
+        synchronized int find(String name) {
+            return ids.getOrDefault(name, -1);
+        }
+
+        /**
+         * @return the id of the name, saving it first if it is new.
+         */
+        synchronized int idOf(String name) throws IOException {
+            Integer id = ids.get(name);
+            if (id != null) return id;
+
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            ByteBuffer entry = ByteBuffer.allocate(bytes.length + 8);
+            entry.putInt(bytes.length).put(bytes).putInt((int) crc.getValue()).flip();
+            while (entry.hasRemaining()) {
+                channel.write(entry);
+            }
+            channel.force(false);
+            return add(name);
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dataObjects.LedgerEntry;
+
+/**
+ * {@link LedgerStore} kept in a list in memory; nothing is saved.
+ */
+public class MemoryLedger implements LedgerStore {
+
+    private final List<LedgerEntry> entries = new ArrayList<>();
+
+    @Override
+    public synchronized void append(List<LedgerEntry> newEntries) {
+        long expected = lastSequence() + 1;
+        for (LedgerEntry entry : newEntries) {
+            if (entry.getSequence() != expected) {
+                throw new IllegalArgumentException("Expected ledger sequence " + expected + " but got " + entry.getSequence());
+            }
+            expected++;
+        }
+        entries.addAll(newEntries);
+    }
+
+    @Override
+    public synchronized long lastSequence() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized List<LedgerEntry> read(long afterSequence, int limit) {
+        // sequence n is at index n - 1
+        int from = (int) Math.min(Math.max(afterSequence, 0), entries.size());
+        int to = (int) Math.min((long) from + limit, entries.size());
+        return new ArrayList<>(entries.subList(from, to));
+    }
+
+    @Override
+    public synchronized List<LedgerEntry> history(String envelope) {
+        List<LedgerEntry> history = new ArrayList<>();
+        for (LedgerEntry entry : entries) {
+            if (entry.getEnvelope().equals(envelope)) history.add(entry);
+        }
+        return history;
+    }
+
+    @Override
+    public synchronized Map<String, Long> totals() {
+        Map<String, Long> totals = new HashMap<>();
+        for (LedgerEntry entry : entries) {
+            totals.merge(entry.getEnvelope(), entry.getAmountCents(), Long::sum);
+        }
+        totals.values().removeIf(cents -> cents == 0);
+        return totals;
+    }
+
+    /**
+     * Drops every entry.
+     */
+    @Override
+    public synchronized void close() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,50 @@
+package data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * One numbered step of the database schema, applied by {@link SchemaMigrator}.
+ */
+public class Migration {
+
+    /**
+     * The work done by a migration. It runs inside the migrator's transaction
+     * and must not commit or roll back itself.
+     */
+    public interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private final int version;
+    private final String description;
+    private final Step step;
+
+    /**
+     * @param version     schema version the database is at once this migration has run
+     * @param description short description used in log output
+     * @param step        the work to do
+     */
+    public Migration(int version, String description, Step step) {
+        this.version = version;
+        this.description = description;
+        this.step = step;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    void apply(Connection conn) throws SQLException {
+        step.apply(conn);
+    }
+
+    @Override
+    public String toString() {
+        return version + " (" + description + ")";
+    }
+}
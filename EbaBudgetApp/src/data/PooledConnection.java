@@ -0,0 +1,95 @@
+package data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A connection checked out of a {@link ConnectionPool}.
+ * <p>
+ * Closing it hands the underlying connection back to the pool instead of
+ * closing it, so it can be used in try-with-resources like a normal connection.
+ */
+public class PooledConnection implements AutoCloseable {
+
+    private static final DatabaseLog log = DatabaseLog.forClass(PooledConnection.class);
+
+    private final ConnectionPool pool;
+    private final BlockingQueue<Connection> home;
+    private final StatementCache statements;
+    //false for handles made by share(), which leave the connection checked out when closed
+    private final boolean owner;
+    private Connection conn;
+
+    PooledConnection(ConnectionPool pool, BlockingQueue<Connection> home, Connection conn, StatementCache statements) {
+        this(pool, home, conn, statements, true);
+    }
+
+    private PooledConnection(ConnectionPool pool, BlockingQueue<Connection> home, Connection conn,
+            StatementCache statements, boolean owner) {
+        this.pool = pool;
+        this.home = home;
+        this.conn = conn;
+        this.statements = statements;
+        this.owner = owner;
+    }
+
+    /**
+     * Returns a second handle on this connection whose {@link #close()} does nothing.
+     * Used to hand the connection of an open transaction to code that closes what it checks out.
+     *
+     * @return a handle that shares this connection.
+     */
+    public PooledConnection share() {
+        return new PooledConnection(pool, home, getConnection(), statements, false);
+    }
+
+    /**
+     * @return the underlying JDBC connection.
+     */
+    public Connection getConnection() {
+        if (conn == null) {
+            throw new IllegalStateException("Connection has already been returned to the pool");
+        }
+        return conn;
+    }
+
+    /**
+     * Returns a prepared statement for the SQL from this connection's statement cache.
+     * The statement is owned by the cache and must not be closed by the caller.
+     *
+     * @param sql the SQL text
+     * @return a prepared statement for the SQL
+     * @throws SQLException if the statement could not be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        getConnection();
+        return statements.prepare(sql);
+    }
+
+    /**
+     * Returns the connection to the pool. Any transaction left open is rolled back.
+     * Closing a shared handle only invalidates the handle.
+     */
+    @Override
+    public void close() {
+        if (conn == null) return;
+        if (!owner) {
+            conn = null;
+            return;
+        }
+
+        try {
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            log.error("Failed to reset connection: " + e.getMessage());
+        }
+
+        pool.release(home, conn);
+        conn = null;
+    }
+}
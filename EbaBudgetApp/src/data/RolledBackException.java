@@ -0,0 +1,25 @@
+package data;
+
+/**
+ * Thrown by {@link UnitOfWork#execute(String, java.util.function.Supplier)} when the unit's
+ * transaction rolled back instead of committing, because a write inside it failed, it was
+ * marked rollback-only or its commit threw. Nothing the unit wrote was kept.
+ */
+public class RolledBackException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String operation;
+
+    RolledBackException(String operation) {
+        super("The " + operation + " was not saved, its transaction was rolled back");
+        this.operation = operation;
+    }
+
+    /**
+     * @return the operation name of the unit that rolled back.
+     */
+    public String getOperation() {
+        return operation;
+    }
+}
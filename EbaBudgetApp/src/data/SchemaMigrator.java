@@ -0,0 +1,268 @@
+package data;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Brings the database schema up to date when the application starts.
+ * <p>
+ * The schema version is kept in SQLite's {@code PRAGMA user_version}. Every
+ * {@link Migration} with a higher version than the database is applied in
+ * order, each in its own transaction together with the version bump, so a
+ * crash or failure part way through leaves the database at the last completed
+ * version and the failed step runs again on the next start. Steps are also
+ * written to be safe to run against a database that already has their change,
+ * since databases created before versioning all start at version 0.
+ */
+public class SchemaMigrator {
+
+    private static final DatabaseLog log = DatabaseLog.forClass(SchemaMigrator.class);
+
+    /**
+     * SQL that creates the 'envelopes' table. Amounts are stored as whole cents.
+     */
+    static final String CREATE_ENVELOPES_SQL = "CREATE TABLE IF NOT EXISTS envelopes (\n"
+            + " name TEXT PRIMARY KEY,\n"
+            + " priority INTEGER NOT NULL,\n"
+            + " amount_cents INTEGER NOT NULL,\n"
+            + " fill_setting INTEGER,\n"
+            + " fill_amount INTEGER,\n"
+            + " cap BOOLEAN,\n"
+            + " cap_amount INTEGER,\n"
+            + " extra BOOLEAN,\n"
+            + " default_env BOOLEAN\n"
+            + ");";
+
+    /**
+     * SQL that creates the append-only 'transactions' ledger. Every change to an
+     * envelope's amount is a row here, so the amounts in 'envelopes' always equal
+     * the sum of each envelope's ledger rows.
+     */
+    static final String CREATE_TRANSACTIONS_SQL = "CREATE TABLE IF NOT EXISTS transactions (\n"
+            + " seq INTEGER PRIMARY KEY AUTOINCREMENT,\n"
+            + " created_at INTEGER NOT NULL,\n"
+            + " envelope TEXT NOT NULL,\n"
+            + " amount_cents INTEGER NOT NULL,\n"
+            + " operation_id INTEGER NOT NULL,\n"
+            + " operation TEXT NOT NULL\n"
+            + ");";
+
+    /**
+     * Every migration, in version order. New schema changes are added to the end.
+     */
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "create envelopes table", conn -> execute(conn, CREATE_ENVELOPES_SQL)),
+            new Migration(2, "store envelope amounts as cents", SchemaMigrator::migrateAmountsToCents),
+            // envelopes are almost always walked in priority order
+            new Migration(3, "index envelopes by priority",
+                    conn -> execute(conn, "CREATE INDEX IF NOT EXISTS idx_envelopes_priority ON envelopes(priority)")),
+            new Migration(4, "create transactions ledger", SchemaMigrator::createLedger),
+            new Migration(5, "create ledger snapshots table", conn -> execute(conn, LedgerSnapshots.CREATE_SNAPSHOTS_SQL)),
+            new Migration(6, "materialize total balance", SchemaMigrator::createBalance)
+    );
+
+    /**
+     * How long each migration took the last time {@link #migrate(Connection)} ran, one line per migration.
+     */
+    private static List<String> lastRunTimings = Collections.emptyList();
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * @return the schema version the application expects.
+     */
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).getVersion();
+    }
+
+    /**
+     * Applies every migration the database has not had yet.
+     *
+     * @param conn connection to the database, in auto-commit mode
+     * @return the schema version after migrating.
+     * @throws SQLException if a migration failed; earlier migrations stay applied.
+     */
+    public static synchronized int migrate(Connection conn) throws SQLException {
+        int version = getVersion(conn);
+        if (version > latestVersion()) {
+            throw new SQLException("Database schema version " + version + " is newer than this application supports ("
+                    + latestVersion() + ")");
+        }
+
+        List<String> timings = new ArrayList<>();
+        boolean autoCommit = conn.getAutoCommit();
+        try {
+            for (Migration migration : MIGRATIONS) {
+                if (migration.getVersion() <= version) continue;
+
+                long start = System.nanoTime();
+                conn.setAutoCommit(false);
+                try {
+                    migration.apply(conn);
+                    setVersion(conn, migration.getVersion());
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw new SQLException("Migration " + migration + " failed: " + e.getMessage(), e);
+                }
+                long millis = (System.nanoTime() - start) / 1_000_000;
+
+                version = migration.getVersion();
+                timings.add("migration " + migration + " took " + millis + " ms");
+                log.info("Applied migration " + migration + " in " + millis + " ms");
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+            lastRunTimings = Collections.unmodifiableList(timings);
+        }
+        return version;
+    }
+
+    /**
+     * @return how long each migration applied by the last {@link #migrate(Connection)} call took.
+     */
+    public static List<String> getLastRunTimings() {
+        return lastRunTimings;
+    }
+
+    /**
+     * @return the schema version stored in the database.
+     */
+    public static int getVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void setVersion(Connection conn, int version) throws SQLException {
+        // pragmas cannot take bound parameters; version is always an int from MIGRATIONS
+        execute(conn, "PRAGMA user_version = " + version);
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Checks if a table has a column with the given name.
+     */
+    static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the transactions ledger and its indexes, and opens it with one
+     * 'opening' row per envelope that already holds money so the ledger adds up
+     * to the current amounts. Rows cannot be updated or deleted.
+     */
+    private static void createLedger(Connection conn) throws SQLException {
+        execute(conn, CREATE_TRANSACTIONS_SQL);
+        execute(conn, "CREATE INDEX IF NOT EXISTS idx_transactions_envelope ON transactions(envelope, seq)");
+        execute(conn, "CREATE INDEX IF NOT EXISTS idx_transactions_operation ON transactions(operation_id)");
+        execute(conn, "CREATE TRIGGER IF NOT EXISTS transactions_no_update BEFORE UPDATE ON transactions "
+                + "BEGIN SELECT RAISE(ABORT, 'transactions are append-only'); END");
+        execute(conn, "CREATE TRIGGER IF NOT EXISTS transactions_no_delete BEFORE DELETE ON transactions "
+                + "BEGIN SELECT RAISE(ABORT, 'transactions are append-only'); END");
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM transactions")) {
+            if (rs.next() && rs.getLong(1) > 0) return;
+        }
+        try (PreparedStatement seed = conn.prepareStatement("INSERT INTO transactions(created_at, envelope, amount_cents, operation_id, operation) "
+                + "SELECT ?, name, amount_cents, 0, 'opening' FROM envelopes WHERE amount_cents <> 0")) {
+            seed.setLong(1, System.currentTimeMillis());
+            seed.executeUpdate();
+        }
+    }
+
+    /**
+     * Creates the one-row 'balance' table holding the total of every envelope amount,
+     * and the triggers that keep it up to date in the same transaction as each insert,
+     * amount change and delete on 'envelopes'.
+     */
+    private static void createBalance(Connection conn) throws SQLException {
+        execute(conn, "CREATE TABLE IF NOT EXISTS balance (\n"
+                + " id INTEGER PRIMARY KEY CHECK (id = 1),\n"
+                + " total_cents INTEGER NOT NULL\n"
+                + ");");
+        execute(conn, "INSERT OR REPLACE INTO balance(id, total_cents) SELECT 1, COALESCE(SUM(amount_cents), 0) FROM envelopes");
+        execute(conn, "CREATE TRIGGER IF NOT EXISTS envelopes_balance_insert AFTER INSERT ON envelopes "
+                + "BEGIN UPDATE balance SET total_cents = total_cents + NEW.amount_cents WHERE id = 1; END");
+        execute(conn, "CREATE TRIGGER IF NOT EXISTS envelopes_balance_update AFTER UPDATE OF amount_cents ON envelopes "
+                + "WHEN NEW.amount_cents <> OLD.amount_cents "
+                + "BEGIN UPDATE balance SET total_cents = total_cents + NEW.amount_cents - OLD.amount_cents WHERE id = 1; END");
+        execute(conn, "CREATE TRIGGER IF NOT EXISTS envelopes_balance_delete AFTER DELETE ON envelopes "
+                + "BEGIN UPDATE balance SET total_cents = total_cents - OLD.amount_cents WHERE id = 1; END");
+    }
+
+    /**
+     * Rebuilds an 'envelopes' table that stores amounts in a TEXT 'amount' column
+     * into one that stores them in the INTEGER 'amount_cents' column. Each amount
+     * is parsed as a BigDecimal and rounded half up to whole cents; amounts with a
+     * fraction of a cent are logged with their old value, since the old column is
+     * dropped. Does nothing if the table already stores cents.
+     */
+    private static void migrateAmountsToCents(Connection conn) throws SQLException {
+        if (!hasColumn(conn, "envelopes", "amount")) return;
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE envelopes RENAME TO envelopes_text_amounts");
+            // the priority index moved with the renamed table and is dropped with it
+            stmt.execute("DROP INDEX IF EXISTS idx_envelopes_priority");
+            stmt.execute(CREATE_ENVELOPES_SQL);
+
+            int rounded = 0;
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM envelopes_text_amounts");
+                 PreparedStatement insert = conn.prepareStatement("INSERT INTO envelopes(name, priority, amount_cents, fill_setting, fill_amount, cap, cap_amount, extra, default_env) VALUES(?,?,?,?,?,?,?,?,?)")) {
+                while (rs.next()) {
+                    String name = rs.getString("name");
+                    long cents;
+                    try {
+                        BigDecimal amount = new BigDecimal(rs.getString("amount").trim());
+                        if (Cents.hasFractionOfCent(amount)) {
+                            rounded++;
+                            log.warn("Envelope " + name + " had $" + amount.toPlainString() + ", rounded to $" + Cents.round(amount));
+                        }
+                        cents = Cents.toCents(amount);
+                    } catch (NumberFormatException | ArithmeticException | NullPointerException e) {
+                        throw new SQLException("Envelope " + name + " has an invalid amount: " + rs.getString("amount"));
+                    }
+
+                    insert.setString(1, name);
+                    insert.setInt(2, rs.getInt("priority"));
+                    insert.setLong(3, cents);
+                    insert.setInt(4, rs.getInt("fill_setting"));
+                    insert.setInt(5, rs.getInt("fill_amount"));
+                    insert.setBoolean(6, rs.getBoolean("cap"));
+                    insert.setInt(7, rs.getInt("cap_amount"));
+                    insert.setBoolean(8, rs.getBoolean("extra"));
+                    insert.setBoolean(9, rs.getBoolean("default_env"));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            if (rounded > 0) {
+                log.warn("Rounded " + rounded + " amount(s) with a fraction of a cent while converting amounts to cents");
+            }
+
+            stmt.execute("DROP TABLE envelopes_text_amounts");
+        }
+    }
+}
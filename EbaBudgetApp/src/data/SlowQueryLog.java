@@ -0,0 +1,102 @@
+package data;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import settings.DatabaseSettings;
+
+/**
+ * Logs statements that take longer than {@link DatabaseSettings#slowQueryMillis}, with
+ * their SQL and the parameters they ran with.
+ * <p>
+ * {@link StatementCache} wraps every statement it prepares in a proxy that remembers the
+ * parameters set on it and times each execute call. For a query that is the time to run
+ * it up to its first row, since SQLite finds the rest while the result set is read. For a
+ * batch the parameters shown are the last row's.
+ */
+final class SlowQueryLog implements InvocationHandler {
+
+    private static final DatabaseLog log = DatabaseLog.forClass(SlowQueryLog.class);
+    private static final AtomicLong slowQueries = new AtomicLong();
+
+    private final PreparedStatement target;
+    private final String sql;
+    private final long thresholdNanos;
+    private final List<Object> parameters = new ArrayList<>();
+    private int batched = 0;
+
+    private SlowQueryLog(PreparedStatement target, String sql, long thresholdNanos) {
+        this.target = target;
+        this.sql = sql;
+        this.thresholdNanos = thresholdNanos;
+    }
+
+    /**
+     * @return the statement, timed if the slow query log is on; otherwise the statement itself.
+     */
+    static PreparedStatement wrap(PreparedStatement pstmt, String sql) {
+        if (DatabaseSettings.slowQueryMillis <= 0) return pstmt;
+        SlowQueryLog handler = new SlowQueryLog(pstmt, sql, TimeUnit.MILLISECONDS.toNanos(DatabaseSettings.slowQueryMillis));
+        return (PreparedStatement) Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(),
+                new Class<?>[] {PreparedStatement.class}, handler);
+    }
+
+    /**
+     * @return statements logged as slow since startup.
+     */
+    static long getSlowQueries() {
+        return slowQueries.get();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+            setParameter((Integer) args[0], name.equals("setNull") ? null : args[1]);
+        } else if (name.equals("clearParameters")) {
+            parameters.clear();
+        } else if (name.equals("addBatch") && args == null) {
+            batched++;
+        } else if (name.equals("clearBatch")) {
+            batched = 0;
+        }
+
+        if (!name.startsWith("execute")) return call(method, args);
+
+        long start = System.nanoTime();
+        try {
+            return call(method, args);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            if (elapsed >= thresholdNanos) {
+                slowQueries.incrementAndGet();
+                log.warn(String.format("Slow query (%.1f ms): %s %s%s", elapsed / 1_000_000.0, sql, parameters,
+                        batched > 0 ? " in a batch of " + batched : ""));
+            }
+            if (name.equals("executeBatch")) batched = 0;
+        }
+    }
+
+    private void setParameter(int index, Object value) {
+        if (index < 1) return;
+        while (parameters.size() < index) {
+            parameters.add(null);
+        }
+        parameters.set(index - 1, value);
+    }
+
+    private Object call(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,1485 @@
+package data;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import dataObjects.Envelope;
+import dataObjects.EnvelopeField;
+import dataObjects.LedgerEntry;
+import settings.DatabaseSettings;
+
+/**
+ * {@link EnvelopeStore} that keeps envelopes in a SQLite database file.
+ */
+public class SqliteEnvelopeStore implements EnvelopeStore {
+
+    private static final DatabaseLog log = DatabaseLog.forClass(SqliteEnvelopeStore.class);
+
+    /*
+     * Statements are prepared through PooledConnection.prepare(sql), which
+     * returns a statement cached on that connection. Cached statements must
+     * not be closed by callers, but their result sets must be.
+     *
+     * Envelope reads are answered from the EnvelopeCache once it is loaded. Every
+     * successful envelope write is passed on to it through cacheWrite(); inside a
+     * unit of work the write goes to the unit's EnvelopeOverlay over the cache
+     * instead, so the unit reads its own uncommitted writes from memory, and the
+     * cache takes the overlay's changes when the unit commits.
+     *
+     * Writes that change an amount add their 'transactions' ledger rows through a
+     * LedgerBatch before the envelope row changes, in the same transaction. Once
+     * enough rows have been committed a LedgerSnapshots snapshot is taken in the
+     * background, so startup only has to replay the rows after it.
+     */
+
+    /**
+     * Appends one ledger row worked out from the stored amount of an envelope:
+     * {@code factor * amount_cents + constant}. Nothing is written if the row is missing
+     * or the change is zero. Using the stored amount keeps the ledger right even when
+     * the caller's Envelope object was out of date.
+     */
+    private static final String LEDGER_SQL = "INSERT INTO transactions(created_at, envelope, amount_cents, operation_id, operation) "
+            + "SELECT ?, ?, ? * amount_cents + ?, ?, ? FROM envelopes WHERE name = ? AND ? * amount_cents + ? <> 0";
+
+    /**
+     * Flag to indicate if the program is running from an IDE.
+     * Set to false when making the program into an application.
+     */
+    private static final boolean IDE = true;
+
+    /**
+     * Checks if the program is running from an IDE.
+     *
+     * @return true if running from an IDE; false otherwise.
+     */
+    private static boolean isRunningFromIDE() {
+        return IDE;
+    }
+
+    /**
+     * Gets the database path based on the execution environment.
+     *
+     * @return the database path as a string.
+     */
+    public static String getDefaultDatabasePath() {
+        if (isRunningFromIDE()) {
+            log.debug("Running from IDE");
+            String appDir = System.getProperty("user.dir");
+            // Adjust the database path for IDE environment
+            return "jdbc:sqlite:" + appDir + "/src/data/database.db";
+        } else {
+            log.debug("Running from Application");
+            // Adjust the database path for executable environment (JAR)
+            String appDir = "/Applications/Envelope Budgeting Application.app";
+            return "jdbc:sqlite:" + appDir + "/Contents/app/src/data/envelopes.db";
+        }
+    }
+
+    /**
+     * JDBC url of the database file.
+     */
+    private final String url;
+
+    /**
+     * Pool of long-lived connections shared by every method in this class.
+     */
+    private ConnectionPool pool;
+
+    /**
+     * In-memory copy of the 'envelopes' table, see {@link EnvelopeCache}.
+     */
+    private final EnvelopeCache cache = new EnvelopeCache();
+
+    /**
+     * Reads only use the cache while this is true, see {@link #setCacheEnabled(boolean)}.
+     */
+    private volatile boolean cacheEnabled = DatabaseSettings.envelopeCache;
+
+    /**
+     * Highest ledger operation id given out, -1 until read from the database.
+     */
+    private final AtomicLong lastOperationId = new AtomicLong(-1);
+
+    /**
+     * Ledger rows committed since the last snapshot.
+     */
+    private final AtomicLong rowsSinceSnapshot = new AtomicLong();
+
+    /**
+     * Takes ledger snapshots and reconciles the balance off the calling thread, created on first use.
+     */
+    private ScheduledExecutorService maintenanceExecutor;
+
+    /**
+     * True once balance reconciliation is scheduled on the maintenance executor.
+     */
+    private boolean reconcileScheduled = false;
+
+    /**
+     * What ledger recovery did the last time {@link #initialize()} ran, null before that.
+     */
+    private volatile LedgerSnapshots.Recovery lastRecovery;
+
+    /**
+     * Online backups of the database file, created on first use.
+     */
+    private DatabaseBackup backups;
+
+    /**
+     * Pragmas set on every connection the pool opens, see {@link #setDurabilityProfile(DurabilityProfile)}.
+     */
+    private volatile DurabilityProfile durability = DurabilityProfile.named(DatabaseSettings.durabilityProfile);
+
+    /**
+     * @param url JDBC url of the database, see {@link #getDefaultDatabasePath()}.
+     */
+    public SqliteEnvelopeStore(String url) {
+        this.url = url;
+    }
+
+    /**
+     * @return the JDBC url of the database.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the online backups of this database, kept next to the database file.
+     */
+    public synchronized DatabaseBackup getBackups() {
+        if (backups == null) {
+            backups = DatabaseBackup.nextToDatabase(this);
+        }
+        return backups;
+    }
+
+    /**
+     * Returns the connection pool, opening it on first use.
+     *
+     * @return the connection pool.
+     * @throws SQLException if the pool could not open its connections.
+     */
+    private synchronized ConnectionPool pool() throws SQLException {
+        if (pool == null || pool.isShutdown()) {
+            pool = new ConnectionPool(url, DatabaseSettings.readerConnections,
+                    DatabaseSettings.checkoutTimeoutMillis, DatabaseSettings.validationTimeoutSeconds,
+                    DatabaseSettings.statementCacheSize, durability);
+        }
+        return pool;
+    }
+
+    public DurabilityProfile getDurabilityProfile() {
+        return durability;
+    }
+
+    /**
+     * Switches to another durability profile. The pooled connections are closed, so the
+     * next call opens new ones with the profile's pragmas; connections still checked out
+     * keep the old settings until they are returned.
+     *
+     * @param profile the profile to use from now on, or null for SQLite's defaults (a rollback journal synced on every commit).
+     *                The journal mode is saved in the database file, so null also switches the file back out of write-ahead
+     *                logging; that needs every other connection to it closed, otherwise it stays in its mode.
+     */
+    public synchronized void setDurabilityProfile(DurabilityProfile profile) {
+        if (profile == durability) return;
+        durability = profile;
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        if (profile == null) resetJournalMode();
+    }
+
+    /**
+     * Switches the database file back to SQLite's default rollback journal.
+     */
+    private void resetJournalMode() {
+        try (Connection conn = DriverManager.getConnection(url);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA journal_mode = DELETE")) {
+            // answers with the mode it ended up in, like DurabilityProfile.apply()
+            String mode = rs.next() ? rs.getString(1) : null;
+            if (!"delete".equalsIgnoreCase(mode) && !"memory".equalsIgnoreCase(mode)) {
+                log.warn("Could not switch the database back to a rollback journal, it is in " + mode + " mode");
+            }
+        } catch (SQLException e) {
+            log.warn("Could not switch the database back to a rollback journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copies the write-ahead log back into the database file and empties it. Waits for the
+     * writer connection, and for readers still using old pages of the log.
+     *
+     * @return true if the whole log was copied; false if readers kept part of it in use, or on error.
+     */
+    public boolean checkpoint() {
+        try (PooledConnection pc = pool().writer();
+             Statement stmt = pc.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA wal_checkpoint(TRUNCATE)")) {
+            // busy flag, pages in the log, pages copied
+            return rs.next() && rs.getInt(1) == 0;
+        } catch (SQLException e) {
+            log.error("Failed to checkpoint the database: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Checks out a reader connection from the pool. Inside a unit of work the
+     * unit's connection is used instead, so reads see its uncommitted writes.
+     */
+    private PooledConnection reader() throws SQLException {
+        SqliteTransaction tx = (SqliteTransaction) UnitOfWork.transaction(this);
+        if (tx != null) return tx.conn.share();
+        return pool().reader();
+    }
+
+    /**
+     * Checks out the single writer connection from the pool. Inside a unit of
+     * work the unit's connection is used instead, so the write joins its transaction.
+     */
+    private PooledConnection writer() throws SQLException {
+        SqliteTransaction tx = (SqliteTransaction) UnitOfWork.transaction(this);
+        if (tx != null) return tx.conn.share();
+        return pool().writer();
+    }
+
+    /**
+     * Checks out the writer connection from the pool, ignoring any unit of work. Used to
+     * restore a backup while nothing else can write.
+     */
+    PooledConnection checkoutWriter() throws SQLException {
+        return pool().writer();
+    }
+
+    /**
+     * Forgets everything read from the database and initializes it again, after the
+     * database file was replaced underneath the store.
+     */
+    void reopen() {
+        lastOperationId.set(-1);
+        initialize();
+    }
+
+    /**
+     * Starts a transaction on the connection unless one is already open (inside a unit of work).
+     *
+     * @return true if the caller started the transaction and must commit it.
+     */
+    private static boolean beginTransaction(Connection conn) throws SQLException {
+        if (!conn.getAutoCommit()) return false;
+        conn.setAutoCommit(false);
+        return true;
+    }
+
+    /**
+     * Checks out the writer connection and opens a transaction on it for a unit of work.
+     */
+    @Override
+    public Transaction begin() throws SQLException {
+        PooledConnection pc = pool().writer();
+        try {
+            pc.getConnection().setAutoCommit(false);
+        } catch (SQLException e) {
+            pc.close();
+            throw e;
+        }
+        return new SqliteTransaction(pc);
+    }
+
+    /**
+     * Closes every pooled connection. The pool is reopened if the store is used again.
+     */
+    @Override
+    public synchronized void close() {
+        if (pool != null) {
+            // leave the database file complete, with an empty log next to it
+            if (!pool.isShutdown()) checkpoint();
+            pool.shutdown();
+            pool = null;
+        }
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+            maintenanceExecutor = null;
+            reconcileScheduled = false;
+        }
+        if (backups != null) {
+            backups.shutdown();
+        }
+        cache.invalidate();
+        lastOperationId.set(-1);
+    }
+
+    /**
+     * Returns the connection pool metrics (checkout wait time and saturation).
+     *
+     * @return a snapshot of the pool metrics, or null if the pool has not been opened.
+     */
+    public synchronized ConnectionPool.Metrics getPoolMetrics() {
+        return pool == null ? null : pool.getMetrics();
+    }
+
+    /**
+     * Returns the prepared-statement cache hit/miss counters, summed over every pooled connection.
+     *
+     * @return the statement cache counters, or null if the pool has not been opened.
+     */
+    public synchronized StatementCache.Stats getStatementCacheStats() {
+        return pool == null ? null : pool.getStatementCacheStats();
+    }
+
+    /**
+     * Picks the table an envelope read is answered from: the cache, or inside a unit of work
+     * the unit's overlay on the cache, which holds the unit's uncommitted writes. The overlay
+     * is started on the unit's first read, loading the cache if needed, as long as the unit
+     * has not written yet; otherwise its reads go to the database.
+     *
+     * @return the table to read, or null to query the database.
+     */
+    private EnvelopeTable cachedTable() {
+        if (!cacheEnabled) return null;
+        SqliteTransaction tx;
+        try {
+            tx = (SqliteTransaction) UnitOfWork.transaction(this);
+        } catch (SQLException e) {
+            log.error("Failed to start a transaction: " + e.getMessage());
+            return null;
+        }
+        if (tx == null) return cacheReady() ? cache : null;
+
+        EnvelopeOverlay table = tx.table();
+        // nothing written yet, so the unit's connection still reads what is committed
+        if (table == null && !tx.written && cacheReady()) table = tx.startTable();
+        if (table == null) cache.recordBypass();
+        return table;
+    }
+
+    /**
+     * Makes sure the cache is loaded: loads it on first use.
+     *
+     * @return true if the cache is loaded; false to query the database.
+     */
+    private boolean cacheReady() {
+        if (!cacheEnabled) return false;
+        if (cache.isLoaded()) return true;
+
+        cache.recordMiss();
+        long version = cache.getVersion();
+        List<Envelope> envelopes = new ArrayList<>();
+        try (PooledConnection pc = reader();
+             ResultSet rs = pc.prepare("SELECT * FROM envelopes").executeQuery()) {
+
+            while (rs.next()) {
+                envelopes.add(toEnvelope(rs));
+            }
+        } catch (SQLException e) {
+            log.error("Failed to load envelope cache: " + e.getMessage());
+            return false;
+        }
+        // a write that landed while the table was being read makes the load stale, so query instead
+        return cache.load(envelopes, version);
+    }
+
+    /**
+     * Passes a successful envelope write on to the cache: inside a unit of work to the unit's
+     * overlay, which the cache takes when the unit commits, otherwise to the cache right away.
+     */
+    private void cacheWrite(Consumer<EnvelopeOverlay> write) throws SQLException {
+        SqliteTransaction tx = (SqliteTransaction) UnitOfWork.transaction(this);
+        if (tx != null) {
+            tx.written(write);
+            return;
+        }
+        synchronized (cache) {
+            EnvelopeOverlay changes = new EnvelopeOverlay(cache);
+            write.accept(changes);
+            cache.applied(changes.getChanges());
+        }
+    }
+
+    /**
+     * Runs an action after a successful write, right away or, inside a unit of work, once it commits.
+     */
+    private static void writeThrough(Runnable update) {
+        if (UnitOfWork.isActive()) {
+            UnitOfWork.afterCommit(update);
+        } else {
+            update.run();
+        }
+    }
+
+    /**
+     * Drops the envelope cache; it is loaded again by the next read.
+     */
+    public void invalidateCache() {
+        cache.invalidate();
+    }
+
+    /**
+     * Loads the envelope cache again from the database.
+     * Use this if the database file was changed by something other than this class.
+     *
+     * @return true if the cache was loaded.
+     */
+    public boolean reloadCache() {
+        cache.invalidate();
+        return cacheReady();
+    }
+
+    /**
+     * Turns the envelope cache on or off, for example to measure queries in a benchmark.
+     * Turning it off drops its contents.
+     *
+     * @param enabled true to answer reads from the cache.
+     */
+    public void setCacheEnabled(boolean enabled) {
+        cacheEnabled = enabled;
+        if (!enabled) cache.invalidate();
+    }
+
+    /**
+     * @return the envelope cache, for its hit/miss metrics.
+     */
+    public EnvelopeCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Creates the database file if it doesn't exist and initializes necessary tables,
+     * then rebuilds envelope amounts from the latest ledger snapshot and the rows after it.
+     */
+    @Override
+    public void initialize() {
+        try (PooledConnection pc = writer()) {
+            log.info("A new database has been created.");
+            createTables(pc.getConnection()); // Ensure tables are created after database creation
+
+            LedgerSnapshots.Recovery recovery = LedgerSnapshots.recover(pc.getConnection(),
+                    DatabaseSettings.ledgerSnapshotInterval, DatabaseSettings.ledgerSnapshotsKept);
+            rowsSinceSnapshot.set(recovery.isSnapshotTaken() ? 0 : recovery.getTailRows());
+            lastRecovery = recovery;
+            log.info(recovery.toString());
+        } catch (SQLException e) {
+            log.error("Failed to create database: " + e.getMessage());
+        }
+        // migrations and recovery may have rewritten the table
+        cache.invalidate();
+        scheduleReconcile();
+    }
+
+    /**
+     * @return what ledger recovery did the last time the store was initialized, or null if it has not run.
+     */
+    public LedgerSnapshots.Recovery getLastRecovery() {
+        return lastRecovery;
+    }
+
+    /**
+     * Counts committed ledger rows and starts a snapshot in the background once there are enough.
+     */
+    private void ledgerRowsCommitted(long rows) {
+        if (rows <= 0) return;
+        if (rowsSinceSnapshot.addAndGet(rows) < DatabaseSettings.ledgerSnapshotInterval) return;
+        rowsSinceSnapshot.set(0);
+        maintenanceExecutor().execute(this::takeSnapshot);
+    }
+
+    private synchronized ScheduledExecutorService maintenanceExecutor() {
+        if (maintenanceExecutor == null) {
+            maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "database-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return maintenanceExecutor;
+    }
+
+    /**
+     * Starts checking the materialized balance every {@link DatabaseSettings#balanceReconcileMinutes}.
+     */
+    private synchronized void scheduleReconcile() {
+        long minutes = DatabaseSettings.balanceReconcileMinutes;
+        if (reconcileScheduled || minutes <= 0) return;
+        maintenanceExecutor().scheduleWithFixedDelay(this::reconcileBalance, minutes, minutes, TimeUnit.MINUTES);
+        reconcileScheduled = true;
+    }
+
+    /**
+     * Checks the materialized balance against the sum of every envelope amount and
+     * corrects it if they differ. Also drops the envelope cache if its total disagrees.
+     * Waits for the writer connection, so it must not be called while this thread holds it.
+     *
+     * @return how many cents the materialized balance was off by, 0 if it was right.
+     */
+    public long reconcileBalance() {
+        long difference = 0;
+        try (PooledConnection pc = pool().writer()) {
+            Connection conn = pc.getConnection();
+            conn.setAutoCommit(false);
+            try {
+                long stored;
+                long actual;
+                try (ResultSet rs = pc.prepare("SELECT total_cents FROM balance WHERE id = 1").executeQuery()) {
+                    stored = rs.next() ? rs.getLong(1) : 0;
+                }
+                try (ResultSet rs = pc.prepare("SELECT COALESCE(SUM(amount_cents), 0) FROM envelopes").executeQuery()) {
+                    actual = rs.next() ? rs.getLong(1) : 0;
+                }
+
+                difference = stored - actual;
+                if (difference != 0) {
+                    log.warn("Materialized balance was " + Cents.fromCents(stored) + " but the envelopes hold "
+                            + Cents.fromCents(actual) + ", correcting it");
+                    PreparedStatement fix = pc.prepare("INSERT OR REPLACE INTO balance(id, total_cents) VALUES(1, ?)");
+                    fix.setLong(1, actual);
+                    fix.executeUpdate();
+                }
+                conn.commit();
+
+                if (cache.isLoaded() && Cents.toCents(cache.getBalance()) != actual) {
+                    log.warn("Envelope cache balance disagrees with the database, reloading it");
+                    cache.invalidate();
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            log.error("Failed to reconcile balance: " + e.getMessage());
+        }
+        return difference;
+    }
+
+    /**
+     * Takes a ledger snapshot now. Waits for the writer connection, so it must not be
+     * called while this thread holds it.
+     *
+     * @return the ledger sequence number the snapshot includes, or 0 if it was not taken.
+     */
+    public long takeSnapshot() {
+        try (PooledConnection pc = pool().writer()) {
+            return LedgerSnapshots.take(pc.getConnection(), DatabaseSettings.ledgerSnapshotsKept);
+        } catch (SQLException e) {
+            log.error("Failed to take ledger snapshot: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Creates or upgrades the database tables by applying any schema migrations
+     * the database has not had yet.
+     *
+     * @param conn Connection to the SQLite database
+     */
+    public static void createTables(Connection conn) {
+        try {
+            int version = SchemaMigrator.migrate(conn);
+            log.debug("Tables are at schema version " + version + ".");
+        } catch (SQLException e) {
+            log.error("Failed to create tables: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Checks if a table with the given name exists in the database.
+     *
+     * @param tableName Name of the table to check
+     * @return true if the table exists; false otherwise
+     */
+    public boolean tableExists(String tableName) {
+        try (PooledConnection pc = reader()) {
+            DatabaseMetaData meta = pc.getConnection().getMetaData();
+            try (ResultSet rs = meta.getTables(null, null, tableName, new String[]{"TABLE"})) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            log.error("Failed to check table existence: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Adds a new envelope entry to the 'envelopes' table.
+     *
+     * @param e The Envelope object to add.
+     */
+    @Override
+    public void addEnvelope(Envelope e) {
+        String sql = "INSERT INTO envelopes(name, priority, amount_cents, fill_setting, fill_amount, cap, cap_amount, extra, default_env) VALUES(?,?,?,?,?,?,?,?,?)";
+
+        try (PooledConnection pc = writer()) {
+            Connection conn = pc.getConnection();
+            boolean ownTransaction = beginTransaction(conn);
+
+            PreparedStatement pstmt = pc.prepare(sql);
+            pstmt.setString(1, e.getName());
+            pstmt.setInt(2, e.getPriority());
+            pstmt.setLong(3, Cents.toCents(e.getAmount()));
+            pstmt.setInt(4, e.getFillSetting());
+            pstmt.setInt(5, e.getFillAmount());
+            pstmt.setBoolean(6, e.hasCap());
+            pstmt.setInt(7, e.getCapAmount());
+            pstmt.setBoolean(8, e.isExtra());
+            pstmt.setBoolean(9, e.isDefault());
+            pstmt.executeUpdate();
+
+            LedgerBatch ledger = new LedgerBatch(pc);
+            ledger.open(e.getName());
+            ledger.execute();
+
+            if (ownTransaction) conn.commit();
+            Envelope added = e.copy();
+            cacheWrite(table -> table.added(added));
+            log.debug("Envelope added successfully.");
+        } catch (SQLException f) {
+            UnitOfWork.setRollbackOnly();
+            log.error("Failed to add envelope: " + f.getMessage());
+        }
+    }
+
+    /**
+     * Adds several envelopes with one batched insert and one batch of ledger rows, in one transaction.
+     *
+     * @param envelopes the envelopes to add
+     * @return true if every envelope was added; false if none were.
+     */
+    @Override
+    public boolean addEnvelopes(List<Envelope> envelopes) {
+        if (envelopes.isEmpty()) return true;
+        String sql = "INSERT INTO envelopes(name, priority, amount_cents, fill_setting, fill_amount, cap, cap_amount, extra, default_env) VALUES(?,?,?,?,?,?,?,?,?)";
+
+        try (PooledConnection pc = writer()) {
+            Connection conn = pc.getConnection();
+            boolean ownTransaction = beginTransaction(conn);
+
+            try {
+                PreparedStatement pstmt = pc.prepare(sql);
+                // the statement is cached, drop anything a failed write left in its batch
+                pstmt.clearBatch();
+                for (Envelope e : envelopes) {
+                    pstmt.setString(1, e.getName());
+                    pstmt.setInt(2, e.getPriority());
+                    pstmt.setLong(3, Cents.toCents(e.getAmount()));
+                    pstmt.setInt(4, e.getFillSetting());
+                    pstmt.setInt(5, e.getFillAmount());
+                    pstmt.setBoolean(6, e.hasCap());
+                    pstmt.setInt(7, e.getCapAmount());
+                    pstmt.setBoolean(8, e.isExtra());
+                    pstmt.setBoolean(9, e.isDefault());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+
+                // ledger rows read the stored amounts, so they go after the inserts
+                LedgerBatch ledger = new LedgerBatch(pc);
+                for (Envelope e : envelopes) {
+                    ledger.open(e.getName());
+                }
+                ledger.execute();
+
+                if (ownTransaction) conn.commit();
+            } catch (SQLException f) {
+                if (ownTransaction) conn.rollback();
+                throw f;
+            }
+
+            List<Envelope> added = new ArrayList<>();
+            for (Envelope e : envelopes) {
+                added.add(e.copy());
+            }
+            cacheWrite(table -> added.forEach(table::added));
+            log.debug(envelopes.size() + " envelopes added successfully.");
+            return true;
+        } catch (SQLException f) {
+            UnitOfWork.setRollbackOnly();
+            log.error("Failed to add envelopes: " + f.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Updates an existing envelope in the 'envelopes' table.
+     *
+     * @param currentName The current name of the envelope to update.
+     * @param e           The new values of the envelope.
+     * @return true if the envelope was updated successfully; false otherwise.
+     */
+    @Override
+    public boolean editEnvelope(String currentName, Envelope e) {
+        String updateSQL = "UPDATE envelopes SET name = ?, priority = ?, amount_cents = ?, fill_setting = ?, fill_amount = ?, cap = ?, cap_amount = ?, extra = ?, default_env = ? WHERE name = ?";
+
+        try (PooledConnection pc = writer()) {
+            PreparedStatement updateStmt = pc.prepare(updateSQL);
+
+            Connection conn = pc.getConnection();
+            boolean ownTransaction = beginTransaction(conn);
+
+            // Check and update other envelopes if 'extra' is true
+            if (e.isExtra()) {
+                String resetExtraSQL = "UPDATE envelopes SET extra = false WHERE extra = true";
+                pc.prepare(resetExtraSQL).executeUpdate();
+            }
+
+            // Check and update other envelopes if 'default_env' is true
+            if (e.isDefault()) {
+                String resetDefaultSQL = "UPDATE envelopes SET default_env = false WHERE default_env = true";
+                pc.prepare(resetDefaultSQL).executeUpdate();
+            }
+
+            // Record the amount change, or the move to the new name, before the row changes
+            LedgerBatch ledger = new LedgerBatch(pc);
+            long cents = Cents.toCents(e.getAmount());
+            if (e.getName().equals(currentName)) {
+                ledger.change(currentName, cents);
+            } else {
+                ledger.close(currentName);
+                ledger.reopen(currentName, e.getName(), cents);
+            }
+            ledger.execute();
+
+            // Update the specified envelope
+            updateStmt.setString(1, e.getName());
+            updateStmt.setInt(2, e.getPriority());
+            updateStmt.setLong(3, Cents.toCents(e.getAmount()));
+            updateStmt.setInt(4, e.getFillSetting());
+            updateStmt.setInt(5, e.getFillAmount());
+            updateStmt.setBoolean(6, e.hasCap());
+            updateStmt.setInt(7, e.getCapAmount());
+            updateStmt.setBoolean(8, e.isExtra());
+            updateStmt.setBoolean(9, e.isDefault());
+            updateStmt.setString(10, currentName);
+
+            int affectedRows = updateStmt.executeUpdate();
+
+            if (ownTransaction) conn.commit();
+
+            if (affectedRows > 0) {
+                Envelope edited = e.copy();
+                cacheWrite(table -> {
+                    if (edited.isExtra()) table.extraCleared();
+                    if (edited.isDefault()) table.defaultCleared();
+                    table.replaced(currentName, edited);
+                });
+            }
+            return affectedRows > 0;
+        } catch (SQLException f) {
+            UnitOfWork.setRollbackOnly();
+            log.error("Failed to update envelope: " + f.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Saves the changed fields of several envelopes in one transaction. Only the
+     * columns of fields that changed are written.
+     *
+     * @param envelopes the envelopes to save.
+     * @return true if every change was saved; false if none were.
+     */
+    @Override
+    public boolean updateEnvelopes(List<Envelope> envelopes) {
+        List<Consumer<EnvelopeOverlay>> cacheUpdates = new ArrayList<>();
+        try (PooledConnection pc = writer()) {
+            Connection conn = pc.getConnection();
+            boolean ownTransaction = beginTransaction(conn);
+
+            // ledger rows read the amounts still stored, so they go in before any row changes
+            LedgerBatch ledger = new LedgerBatch(pc);
+            for (Envelope e : envelopes) {
+                recordChanges(ledger, e);
+            }
+            ledger.execute();
+
+            for (Envelope e : envelopes) {
+                writeChanges(pc, e, cacheUpdates);
+            }
+
+            if (ownTransaction) conn.commit();
+            for (Consumer<EnvelopeOverlay> update : cacheUpdates) {
+                cacheWrite(update);
+            }
+        } catch (SQLException e) {
+            UnitOfWork.setRollbackOnly();
+            log.error("Failed to save envelope changes: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the ledger rows for an envelope's unsaved amount or name change.
+     */
+    private static void recordChanges(LedgerBatch ledger, Envelope e) throws SQLException {
+        Set<EnvelopeField> fields = e.getDirtyFields();
+        boolean renamed = fields.contains(EnvelopeField.NAME) && !e.getName().equals(e.getStoredName());
+        boolean amountChanged = fields.contains(EnvelopeField.AMOUNT);
+
+        if (renamed) {
+            // the amount leaves the old name and arrives under the new one
+            ledger.close(e.getStoredName());
+            if (amountChanged) {
+                ledger.reopen(e.getStoredName(), e.getName(), Cents.toCents(e.getAmount()));
+            } else {
+                ledger.carry(e.getStoredName(), e.getName());
+            }
+        } else if (amountChanged) {
+            ledger.change(e.getStoredName(), Cents.toCents(e.getAmount()));
+        }
+    }
+
+    /**
+     * Writes an UPDATE for the changed fields of an envelope on the given connection,
+     * and adds the matching cache update to {@code cacheUpdates}.
+     */
+    private void writeChanges(PooledConnection pc, Envelope e, List<Consumer<EnvelopeOverlay>> cacheUpdates) throws SQLException {
+        Set<EnvelopeField> fields = e.getDirtyFields();
+        if (fields.isEmpty()) return;
+
+        // only one envelope can be extra or default at a time
+        if (fields.contains(EnvelopeField.EXTRA) && e.isExtra()) {
+            pc.prepare("UPDATE envelopes SET extra = false WHERE extra = true").executeUpdate();
+        }
+        if (fields.contains(EnvelopeField.DEFAULT) && e.isDefault()) {
+            pc.prepare("UPDATE envelopes SET default_env = false WHERE default_env = true").executeUpdate();
+        }
+
+        // fields are always listed in the same order, so each combination maps to one cached statement
+        StringBuilder sql = new StringBuilder("UPDATE envelopes SET ");
+        boolean first = true;
+        for (EnvelopeField field : fields) {
+            if (!first) sql.append(", ");
+            sql.append(columnName(field)).append(" = ?");
+            first = false;
+        }
+        sql.append(" WHERE name = ?");
+
+        PreparedStatement pstmt = pc.prepare(sql.toString());
+        int index = 1;
+        for (EnvelopeField field : fields) {
+            switch (field) {
+                case NAME: pstmt.setString(index, e.getName()); break;
+                case PRIORITY: pstmt.setInt(index, e.getPriority()); break;
+                case AMOUNT: pstmt.setLong(index, Cents.toCents(e.getAmount())); break;
+                case FILL_SETTING: pstmt.setInt(index, e.getFillSetting()); break;
+                case FILL_AMOUNT: pstmt.setInt(index, e.getFillAmount()); break;
+                case CAP: pstmt.setBoolean(index, e.hasCap()); break;
+                case CAP_AMOUNT: pstmt.setInt(index, e.getCapAmount()); break;
+                case EXTRA: pstmt.setBoolean(index, e.isExtra()); break;
+                case DEFAULT: pstmt.setBoolean(index, e.isDefault()); break;
+            }
+            index++;
+        }
+        pstmt.setString(index, e.getStoredName());
+        pstmt.executeUpdate();
+
+        // capture the values now, the envelope may change again before the cache update runs
+        String storedName = e.getStoredName();
+        Envelope changes = e.copy();
+        Set<EnvelopeField> changed = EnumSet.copyOf(fields);
+        cacheUpdates.add(table -> {
+            if (changed.contains(EnvelopeField.EXTRA) && changes.isExtra()) table.extraCleared();
+            if (changed.contains(EnvelopeField.DEFAULT) && changes.isDefault()) table.defaultCleared();
+            table.updated(storedName, changes, changed);
+        });
+    }
+
+    /**
+     * @return the 'envelopes' column that stores the field.
+     */
+    private static String columnName(EnvelopeField field) {
+        switch (field) {
+            case NAME: return "name";
+            case PRIORITY: return "priority";
+            case AMOUNT: return "amount_cents";
+            case FILL_SETTING: return "fill_setting";
+            case FILL_AMOUNT: return "fill_amount";
+            case CAP: return "cap";
+            case CAP_AMOUNT: return "cap_amount";
+            case EXTRA: return "extra";
+            case DEFAULT: return "default_env";
+            default: throw new IllegalArgumentException("Unknown envelope field " + field);
+        }
+    }
+
+    /**
+     * Retrieves all envelope entries from the 'envelopes' table.
+     *
+     * @return a list of Envelope objects.
+     */
+    @Override
+    public List<Envelope> getEnvelopes() {
+        EnvelopeTable table = cachedTable();
+        if (table != null) return table.getEnvelopes();
+
+        List<Envelope> envelopes = new ArrayList<>();
+        String sql = "SELECT * FROM envelopes";
+
+        try (PooledConnection pc = reader();
+             ResultSet rs = pc.prepare(sql).executeQuery()) {
+
+            while (rs.next()) {
+                envelopes.add(toEnvelope(rs));
+            }
+        } catch (SQLException e) {
+            log.error("Failed to retrieve envelopes: " + e.getMessage());
+        }
+
+        return envelopes;
+    }
+
+    /**
+     * Retrieves all envelope entries ordered by priority, lowest priority number first.
+     *
+     * @return a list of Envelope objects in priority order.
+     */
+    @Override
+    public List<Envelope> getEnvelopesByPriority() {
+        EnvelopeTable table = cachedTable();
+        if (table != null) return table.getEnvelopesByPriority();
+
+        List<Envelope> envelopes = new ArrayList<>();
+        String sql = "SELECT * FROM envelopes ORDER BY priority";
+
+        try (PooledConnection pc = reader();
+             ResultSet rs = pc.prepare(sql).executeQuery()) {
+
+            while (rs.next()) {
+                envelopes.add(toEnvelope(rs));
+            }
+        } catch (SQLException e) {
+            log.error("Failed to retrieve envelopes by priority: " + e.getMessage());
+        }
+
+        return envelopes;
+    }
+
+    /**
+     * Builds an Envelope from the current row of a result set over the 'envelopes' table.
+     *
+     * @param rs result set positioned on an envelope row.
+     * @return the Envelope for that row.
+     * @throws SQLException if a column could not be read.
+     */
+    private static Envelope toEnvelope(ResultSet rs) throws SQLException {
+        String name = rs.getString("name");
+        int priority = rs.getInt("priority");
+        BigDecimal amount = Cents.fromCents(rs.getLong("amount_cents"));
+        int fillSetting = rs.getInt("fill_setting");
+        int fillAmount = rs.getInt("fill_amount");
+        boolean cap = rs.getBoolean("cap");
+        int capAmount = rs.getInt("cap_amount");
+        boolean extra = rs.getBoolean("extra");
+        boolean defaultEnv = rs.getBoolean("default_env");
+
+        return new Envelope(priority, name, amount, fillSetting, fillAmount, cap, capAmount, extra, defaultEnv);
+    }
+
+    /**
+     * Retrieves an envelope by its name from the 'envelopes' table.
+     *
+     * @param name The name of the envelope to retrieve.
+     * @return an Envelope object if found; null otherwise.
+     */
+    @Override
+    public Envelope getEnvelope(String name) {
+        EnvelopeTable table = cachedTable();
+        if (table != null) return table.getEnvelope(name);
+
+        String sql = "SELECT * FROM envelopes WHERE name = ?";
+        Envelope envelope = null;
+
+        try (PooledConnection pc = reader()) {
+            PreparedStatement pstmt = pc.prepare(sql);
+            pstmt.setString(1, name);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    envelope = toEnvelope(rs);
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Failed to retrieve envelope: " + e.getMessage());
+        }
+
+        return envelope;
+    }
+
+
+    /**
+     * Removes an envelope from the 'envelopes' table.
+     *
+     * @param name The name of the envelope to delete.
+     * @return true if the envelope was deleted successfully; false otherwise.
+     */
+    @Override
+    public boolean removeEnvelope(String name) {
+        String sql = "DELETE FROM envelopes WHERE name = ?";
+
+        try (PooledConnection pc = writer()) {
+            Connection conn = pc.getConnection();
+            boolean ownTransaction = beginTransaction(conn);
+
+            // whatever is left in the envelope leaves the budget with it
+            LedgerBatch ledger = new LedgerBatch(pc);
+            ledger.close(name);
+            ledger.execute();
+
+            PreparedStatement pstmt = pc.prepare(sql);
+            pstmt.setString(1, name);
+
+            int affectedRows = pstmt.executeUpdate();
+            if (ownTransaction) conn.commit();
+            if (affectedRows > 0) {
+                cacheWrite(table -> table.removed(name));
+            }
+            return affectedRows > 0;
+        } catch (SQLException e) {
+            UnitOfWork.setRollbackOnly();
+            log.error("Failed to remove envelope: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the sum of the amount of all existing envelopes in the database.
+     *
+     * @return Total balance of all envelopes
+     */
+    @Override
+    public int getEnvelopeCount() {
+        EnvelopeTable table = cachedTable();
+        if (table != null) return table.getEnvelopeCount();
+
+        try (PooledConnection pc = reader();
+             ResultSet rs = pc.prepare("SELECT COUNT(*) FROM envelopes").executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            log.error("Error counting envelopes: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        EnvelopeTable table = cachedTable();
+        if (table != null) return table.getBalance();
+
+        BigDecimal balance = BigDecimal.ZERO; // Default value or initial value
+
+        // the total is kept up to date by triggers on 'envelopes', see reconcileBalance()
+        try (PooledConnection pc = reader();
+             ResultSet rs = pc.prepare("SELECT total_cents FROM balance WHERE id = 1").executeQuery()) {
+
+            if (rs.next()) {
+                balance = Cents.fromCents(rs.getLong("total_cents"));
+            } else {
+                log.warn("The balance table is empty, run reconcileBalance() to fill it.");
+            }
+
+        } catch (SQLException e) {
+            log.error("Error fetching balance: " + e.getMessage());
+        }
+
+        return balance;
+    }
+
+    @Override
+    public Envelope getEnvelopeByPriority(int priority) {
+        EnvelopeTable table = cachedTable();
+        if (table != null) return table.getEnvelopeByPriority(priority);
+
+        String sql = "SELECT * FROM envelopes WHERE priority = ?";
+
+        try (PooledConnection pc = reader()) {
+            PreparedStatement pstmt = pc.prepare(sql);
+
+            pstmt.setInt(1, priority);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return toEnvelope(rs);
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Failed to retrieve envelope by priority: " + e.getMessage());
+        }
+
+        return null; // Return null if envelope with given priority is not found
+    }
+
+    @Override
+    public Envelope getDefault() {
+        EnvelopeTable table = cachedTable();
+        if (table != null) return table.getDefault();
+
+        String sql = "SELECT * FROM envelopes WHERE default_env = 1";
+
+        try (PooledConnection pc = reader();
+             ResultSet rs = pc.prepare(sql).executeQuery()) {
+
+            if (rs.next()) {
+                return toEnvelope(rs);
+            }
+        } catch (SQLException e) {
+            log.error("Failed to retrieve default envelope: " + e.getMessage());
+        }
+
+        return null; // Return null if default envelope is not found
+    }
+
+    @Override
+    public Envelope getExtra() {
+        EnvelopeTable table = cachedTable();
+        if (table != null) return table.getExtra();
+
+        String sql = "SELECT * FROM envelopes WHERE extra = 1";
+
+        try (PooledConnection pc = reader();
+                ResultSet rs = pc.prepare(sql).executeQuery()) {
+
+               if (rs.next()) {
+                   return toEnvelope(rs);
+               }
+           } catch (SQLException e) {
+               log.error("Failed to retrieve default envelope: " + e.getMessage());
+           }
+
+           return null; // Return null if default envelope is not found
+    }
+
+    @Override
+    public boolean editAmount(String name, BigDecimal amount) {
+        String sql = "UPDATE envelopes SET amount_cents = ? WHERE name = ?";
+
+        try (PooledConnection pc = writer()) {
+            Connection conn = pc.getConnection();
+            boolean ownTransaction = beginTransaction(conn);
+
+            LedgerBatch ledger = new LedgerBatch(pc);
+            ledger.change(name, Cents.toCents(amount));
+            ledger.execute();
+
+            PreparedStatement pstmt = pc.prepare(sql);
+            pstmt.setLong(1, Cents.toCents(amount));
+            pstmt.setString(2, name);
+            pstmt.executeUpdate();
+            if (ownTransaction) conn.commit();
+            cacheWrite(table -> table.amountChanged(name, amount));
+            log.debug("Amount updated successfully for envelope: " + name);
+            return true;
+        } catch (SQLException e) {
+            UnitOfWork.setRollbackOnly();
+            log.error("Failed to update amount for envelope " + name + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+
+    @Override
+    public boolean hasEnvelope(String name) {
+        EnvelopeTable table = cachedTable();
+        if (table != null) return table.hasEnvelope(name);
+
+        String sql = "SELECT COUNT(*) FROM envelopes WHERE name = ?";
+        try (PooledConnection pc = reader()) {
+            PreparedStatement pstmt = pc.prepare(sql);
+
+            // Set the parameters
+            pstmt.setString(1, name);
+
+            // Execute the query
+            try (ResultSet rs = pstmt.executeQuery()) {
+                // Check if there is at least one result
+                if (rs.next()) {
+                    int count = rs.getInt(1);
+                    return count > 0; // Returns true if envelope with name exists, false otherwise
+                }
+            }
+        } catch (SQLException e) {
+            log.error(e.getMessage());
+        }
+        return false; // Default to false in case of errors or no results
+    }
+
+    @Override
+    public List<LedgerEntry> getHistory(String name) {
+        List<LedgerEntry> entries = new ArrayList<>();
+
+        try (PooledConnection pc = reader()) {
+            PreparedStatement pstmt = pc.prepare("SELECT * FROM transactions WHERE envelope = ? ORDER BY seq");
+            pstmt.setString(1, name);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    entries.add(toLedgerEntry(rs));
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Failed to retrieve history of envelope " + name + ": " + e.getMessage());
+        }
+
+        return entries;
+    }
+
+    @Override
+    public List<LedgerEntry> getLedger(long afterSequence, int limit) {
+        List<LedgerEntry> entries = new ArrayList<>();
+
+        try (PooledConnection pc = reader()) {
+            PreparedStatement pstmt = pc.prepare("SELECT * FROM transactions WHERE seq > ? ORDER BY seq LIMIT ?");
+            pstmt.setLong(1, afterSequence);
+            pstmt.setInt(2, limit);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    entries.add(toLedgerEntry(rs));
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Failed to retrieve ledger: " + e.getMessage());
+        }
+
+        return entries;
+    }
+
+    private static LedgerEntry toLedgerEntry(ResultSet rs) throws SQLException {
+        return new LedgerEntry(rs.getLong("seq"), rs.getLong("created_at"), rs.getString("envelope"),
+                rs.getLong("amount_cents"), rs.getLong("operation_id"), rs.getString("operation"));
+    }
+
+    /**
+     * Reads the highest ledger operation id used so far, once, so new ids carry on from it.
+     */
+    private void loadOperationIds(PooledConnection pc) throws SQLException {
+        synchronized (lastOperationId) {
+            if (lastOperationId.get() >= 0) return;
+            try (ResultSet rs = pc.prepare("SELECT COALESCE(MAX(operation_id), 0) FROM transactions").executeQuery()) {
+                lastOperationId.set(rs.next() ? rs.getLong(1) : 0);
+            }
+        }
+    }
+
+    /**
+     * The ledger rows of one write, sent to the database as a single batch of {@link #LEDGER_SQL}.
+     * Every row is worked out from an envelope's stored amount, so the batch must run before
+     * the envelope rows it describes change.
+     */
+    private class LedgerBatch {
+
+        private final PooledConnection pc;
+        private final long timestamp = System.currentTimeMillis();
+        private final String operation = UnitOfWork.operationName();
+        private long operationId = 0;
+        private PreparedStatement insert;
+        private int rows = 0;
+
+        LedgerBatch(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        /**
+         * The envelope stored under {@code name} now holds {@code newCents}.
+         */
+        void change(String name, long newCents) throws SQLException {
+            add(name, name, -1, newCents);
+        }
+
+        /**
+         * Everything stored under {@code name} leaves it (removed, or renamed away).
+         */
+        void close(String name) throws SQLException {
+            add(name, name, -1, 0);
+        }
+
+        /**
+         * The stored amount of {@code storedName} arrives under {@code newName}.
+         */
+        void carry(String storedName, String newName) throws SQLException {
+            add(storedName, newName, 1, 0);
+        }
+
+        /**
+         * {@code newName} starts with {@code cents}; {@code storedName} must still exist when the batch runs.
+         */
+        void reopen(String storedName, String newName, long cents) throws SQLException {
+            add(storedName, newName, 0, cents);
+        }
+
+        /**
+         * A newly added envelope starts with the amount it was stored with.
+         */
+        void open(String name) throws SQLException {
+            add(name, name, 1, 0);
+        }
+
+        private void add(String source, String envelope, long factor, long constant) throws SQLException {
+            if (insert == null) {
+                insert = pc.prepare(LEDGER_SQL);
+                // the statement is cached, drop anything a failed write left in its batch
+                insert.clearBatch();
+                loadOperationIds(pc);
+                operationId = UnitOfWork.operationId(lastOperationId::incrementAndGet);
+            }
+            insert.setLong(1, timestamp);
+            insert.setString(2, envelope);
+            insert.setLong(3, factor);
+            insert.setLong(4, constant);
+            insert.setLong(5, operationId);
+            insert.setString(6, operation);
+            insert.setString(7, source);
+            insert.setLong(8, factor);
+            insert.setLong(9, constant);
+            insert.addBatch();
+            rows++;
+        }
+
+        void execute() throws SQLException {
+            if (rows == 0) return;
+            long inserted = 0;
+            for (int count : insert.executeBatch()) {
+                // SUCCESS_NO_INFO is negative; count the row as written
+                inserted += count < 0 ? 1 : count;
+            }
+            rows = 0;
+
+            long committed = inserted;
+            writeThrough(() -> ledgerRowsCommitted(committed));
+        }
+    }
+
+    /**
+     * A unit of work's transaction, held open on the writer connection, and the envelopes
+     * it has changed in an {@link EnvelopeOverlay} over the cache.
+     */
+    private class SqliteTransaction implements Transaction {
+
+        private final PooledConnection conn;
+        //null while the unit's reads go to the database
+        private EnvelopeOverlay table;
+        //the cache version the overlay was started on, an overlay over a cache that changed since is dropped
+        private long cacheVersion;
+        //an envelope write went into the transaction
+        private boolean written = false;
+        private final Map<String, EnvelopeOverlay> savepoints = new HashMap<>();
+
+        SqliteTransaction(PooledConnection conn) {
+            this.conn = conn;
+            if (cacheEnabled && cache.isLoaded()) startTable();
+        }
+
+        /**
+         * @return the unit's overlay on the cache, or null if its reads must go to the database.
+         */
+        EnvelopeOverlay table() {
+            if (table != null && cache.getVersion() != cacheVersion) {
+                // dropped or reloaded under the unit, for example by reconcileBalance()
+                table = null;
+            }
+            return table;
+        }
+
+        /**
+         * Starts the overlay on the cache as it is now. Only right while the unit has not written.
+         */
+        EnvelopeOverlay startTable() {
+            synchronized (cache) {
+                cacheVersion = cache.getVersion();
+                table = new EnvelopeOverlay(cache);
+            }
+            return table;
+        }
+
+        /**
+         * Applies an envelope write to the overlay, if the unit has one.
+         */
+        void written(Consumer<EnvelopeOverlay> write) {
+            written = true;
+            EnvelopeOverlay table = table();
+            if (table != null) write.accept(table);
+        }
+
+        @Override
+        public void savepoint(String name) throws SQLException {
+            try (Statement stmt = conn.getConnection().createStatement()) {
+                stmt.execute("SAVEPOINT " + name);
+            }
+            EnvelopeOverlay table = table();
+            savepoints.put(name, table == null ? null : table.copy());
+        }
+
+        @Override
+        public void rollbackTo(String name) throws SQLException {
+            try (Statement stmt = conn.getConnection().createStatement()) {
+                // ROLLBACK TO keeps the savepoint open, RELEASE drops it
+                stmt.execute("ROLLBACK TO " + name);
+                stmt.execute("RELEASE " + name);
+            }
+            table = savepoints.remove(name);
+        }
+
+        @Override
+        public void release(String name) throws SQLException {
+            try (Statement stmt = conn.getConnection().createStatement()) {
+                stmt.execute("RELEASE " + name);
+            }
+            savepoints.remove(name);
+        }
+
+        @Override
+        public void commit() throws SQLException {
+            try {
+                conn.getConnection().commit();
+            } catch (SQLException e) {
+                // not sure what reached the database, so the cache can't be trusted
+                cache.invalidate();
+                throw e;
+            }
+            if (!written) return;
+
+            synchronized (cache) {
+                EnvelopeOverlay table = table();
+                if (table == null) {
+                    // writes the cache could not follow
+                    cache.invalidate();
+                } else if (!table.getChanges().isEmpty()) {
+                    cache.applied(table.getChanges());
+                }
+            }
+        }
+
+        @Override
+        public void rollback() throws SQLException {
+            conn.getConnection().rollback();
+            // the overlay is dropped on close
+        }
+
+        @Override
+        public void close() {
+            // returning the connection rolls back anything left uncommitted
+            conn.close();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prepared statements for a single connection, keyed by their SQL text.
+ * <p>
+ * Statements are kept open and reused so SQLite only parses and plans each
+ * query once per connection. When the cache is full the least recently used
+ * statement is closed and dropped. A cache is only ever used by the caller
+ * that has its connection checked out, so it is not thread safe. Statements
+ * are timed by the {@link SlowQueryLog} when it is turned on.
+ */
+public class StatementCache {
+
+    private static final DatabaseLog log = DatabaseLog.forClass(StatementCache.class);
+
+    private final Connection conn;
+    private final Stats stats;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    /**
+     * @param conn     connection the statements are prepared on
+     * @param capacity maximum number of statements kept open
+     * @param stats    counters shared by every cache in the pool
+     */
+    public StatementCache(Connection conn, int capacity, Stats stats) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        this.conn = conn;
+        this.stats = stats;
+        // access order, so the eldest entry is the least recently used one
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= capacity) return false;
+                stats.evictions.incrementAndGet();
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached statement for the SQL, preparing it on a miss.
+     * The returned statement must not be closed by the caller.
+     *
+     * @param sql the SQL text
+     * @return a prepared statement for the SQL
+     * @throws SQLException if the statement could not be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement pstmt = statements.get(sql);
+        if (pstmt != null && !pstmt.isClosed()) {
+            stats.hits.incrementAndGet();
+            pstmt.clearParameters();
+            return pstmt;
+        }
+
+        stats.misses.incrementAndGet();
+        pstmt = SlowQueryLog.wrap(conn.prepareStatement(sql), sql);
+        statements.put(sql, pstmt);
+        return pstmt;
+    }
+
+    /**
+     * @return number of statements currently cached.
+     */
+    public int size() {
+        return statements.size();
+    }
+
+    /**
+     * Closes every cached statement.
+     */
+    public void close() {
+        for (PreparedStatement pstmt : statements.values()) {
+            closeQuietly(pstmt);
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement pstmt) {
+        try {
+            pstmt.close();
+        } catch (SQLException e) {
+            log.error("Failed to close statement: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hit, miss and eviction counters.
+     */
+    public static class Stats {
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        public long getEvictions() {
+            return evictions.get();
+        }
+
+        public double getHitRate() {
+            long hits = getHits();
+            long total = hits + getMisses();
+            if (total == 0) return 0;
+            return (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "hits: " + getHits() +
+                    "\nmisses: " + getMisses() +
+                    "\nevictions: " + getEvictions() +
+                    "\nhit rate: " + String.format("%.2f", getHitRate() * 100) + "%";
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package data;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import dataObjects.Envelope;
+
+/**
+ * Runs one piece of work as a single database transaction.
+ * <p>
+ * While a unit of work is active on the current thread, {@link Envelope} setters
+ * only record which fields changed, and every {@link Database} call runs inside
+ * one open transaction of the {@link EnvelopeStore}. Before a query or a direct
+ * write, pending envelope changes are flushed into the transaction so the query
+ * sees them. When the outermost unit finishes, the remaining changes are flushed
+ * and the transaction is committed once. If the work throws, or a write inside
+ * the unit fails, the whole transaction is rolled back and nothing it did is kept.
+ * <p>
+ * Rolling back does not undo changes to Envelope objects in memory, so envelopes
+ * should be read again after a failed unit. Work registered with {@link #afterCommit(Runnable)},
+ * such as envelope cache updates, only runs once the transaction has committed.
+ * <p>
+ * Every unit is one operation in the transactions ledger: the ledger rows it writes
+ * share an operation id and carry the operation name given to {@link #execute(String, Supplier)}.
+ * <p>
+ * A group unit ({@link #executeGroup(Runnable)}) commits several operations in one
+ * transaction. Each runs as a member behind its own savepoint, keeps its own operation
+ * name and id, and is rolled back on its own if it fails; see {@link GroupCommit}.
+ */
+public class UnitOfWork {
+
+    private static final DatabaseLog log = DatabaseLog.forClass(UnitOfWork.class);
+
+    /**
+     * Ledger operation name for writes made outside a named unit of work.
+     */
+    public static final String DEFAULT_OPERATION = "update";
+
+    /**
+     * Operation name of a group unit; its members record their own names.
+     */
+    static final String GROUP_OPERATION = "group";
+
+    private static final ThreadLocal<UnitOfWork> current = new ThreadLocal<>();
+
+    //ledger operation this unit records, its id is given out by the store on the first ledger write
+    private final String operation;
+    private long operationId = 0;
+
+    //envelopes with unsaved changes, in the order they were first changed
+    private final LinkedHashSet<Envelope> pending = new LinkedHashSet<>();
+    //run in order once the transaction commits, dropped on rollback
+    private final List<Runnable> afterCommit = new ArrayList<>();
+    //transaction opened the first time the unit touches the store, and the store it belongs to
+    private EnvelopeStore.Transaction tx;
+    private EnvelopeStore txStore;
+    private boolean rollbackOnly = false;
+    //the group a member unit belongs to, null for any other unit
+    private UnitOfWork group;
+    //members started in a group unit, used to name their savepoints
+    private int members = 0;
+
+    private UnitOfWork(String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Runs the work inside a unit of work, see {@link #execute(String, Supplier)}.
+     *
+     * @param work the work to run
+     * @return the value returned by the work
+     */
+    public static <T> T execute(Supplier<T> work) {
+        return execute(DEFAULT_OPERATION, work);
+    }
+
+    /**
+     * Runs the work inside a unit of work and commits its transaction once it returns.
+     * If a unit is already active on this thread the work joins it, and its changes are
+     * committed when the outer unit finishes under the outer unit's operation.
+     *
+     * @param operation name recorded with the unit's ledger rows, for example "deposit"
+     * @param work      the work to run
+     * @return the value returned by the work
+     * @throws RolledBackException if the transaction rolled back or failed to commit, so nothing the work wrote was kept.
+     */
+    public static <T> T execute(String operation, Supplier<T> work) {
+        if (current.get() != null) {
+            return work.get();
+        }
+
+        UnitOfWork unit = new UnitOfWork(operation);
+        current.set(unit);
+        try {
+            T result = work.get();
+            if (!unit.complete()) throw new RolledBackException(operation);
+            return result;
+        } catch (RuntimeException | Error e) {
+            unit.finish(false);
+            throw e;
+        } finally {
+            unit.pending.clear();
+            unit.afterCommit.clear();
+            current.remove();
+        }
+    }
+
+    /**
+     * Runs the work as a group unit: every {@link #executeMember(EnvelopeStore, String, Runnable)}
+     * call inside it shares one transaction, committed once when the work returns.
+     *
+     * @param work runs the members
+     * @return true if the transaction committed.
+     */
+    static boolean executeGroup(Runnable work) {
+        if (current.get() != null) {
+            throw new IllegalStateException("A group commit cannot run inside another unit of work");
+        }
+
+        UnitOfWork unit = new UnitOfWork(GROUP_OPERATION);
+        current.set(unit);
+        try {
+            work.run();
+            return unit.complete();
+        } catch (RuntimeException | Error e) {
+            unit.finish(false);
+            throw e;
+        } finally {
+            unit.pending.clear();
+            unit.afterCommit.clear();
+            current.remove();
+        }
+    }
+
+    /**
+     * Runs the work as one member of the active group unit, behind a savepoint. If the
+     * work throws or one of its writes fails, only its own changes are rolled back;
+     * otherwise they are kept and committed with the group.
+     *
+     * @param store     the store the group writes to
+     * @param operation name recorded with the member's ledger rows
+     * @param work      the work to run; actions inside it join the member
+     * @return true if the member's changes were kept.
+     * @throws RuntimeException whatever the work threw, after its changes were rolled back; an {@link Error} likewise.
+     */
+    static boolean executeMember(EnvelopeStore store, String operation, Runnable work) {
+        UnitOfWork group = current.get();
+        if (group == null || group.group != null || !GROUP_OPERATION.equals(group.operation)) {
+            throw new IllegalStateException("No group commit is active");
+        }
+
+        String savepoint = "member_" + (++group.members);
+        UnitOfWork member = new UnitOfWork(operation);
+        member.group = group;
+        current.set(member);
+        try {
+            EnvelopeStore.Transaction tx = transaction(store);
+            tx.savepoint(savepoint);
+
+            Throwable failure = null;
+            try {
+                work.run();
+                member.flushPending();
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                member.rollbackOnly = true;
+            }
+
+            if (member.rollbackOnly) {
+                tx.rollbackTo(savepoint);
+                if (failure instanceof Error) throw (Error) failure;
+                if (failure != null) throw (RuntimeException) failure;
+                return false;
+            }
+            tx.release(savepoint);
+            group.afterCommit.addAll(member.afterCommit);
+            return true;
+        } catch (SQLException e) {
+            // the transaction is no longer in a known state, so nothing in it is kept
+            log.error("Failed to manage savepoint " + savepoint + ": " + e.getMessage());
+            group.rollbackOnly = true;
+            return false;
+        } finally {
+            current.set(group);
+        }
+    }
+
+    /**
+     * Runs the work inside a unit of work, see {@link #execute(String, Supplier)}.
+     *
+     * @param operation name recorded with the unit's ledger rows
+     * @param work      the work to run
+     * @throws RolledBackException if the transaction rolled back or failed to commit.
+     */
+    public static void run(String operation, Runnable work) {
+        execute(operation, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return the ledger operation name of the active unit of work, or {@link #DEFAULT_OPERATION} outside one.
+     */
+    static String operationName() {
+        UnitOfWork unit = current.get();
+        return unit == null ? DEFAULT_OPERATION : unit.operation;
+    }
+
+    /**
+     * Returns the ledger operation id of the active unit of work, taking a new one from
+     * {@code allocate} the first time. Outside a unit every call is its own operation.
+     *
+     * @param allocate gives out the next unused operation id
+     * @return the operation id to record.
+     */
+    static long operationId(LongSupplier allocate) {
+        UnitOfWork unit = current.get();
+        if (unit == null) return allocate.getAsLong();
+        if (unit.operationId == 0) {
+            unit.operationId = allocate.getAsLong();
+        }
+        return unit.operationId;
+    }
+
+    /**
+     * @return true if a unit of work is active on the current thread.
+     */
+    public static boolean isActive() {
+        return current.get() != null;
+    }
+
+    /**
+     * Adds an envelope with unsaved changes to the active unit of work.
+     *
+     * @param e the changed envelope
+     */
+    public static void register(Envelope e) {
+        UnitOfWork unit = current.get();
+        if (unit == null) {
+            throw new IllegalStateException("No unit of work is active");
+        }
+        unit.pending.add(e);
+    }
+
+    /**
+     * Runs the action once the active unit of work commits. It is dropped if the unit rolls back.
+     *
+     * @param action the action to run after commit
+     */
+    static void afterCommit(Runnable action) {
+        UnitOfWork unit = current.get();
+        if (unit == null) {
+            throw new IllegalStateException("No unit of work is active");
+        }
+        unit.afterCommit.add(action);
+    }
+
+    /**
+     * Writes the pending changes of the active unit of work into its transaction, if there is one.
+     */
+    public static void flush() {
+        UnitOfWork unit = current.get();
+        if (unit != null) {
+            unit.flushPending();
+        }
+    }
+
+    /**
+     * Makes the active unit of work roll back instead of committing. Called when a write inside it fails.
+     */
+    static void setRollbackOnly() {
+        UnitOfWork unit = current.get();
+        if (unit != null) {
+            unit.rollbackOnly = true;
+        }
+    }
+
+    /**
+     * Returns the active unit's transaction on the store, starting it on first use.
+     * Stores call this at the start of every read and write.
+     *
+     * @param store the store being used
+     * @return the unit's transaction, or null if no unit of work is active.
+     * @throws SQLException if the transaction could not be started.
+     */
+    static EnvelopeStore.Transaction transaction(EnvelopeStore store) throws SQLException {
+        UnitOfWork unit = current.get();
+        if (unit == null) return null;
+        // members use their group's transaction
+        if (unit.group != null) unit = unit.group;
+
+        if (unit.tx == null) {
+            unit.tx = store.begin();
+            unit.txStore = store;
+        } else if (unit.txStore != store) {
+            throw new IllegalStateException("Unit of work already has a transaction on another store");
+        }
+        return unit.tx;
+    }
+
+    private void flushPending() {
+        if (pending.isEmpty()) return;
+
+        List<Envelope> envelopes = new ArrayList<>(pending);
+        pending.clear();
+        if (!Database.updateEnvelopes(envelopes)) {
+            log.error("Failed to save changes to " + envelopes.size() + " envelope(s)");
+            rollbackOnly = true;
+        }
+    }
+
+    /**
+     * Flushes the remaining changes, then commits unless the unit must roll back, and
+     * runs the after-commit actions if it committed.
+     *
+     * @return true if the transaction committed.
+     */
+    private boolean complete() {
+        flushPending();
+        if (!finish(!rollbackOnly)) return false;
+        for (Runnable action : afterCommit) {
+            action.run();
+        }
+        return true;
+    }
+
+    /**
+     * Commits or rolls back the unit's transaction and returns its connection.
+     *
+     * @return true if the transaction committed.
+     */
+    private boolean finish(boolean commit) {
+        if (tx == null) return commit;
+
+        try {
+            if (commit) {
+                tx.commit();
+                return true;
+            }
+            log.warn("Rolling back unit of work");
+            tx.rollback();
+        } catch (SQLException e) {
+            log.error("Failed to " + (commit ? "commit" : "roll back") + " unit of work: " + e.getMessage());
+        } finally {
+            tx.close();
+            tx = null;
+            txStore = null;
+        }
+        return false;
+    }
+}
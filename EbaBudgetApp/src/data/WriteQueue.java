@@ -0,0 +1,306 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.swing.SwingUtilities;
+
+import settings.DatabaseSettings;
+
+/**
+ * Runs database writes one at a time on a single background thread, so a slow disk
+ * never freezes the Swing window. Commands are taken from a bounded queue in the order
+ * they were submitted, a batch at a time, and each batch is run and committed as one
+ * group of {@link GroupMember}s, the same way a {@link GroupCommit} group is.
+ * <p>
+ * {@link #submit(String, Supplier)} returns a future that is completed on the Swing event
+ * dispatch thread once the batch has committed, so callbacks attached to it can update
+ * the window directly. The futures of a batch are completed together in one trip to the EDT. When the queue is
+ * full a submit waits up to {@link DatabaseSettings#writeQueueOfferTimeoutMillis} for
+ * room, then fails with a {@link RejectedExecutionException} rather than blocking the
+ * window any longer.
+ */
+public class WriteQueue {
+
+    private static WriteQueue shared;
+
+    private final BlockingQueue<GroupMember<?>> queue;
+    private final int batchSize;
+    private final long offerTimeoutMillis;
+    private final Executor completions;
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    //metrics
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong maxDepth = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+
+    /**
+     * Starts the writer thread.
+     *
+     * @param capacity           commands that can wait in the queue
+     * @param batchSize          commands taken from the queue at a time
+     * @param offerTimeoutMillis how long a submit waits for room in a full queue
+     * @param completions        where futures are completed, for example the Swing EDT
+     */
+    public WriteQueue(int capacity, int batchSize, long offerTimeoutMillis, Executor completions) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        this.batchSize = Math.max(batchSize, 1);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.completions = completions;
+        this.writer = new Thread(this::drain, "database-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return the queue the UI writes through, started on first use with the sizes in {@link DatabaseSettings}.
+     */
+    public static synchronized WriteQueue shared() {
+        if (shared == null || shared.closed) {
+            shared = new WriteQueue(DatabaseSettings.writeQueueCapacity, DatabaseSettings.writeQueueBatchSize,
+                    DatabaseSettings.writeQueueOfferTimeoutMillis, SwingUtilities::invokeLater);
+        }
+        return shared;
+    }
+
+    /**
+     * Submits a command to the shared queue.
+     *
+     * @see #enqueue(String, Supplier)
+     */
+    public static <T> CompletableFuture<T> submit(String operation, Supplier<T> command) {
+        return shared().enqueue(operation, command);
+    }
+
+    /**
+     * Stops the shared queue after the commands already in it have run.
+     */
+    public static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.shutdown();
+            shared = null;
+        }
+    }
+
+    /**
+     * Queues a command for the writer thread.
+     *
+     * @param operation name recorded with the command's ledger rows, for example "deposit"
+     * @param command   the write to run, usually an action
+     * @return completed with the command's result once its batch has committed, or with its exception,
+     *         on the completion executor; failed with a {@link RolledBackException} if its changes were
+     *         not kept, and right away if the queue stayed full or is shut down.
+     */
+    public <T> CompletableFuture<T> enqueue(String operation, Supplier<T> command) {
+        GroupMember<T> queued = new GroupMember<>(operation, command);
+        boolean accepted = false;
+        if (!closed) {
+            try {
+                accepted = queue.offer(queued, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!accepted) {
+            rejected.incrementAndGet();
+            queued.reject(new RejectedExecutionException(
+                    closed ? "The write queue is shut down" : "The write queue is full (" + queue.size() + " waiting)"));
+            return queued.getFuture();
+        }
+
+        submitted.incrementAndGet();
+        maxDepth.accumulateAndGet(queue.size(), Math::max);
+        return queued.getFuture();
+    }
+
+    private void drain() {
+        List<GroupMember<?>> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                GroupMember<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // nothing interrupts the writer; shutdown() is seen on the next poll
+                continue;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            batches.incrementAndGet();
+
+            commit(batch);
+            List<GroupMember<?>> done = new ArrayList<>(batch);
+            completions.execute(() -> done.forEach(GroupMember::complete));
+            batch.clear();
+        }
+    }
+
+    private void commit(List<GroupMember<?>> batch) {
+        GroupMember.runGroup(batch);
+
+        for (GroupMember<?> command : batch) {
+            if (command.isKept()) {
+                completed.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+            }
+            // a batch that failed to start ran none of its commands
+            if (command.getStartedAt() == 0) continue;
+            long wait = command.getStartedAt() - command.getQueuedAt();
+            totalWaitNanos.addAndGet(wait);
+            maxWaitNanos.accumulateAndGet(wait, Math::max);
+            totalRunNanos.addAndGet(command.getRunNanos());
+            maxRunNanos.accumulateAndGet(command.getRunNanos(), Math::max);
+        }
+    }
+
+    /**
+     * Stops taking commands and waits for the ones already queued to run.
+     */
+    public void shutdown() {
+        // not interrupted, a command may be waiting for a connection
+        closed = true;
+        if (Thread.currentThread() == writer) return;
+        try {
+            writer.join(DatabaseSettings.checkoutTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return a snapshot of the queue's depth, latency and throughput metrics.
+     */
+    public Metrics getMetrics() {
+        return new Metrics(submitted.get(), rejected.get(), completed.get(), failed.get(), batches.get(), queue.size(),
+                maxDepth.get(), totalWaitNanos.get(), maxWaitNanos.get(), totalRunNanos.get(), maxRunNanos.get());
+    }
+
+    /**
+     * Point-in-time view of the queue metrics.
+     */
+    public static class Metrics {
+
+        private final long submitted;
+        private final long rejected;
+        private final long completed;
+        private final long failed;
+        private final long batches;
+        private final int depth;
+        private final long maxDepth;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+        private final long totalRunNanos;
+        private final long maxRunNanos;
+
+        Metrics(long submitted, long rejected, long completed, long failed, long batches, int depth, long maxDepth,
+                long totalWaitNanos, long maxWaitNanos, long totalRunNanos, long maxRunNanos) {
+            this.submitted = submitted;
+            this.rejected = rejected;
+            this.completed = completed;
+            this.failed = failed;
+            this.batches = batches;
+            this.depth = depth;
+            this.maxDepth = maxDepth;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.totalRunNanos = totalRunNanos;
+            this.maxRunNanos = maxRunNanos;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        /**
+         * @return submits turned away because the queue stayed full or was shut down.
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return commands that threw, errors included, or whose changes were rolled back.
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        /**
+         * @return commands waiting in the queue right now.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getMaxDepth() {
+            return maxDepth;
+        }
+
+        /**
+         * @return average time a command waited in the queue before it ran.
+         */
+        public double getAverageWaitMicros() {
+            long ran = completed + failed;
+            if (ran == 0) return 0;
+            return totalWaitNanos / 1000.0 / ran;
+        }
+
+        public long getMaxWaitNanos() {
+            return maxWaitNanos;
+        }
+
+        public double getAverageRunMicros() {
+            long ran = completed + failed;
+            if (ran == 0) return 0;
+            return totalRunNanos / 1000.0 / ran;
+        }
+
+        public long getMaxRunNanos() {
+            return maxRunNanos;
+        }
+
+        public double getAverageBatchSize() {
+            if (batches == 0) return 0;
+            return (double) (completed + failed) / batches;
+        }
+
+        @Override
+        public String toString() {
+            return "submitted: " + submitted +
+                    "\nrejected: " + rejected +
+                    "\ncompleted: " + completed +
+                    "\nfailed: " + failed +
+                    "\ndepth: " + depth + " (max " + maxDepth + ")" +
+                    "\nbatches: " + batches + String.format(" (average %.2f commands)", getAverageBatchSize()) +
+                    "\naverage queue wait (us): " + String.format("%.2f", getAverageWaitMicros()) +
+                    "\nmax queue wait (us): " + (maxWaitNanos / 1000) +
+                    "\naverage run (us): " + String.format("%.2f", getAverageRunMicros()) +
+                    "\nmax run (us): " + (maxRunNanos / 1000);
+        }
+    }
+}
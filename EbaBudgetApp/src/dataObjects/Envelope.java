@@ -1,7 +1,12 @@
 package dataObjects;
 import java.math.BigDecimal;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
 
+import data.Cents;
 import data.Database;
+import data.UnitOfWork;
 
 public class Envelope {
 
@@ -15,16 +20,23 @@ public class Envelope {
     private boolean extra;
     private boolean Default;
 
+    //name of the database row this envelope belongs to, only changes once a new name has been saved
+    private String storedName;
+    //fields changed since the envelope was last saved
+    private final EnumSet<EnvelopeField> dirty = EnumSet.noneOf(EnvelopeField.class);
+
     public Envelope(int priority, String name, BigDecimal amount, int fillSetting, int fillAmount, boolean cap, int capAmount, boolean extra, boolean Default) {
         this.priority = priority;
         this.name = name;
-        this.amount = amount;
+        //whole cents, the precision the amount is stored with
+        this.amount = Cents.round(amount);
         this.fillSetting = fillSetting;
         this.fillAmount = fillAmount;
         this.cap = cap;
         this.capAmount = capAmount;
         this.extra = extra;
         this.Default = Default;
+        this.storedName = name;
     }
 
     public int getPriority() {
@@ -32,8 +44,11 @@ public class Envelope {
     }
 
     public void setPriority(int priority) {
-        if (Database.editEnvelope(this.name, this.name, priority, this.amount, this.fillSetting, this.fillAmount, this.cap, this.capAmount, this.extra, this.Default)) {
-            this.priority = priority;
+        if (this.priority == priority) return;
+        int previous = this.priority;
+        this.priority = priority;
+        if (!changed(EnvelopeField.PRIORITY)) {
+            this.priority = previous;
         }
     }
 
@@ -42,8 +57,11 @@ public class Envelope {
     }
 
     public void setName(String name) {
-        if (Database.editEnvelope(this.name, name, this.priority, this.amount, this.fillSetting, this.fillAmount, this.cap, this.capAmount, this.extra, this.Default)) {
-            this.name = name;
+        if (Objects.equals(this.name, name)) return;
+        String previous = this.name;
+        this.name = name;
+        if (!changed(EnvelopeField.NAME)) {
+            this.name = previous;
         }
     }
 
@@ -52,8 +70,13 @@ public class Envelope {
     }
 
     public void setAmount(BigDecimal amount) {
-        if (Database.editEnvelope(this.name, this.name, this.priority, amount, this.fillSetting, this.fillAmount, this.cap, this.capAmount, this.extra, this.Default)) {
-            this.amount = amount;
+        amount = Cents.round(amount);
+        // compareTo so 10.0 and 10.00 count as the same amount
+        if (this.amount != null && amount != null && this.amount.compareTo(amount) == 0) return;
+        BigDecimal previous = this.amount;
+        this.amount = amount;
+        if (!changed(EnvelopeField.AMOUNT)) {
+            this.amount = previous;
         }
     }
 
@@ -62,8 +85,11 @@ public class Envelope {
     }
 
     public void setFillSetting(int fillSetting) {
-        if (Database.editEnvelope(this.name, this.name, this.priority, this.amount, fillSetting, this.fillAmount, this.cap, this.capAmount, this.extra, this.Default)) {
-            this.fillSetting = fillSetting;
+        if (this.fillSetting == fillSetting) return;
+        int previous = this.fillSetting;
+        this.fillSetting = fillSetting;
+        if (!changed(EnvelopeField.FILL_SETTING)) {
+            this.fillSetting = previous;
         }
     }
 
@@ -72,8 +98,11 @@ public class Envelope {
     }
 
     public void setFillAmount(int fillAmount) {
-        if (Database.editEnvelope(this.name, this.name, this.priority, this.amount, this.fillSetting, fillAmount, this.cap, this.capAmount, this.extra, this.Default)) {
-            this.fillAmount = fillAmount;
+        if (this.fillAmount == fillAmount) return;
+        int previous = this.fillAmount;
+        this.fillAmount = fillAmount;
+        if (!changed(EnvelopeField.FILL_AMOUNT)) {
+            this.fillAmount = previous;
         }
     }
 
@@ -82,8 +111,11 @@ public class Envelope {
     }
 
     public void setCap(boolean cap) {
-        if (Database.editEnvelope(this.name, this.name, this.priority, this.amount, this.fillSetting, this.fillAmount, cap, this.capAmount, this.extra, this.Default)) {
-            this.cap = cap;
+        if (this.cap == cap) return;
+        boolean previous = this.cap;
+        this.cap = cap;
+        if (!changed(EnvelopeField.CAP)) {
+            this.cap = previous;
         }
     }
 
@@ -92,8 +124,11 @@ public class Envelope {
     }
 
     public void setCapAmount(int capAmount) {
-        if (Database.editEnvelope(this.name, this.name, this.priority, this.amount, this.fillSetting, this.fillAmount, this.cap, capAmount, this.extra, this.Default)) {
-            this.capAmount = capAmount;
+        if (this.capAmount == capAmount) return;
+        int previous = this.capAmount;
+        this.capAmount = capAmount;
+        if (!changed(EnvelopeField.CAP_AMOUNT)) {
+            this.capAmount = previous;
         }
     }
 
@@ -102,8 +137,11 @@ public class Envelope {
     }
 
     public void setExtra(boolean extra) {
-        if (Database.editEnvelope(this.name, this.name, this.priority, this.amount, this.fillSetting, this.fillAmount, this.cap, this.capAmount, extra, this.Default)) {
-            this.extra = extra;
+        if (this.extra == extra) return;
+        boolean previous = this.extra;
+        this.extra = extra;
+        if (!changed(EnvelopeField.EXTRA)) {
+            this.extra = previous;
         }
     }
 
@@ -112,11 +150,67 @@ public class Envelope {
     }
 
     public void setDefault(boolean Default) {
-        if (Database.editEnvelope(this.name, this.name, this.priority, this.amount, this.fillSetting, this.fillAmount, this.cap, this.capAmount, this.extra, Default)) {
-            this.Default = Default;
+        if (this.Default == Default) return;
+        boolean previous = this.Default;
+        this.Default = Default;
+        if (!changed(EnvelopeField.DEFAULT)) {
+            this.Default = previous;
         }
     }
 
+    /**
+     * @return a new Envelope with the same values and no unsaved changes.
+     */
+    public Envelope copy() {
+        return new Envelope(priority, name, amount, fillSetting, fillAmount, cap, capAmount, extra, Default);
+    }
+
+    /**
+     * Records a changed field. Inside a unit of work the change is saved when the
+     * unit flushes, otherwise it is saved straight away.
+     *
+     * @param field the field that changed
+     * @return false if the change could not be saved and should be undone
+     */
+    private boolean changed(EnvelopeField field) {
+        dirty.add(field);
+        if (UnitOfWork.isActive()) {
+            UnitOfWork.register(this);
+            return true;
+        }
+        if (Database.updateEnvelope(this)) {
+            return true;
+        }
+        dirty.remove(field);
+        return false;
+    }
+
+    /**
+     * @return the fields changed since the envelope was last saved.
+     */
+    public Set<EnvelopeField> getDirtyFields() {
+        return EnumSet.copyOf(dirty);
+    }
+
+    public boolean isDirty() {
+        return !dirty.isEmpty();
+    }
+
+    /**
+     * @return the name of the database row this envelope was loaded from or last saved to.
+     */
+    public String getStoredName() {
+        return storedName;
+    }
+
+    /**
+     * Called by the database once the changed fields have been saved.
+     */
+    public void markClean() {
+        dirty.clear();
+        storedName = name;
+    }
+
     @Override
     public String toString() {
         return "\npriority: " + this.priority +
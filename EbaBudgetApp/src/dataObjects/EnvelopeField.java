@@ -0,0 +1,14 @@
+package dataObjects;
+
+//fields of an Envelope that can be changed after it is created, used to track which ones still need to be saved
+public enum EnvelopeField {
+	NAME,
+	PRIORITY,
+	AMOUNT,
+	FILL_SETTING,
+	FILL_AMOUNT,
+	CAP,
+	CAP_AMOUNT,
+	EXTRA,
+	DEFAULT
+}
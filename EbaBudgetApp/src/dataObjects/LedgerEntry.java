@@ -0,0 +1,77 @@
+package dataObjects;
+import java.math.BigDecimal;
+
+/**
+ * One row of the append-only transactions ledger: money moving into (positive)
+ * or out of (negative) one envelope. Entries written by the same action share
+ * an operation id, so a transfer is two entries with one operation id.
+ */
+public class LedgerEntry {
+
+    private final long sequence;
+    private final long timestamp;
+    private final String envelope;
+    private final long amountCents;
+    private final long operationId;
+    private final String operation;
+
+    public LedgerEntry(long sequence, long timestamp, String envelope, long amountCents, long operationId, String operation) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.envelope = envelope;
+        this.amountCents = amountCents;
+        this.operationId = operationId;
+        this.operation = operation;
+    }
+
+    /**
+     * @return position in the ledger; later entries have higher numbers.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return when the entry was written, in epoch milliseconds.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return name of the envelope at the time of the entry.
+     */
+    public String getEnvelope() {
+        return envelope;
+    }
+
+    /**
+     * @return signed change to the envelope's amount, in cents.
+     */
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    /**
+     * @return signed change to the envelope's amount.
+     */
+    public BigDecimal getAmount() {
+        return BigDecimal.valueOf(amountCents, 2);
+    }
+
+    public long getOperationId() {
+        return operationId;
+    }
+
+    /**
+     * @return the kind of action that wrote the entry, for example "deposit".
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + operation + " (" + operationId + ") " + envelope + " " + getAmount();
+    }
+}
@@ -0,0 +1,31 @@
+package metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * A value read when it is asked for, such as the number of envelopes.
+ */
+public class Gauge implements GaugeMBean {
+
+    private final Supplier<? extends Number> value;
+
+    /**
+     * @param value reads the current value; called on whichever thread asks, for example a JMX connection
+     */
+    public Gauge(Supplier<? extends Number> value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the current value, or NaN if it could not be read.
+     */
+    @Override
+    public double getValue() {
+        try {
+            Number current = value.get();
+            return current == null ? Double.NaN : current.doubleValue();
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package metrics;
+
+/**
+ * JMX view of a {@link Gauge}.
+ */
+public interface GaugeMBean {
+
+    double getValue();
+}
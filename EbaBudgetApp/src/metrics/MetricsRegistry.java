@@ -0,0 +1,109 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import data.DatabaseLog;
+import settings.MetricsSettings;
+
+/**
+ * Counters, timers and gauges for the whole app, by name.
+ * <p>
+ * A metric is created the first time its name is asked for and kept for the life of the
+ * app. With {@link MetricsSettings#jmx} on, each one is also registered as an MBean in the
+ * platform MBean server as {@code <domain>:type=Timer,name=actions.deposit}, so it can be
+ * watched with jconsole or any other JMX client.
+ */
+public final class MetricsRegistry {
+
+    private static final DatabaseLog log = DatabaseLog.forClass(MetricsRegistry.class);
+
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    /**
+     * @return the counter with the name, created on first use.
+     */
+    public static Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter != null) return counter;
+        return counters.computeIfAbsent(name, key -> register("Counter", key, new Counter()));
+    }
+
+    /**
+     * @return the timer with the name, created on first use.
+     */
+    public static Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer != null) return timer;
+        return timers.computeIfAbsent(name, key -> register("Timer", key, new Timer()));
+    }
+
+    /**
+     * Adds a gauge, unless one with the name is already there.
+     *
+     * @param name  the gauge's name
+     * @param value reads the current value
+     * @return the gauge with the name.
+     */
+    public static Gauge gauge(String name, Supplier<? extends Number> value) {
+        return gauges.computeIfAbsent(name, key -> register("Gauge", key, new Gauge(value)));
+    }
+
+    public static Map<String, Counter> getCounters() {
+        return new TreeMap<>(counters);
+    }
+
+    public static Map<String, Timer> getTimers() {
+        return new TreeMap<>(timers);
+    }
+
+    public static Map<String, Gauge> getGauges() {
+        return new TreeMap<>(gauges);
+    }
+
+    /**
+     * Sets every counter and timer back to zero.
+     */
+    public static void reset() {
+        counters.values().forEach(Counter::reset);
+        timers.values().forEach(Timer::reset);
+    }
+
+    /**
+     * @return one line per metric, sorted by name within each kind.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        getTimers().forEach((name, timer) -> report.append(name).append(": ").append(timer).append('\n'));
+        getCounters().forEach((name, counter) -> report.append(name).append(": ").append(counter.getCount()).append('\n'));
+        getGauges().forEach((name, gauge) -> report.append(name).append(": ").append(gauge.getValue()).append('\n'));
+        return report.toString();
+    }
+
+    private static <T> T register(String type, String name, T metric) {
+        if (!MetricsSettings.jmx) return metric;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(MetricsSettings.jmxDomain + ":type=" + type + ",name=" + ObjectName.quote(name));
+            // a second registry in the same JVM, such as after a class reload, replaces the first one's beans
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(metric, objectName);
+        } catch (JMException e) {
+            // the metric still works, it just can't be seen over JMX
+            log.warn("Failed to register " + name + " with JMX: " + e.getMessage());
+        }
+        return metric;
+    }
+}
@@ -0,0 +1,120 @@
+package metrics;
+
+import java.util.function.Supplier;
+
+import data.LatencyHistogram;
+
+/**
+ * How often something runs and how long it takes: a {@link LatencyHistogram} of every
+ * call since startup or the last reset, and the number of calls in each of the last
+ * sixty seconds for the current rate.
+ */
+public class Timer implements TimerMBean {
+
+    private static final int WINDOW_SECONDS = 60;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    //calls in each second of the window, and the second each slot was last used for
+    private final long[] perSecond = new long[WINDOW_SECONDS];
+    private final long[] slotSecond = new long[WINDOW_SECONDS];
+
+    /**
+     * Runs the work and records how long it took, also if it throws.
+     *
+     * @return what the work returned.
+     */
+    public <T> T time(Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Runs the work and records how long it took, also if it throws.
+     */
+    public void time(Runnable work) {
+        long start = System.nanoTime();
+        try {
+            work.run();
+        } finally {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param nanos how long one call took
+     */
+    public void record(long nanos) {
+        latency.record(nanos);
+        long second = System.nanoTime() / 1_000_000_000L;
+        int slot = (int) Math.floorMod(second, (long) WINDOW_SECONDS);
+        synchronized (perSecond) {
+            if (slotSecond[slot] != second) {
+                slotSecond[slot] = second;
+                perSecond[slot] = 0;
+            }
+            perSecond[slot]++;
+        }
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        long now = System.nanoTime() / 1_000_000_000L;
+        long calls = 0;
+        synchronized (perSecond) {
+            for (int slot = 0; slot < WINDOW_SECONDS; slot++) {
+                // slots older than the window are left over from earlier minutes
+                if (now - slotSecond[slot] < WINDOW_SECONDS) calls += perSecond[slot];
+            }
+        }
+        return calls / (double) WINDOW_SECONDS;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.getAverageMicros();
+    }
+
+    @Override
+    public long get50thPercentileMicros() {
+        return latency.getPercentileNanos(50) / 1000;
+    }
+
+    @Override
+    public long get99thPercentileMicros() {
+        return latency.getPercentileNanos(99) / 1000;
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return latency.getMaxNanos() / 1000;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        synchronized (perSecond) {
+            for (int slot = 0; slot < WINDOW_SECONDS; slot++) {
+                perSecond[slot] = 0;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count %d, %.2f/s, mean %.1f us, p50 %d us, p99 %d us, max %d us", getCount(),
+                getOneMinuteRate(), getMeanMicros(), get50thPercentileMicros(), get99thPercentileMicros(), getMaxMicros());
+    }
+}
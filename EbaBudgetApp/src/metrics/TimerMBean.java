@@ -0,0 +1,24 @@
+package metrics;
+
+/**
+ * JMX view of a {@link Timer}. Latencies are in microseconds.
+ */
+public interface TimerMBean {
+
+    long getCount();
+
+    /**
+     * @return calls per second over the last minute.
+     */
+    double getOneMinuteRate();
+
+    double getMeanMicros();
+
+    long get50thPercentileMicros();
+
+    long get99thPercentileMicros();
+
+    long getMaxMicros();
+
+    void reset();
+}
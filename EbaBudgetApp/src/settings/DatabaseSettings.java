@@ -0,0 +1,50 @@
+package settings;
+
+public class DatabaseSettings {
+
+	//where envelopes are kept: "sqlite" for the database file, "memory" for memory only (nothing is saved)
+	public final static String storage = "sqlite";
+
+	//pragmas set on every database connection: "safe" syncs every commit, "balanced" survives app crashes but can lose
+	//the last commits on power loss, "throughput" never syncs (see data.DurabilityProfile)
+	public final static String durabilityProfile = "balanced";
+	//connection pool -- one writer connection plus this many reader connections
+	public final static int readerConnections = 3;
+	//how long a caller waits for a free connection before giving up
+	public final static long checkoutTimeoutMillis = 5000;
+	//how long a connection gets to answer the validation check on checkout
+	public final static int validationTimeoutSeconds = 1;
+	//prepared statements kept open per connection, least recently used is closed first
+	public final static int statementCacheSize = 32;
+	//answer envelope reads from an in-memory copy of the table instead of querying
+	public final static boolean envelopeCache = true;
+	//ledger rows written between snapshots of every envelope amount, startup replays at most about this many rows
+	public final static int ledgerSnapshotInterval = 1000;
+	//ledger snapshots kept, older ones are deleted
+	public final static int ledgerSnapshotsKept = 2;
+	//minutes between checks of the stored total balance against the sum of every envelope, 0 to never check
+	public final static int balanceReconcileMinutes = 15;
+	//writes from the window run on one background thread -- commands that can wait, commands taken at a time,
+	//and how long a submit waits for room in a full queue before it is turned away
+	public final static int writeQueueCapacity = 256;
+	public final static int writeQueueBatchSize = 32;
+	public final static long writeQueueOfferTimeoutMillis = 50;
+	//online backups next to the database file, in a 'backups' folder -- minutes between backups, 0 to only back up on request
+	public final static int backupIntervalMinutes = 60;
+	//database pages copied per backup step, and the pause after each step so the app's writes are not held up
+	public final static int backupPagesPerStep = 64;
+	public final static int backupStepPauseMillis = 20;
+	//backups kept, older ones are deleted
+	public final static int backupsKept = 7;
+	//group commit -- how long the first mutation of a group waits for others to join it, and the most mutations
+	//committed in one transaction; 0 millis commits whatever is waiting right away
+	public final static long groupCommitWindowMillis = 5;
+	public final static int groupCommitMaxBatch = 64;
+	//data layer messages go through slf4j with levels (successful writes are debug and hidden by default),
+	//false prints every message to stdout
+	public final static boolean slf4jLogging = true;
+	//time every Database method and count the rows it reads and writes, see Database.getMetrics()
+	public final static boolean databaseMetrics = true;
+	//statements slower than this are logged with their SQL and parameters, 0 to turn the slow query log off
+	public final static long slowQueryMillis = 50;
+}
@@ -0,0 +1,9 @@
+package settings;
+
+public class MetricsSettings {
+
+	//register every metric as an MBean so it can be watched with jconsole or another JMX client
+	public final static boolean jmx = true;
+	//JMX domain the metrics are registered under
+	public final static String jmxDomain = "EbaBudgetApp";
+}
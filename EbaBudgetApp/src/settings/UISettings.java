@@ -8,7 +8,7 @@ public interface UISettings {
 	static final int PUIy = 60;
 	
 	static final int DUIWidth = 350;
-	static final int DUIHeight = 175;
+	static final int DUIHeight = 200;
 	static final int DUIx = 170;
 	static final int DUIy = 25;
 	
@@ -23,7 +23,7 @@ public interface UISettings {
 	static final int TUIy = 25;
 	
 	static final int WUIWidth = 225;
-	static final int WUIHeight = 175;
+	static final int WUIHeight = 200;
 	static final int WUIx = 5;
 	static final int WUIy = 25;
 	
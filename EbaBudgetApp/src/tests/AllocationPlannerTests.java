@@ -0,0 +1,180 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import actions.Actions;
+import actions.AllocationPlan;
+import actions.AllocationPlanner;
+import actions.precisionOperations;
+import benchmarks.BudgetWorkload;
+import data.Database;
+import data.InMemoryEnvelopeStore;
+import dataObjects.Envelope;
+import settings.EnvelopeSettings;
+import tickets.ResponseTicket;
+
+//deposits into all envelopes through AllocationPlanner must land exactly where the loop it replaced put them
+//the old loop is kept below as it was, working on amounts by name instead of saving each envelope
+class AllocationPlannerTests extends precisionOperations {
+
+	private final Random random = new Random(24);
+
+	@AfterEach
+	void closeStore() {
+		Database.useStore(null);
+	}
+
+	@Test
+	void smallBudgets() {
+		for(int trial = 0; trial < 300; trial++) {
+			compare(1 + random.nextInt(25), trial % 2 == 0, 5);
+		}
+	}
+
+	@Test
+	void largeBudgets() {
+		for(int trial = 0; trial < 6; trial++) {
+			compare(500 + random.nextInt(1500), trial % 2 == 0, 20);
+		}
+	}
+
+	//money moved into an envelope between planning and committing is kept, the plan only adds its shares
+	@Test
+	void commitAddsToCurrentAmounts() {
+		Database.useStore(new InMemoryEnvelopeStore());
+		Database.createNewDatabase();
+		assertTrue(Database.addEnvelopes(budget(30, true)), "budget was not added");
+
+		AllocationPlan plan = AllocationPlanner.plan(Database.getEnvelopesByPriority(), new BigDecimal("2500.00"));
+		String changed = plan.getAllocations().get(0).getEnvelope();
+		assertTrue(Database.editAmount(changed, Database.getEnvelope(changed).getAmount().add(new BigDecimal("7.00"))), "edit failed");
+
+		Map<String, BigDecimal> before = new LinkedHashMap<>();
+		for(Envelope e : Database.getEnvelopes()) before.put(e.getName(), e.getAmount());
+		ResponseTicket response = new ResponseTicket();
+		plan.commit(response);
+		assertFalse(response.hasErrorMessage(), "commit failed: " + response.getErrorMessages());
+
+		for(Envelope e : Database.getEnvelopes()) {
+			BigDecimal want = before.get(e.getName()).add(plan.getDeposited(e.getName()));
+			assertTrue(want.compareTo(e.getAmount()) == 0, e.getName() + " has $" + e.getAmount() + ", expected $" + want);
+		}
+	}
+
+	//deposits into all several times, checking every envelope after each one
+	private void compare(int envelopes, boolean extra, int deposits) {
+		Database.useStore(new InMemoryEnvelopeStore());
+		Database.createNewDatabase();
+		assertTrue(Database.addEnvelopes(budget(envelopes, extra)), "budget was not added");
+
+		for(int deposit = 0; deposit < deposits; deposit++) {
+			//small amounts run out part way through a pass, large ones reach the extra or first envelope
+			BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(random.nextBoolean() ? 5_000 : 2_000_000), 2);
+			BigDecimal balance = Database.getBalance();
+			Map<String, BigDecimal> expected = oldDepositAll(Database.getEnvelopesByPriority(), amount);
+
+			assertFalse(Actions.Deposit(null, amount).hasErrorMessage(), "deposit of $" + amount + " failed");
+
+			for(Envelope e : Database.getEnvelopes()) {
+				BigDecimal want = expected.get(e.getName());
+				assertTrue(want.compareTo(e.getAmount()) == 0, envelopes + " envelopes, deposit of $" + amount + ": " + e.getName()
+						+ " has $" + e.getAmount() + ", the old loop left $" + want);
+			}
+			assertTrue(balance.add(amount).compareTo(Database.getBalance()) == 0, "balance moved by more than $" + amount);
+		}
+	}
+
+	//a budget from the scale workload, half the time without an extra envelope so leftovers go to the first priority
+	private List<Envelope> budget(int envelopes, boolean extra) {
+		List<Envelope> budget = new ArrayList<>();
+		for(Envelope e : BudgetWorkload.budget(envelopes, random)) {
+			budget.add(new Envelope(e.getPriority(), e.getName(), e.getAmount(), e.getFillSetting(), e.getFillAmount(), e.hasCap(),
+					e.getCapAmount(), extra && e.isExtra(), e.isDefault()));
+		}
+		return budget;
+	}
+
+	//EnvelopeActions.depositAll before it was split into AllocationPlanner and AllocationPlan
+	//returns every envelope's amount afterwards
+	private static Map<String, BigDecimal> oldDepositAll(List<Envelope> envelopes, BigDecimal amount) {
+		Map<String, BigDecimal> amounts = new LinkedHashMap<>();
+		for(Envelope e : envelopes) amounts.put(e.getName(), e.getAmount());
+
+		BigDecimal fullAmount = amount;
+		//deposit into those with percent fill setting
+		for(int index = 0; index < envelopes.size(); index++) {
+			Envelope envelope = envelopes.get(index);
+			if(envelope.getFillSetting() == EnvelopeSettings.percentage) {
+				BigDecimal percentAmount = divide(envelope.getFillAmount(), 100);
+				BigDecimal tempAmount = multiply(fullAmount, percentAmount);
+				int formattedAmount = multiply(tempAmount, new BigDecimal(100)).intValue();
+				tempAmount = divide(formattedAmount, 100);
+
+				amounts.merge(envelope.getName(), tempAmount, BigDecimal::add);
+				amount = subtract(amount, tempAmount);
+			}
+			if(amount.doubleValue() == 0) return amounts;
+		}
+
+		//deposit rest -- in priority order
+		for(int index = 0; index < envelopes.size(); index++) {
+			Envelope e = envelopes.get(index);
+			BigDecimal amountToDeposit;
+
+			switch(e.getFillSetting()) {
+				default: throw new IllegalStateException("envelope has an invalid fill setting");
+				case EnvelopeSettings.percentage: continue;
+
+				case EnvelopeSettings.fill: {
+					if(e.hasCap()) {
+						int capAmount = e.getCapAmount();
+						BigDecimal envelopeAmount = e.getAmount();
+						if(envelopeAmount.doubleValue() >= capAmount) continue;
+						amountToDeposit = subtract(new BigDecimal(capAmount), envelopeAmount);
+						if(amountToDeposit.doubleValue() > amount.doubleValue()) amountToDeposit = amount;
+					}
+					else {
+						amountToDeposit = amount;
+					}
+				} break;
+
+				case EnvelopeSettings.amount: {
+					amountToDeposit = new BigDecimal(e.getFillAmount());
+					if(amountToDeposit.doubleValue() > amount.doubleValue()) amountToDeposit = amount;
+					if(e.hasCap()) {
+						BigDecimal amountTillFull = subtract(new BigDecimal(e.getCapAmount()), e.getAmount());
+						if(amountTillFull.doubleValue() <= 0) continue;
+						if(amountToDeposit.doubleValue() > amountTillFull.doubleValue()) {
+							amountToDeposit = amountTillFull;
+						}
+					}
+				} break;
+			}
+
+			amounts.merge(e.getName(), amountToDeposit, BigDecimal::add);
+			amount = subtract(amount, amountToDeposit);
+			if(amount.doubleValue() == 0) return amounts;
+		}
+
+		//left over amount into the envelope marked extra, otherwise the 1st priority envelope
+		for(Envelope e : envelopes) {
+			if(!e.isExtra()) continue;
+			amounts.merge(e.getName(), amount, BigDecimal::add);
+			amount = BigDecimal.ZERO;
+		}
+		if(amount.doubleValue() > 0 && !envelopes.isEmpty()) {
+			amounts.merge(envelopes.get(0).getName(), amount, BigDecimal::add);
+		}
+		return amounts;
+	}
+}
@@ -0,0 +1,69 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import data.Database;
+import data.DatabaseBackup;
+import data.SqliteEnvelopeStore;
+import dataObjects.Envelope;
+import settings.DatabaseSettings;
+import settings.EnvelopeSettings;
+
+//backups of a scratch database file, the real database is not touched
+class DatabaseBackupTests {
+
+	private Path directory;
+	private SqliteEnvelopeStore store;
+	private DatabaseBackup backups;
+
+	@BeforeEach
+	void open() throws IOException {
+		directory = Files.createTempDirectory("eba-backup-test-");
+		store = new SqliteEnvelopeStore("jdbc:sqlite:" + directory.resolve("budget.db"));
+		Database.useStore(store);
+		Database.createNewDatabase();
+		backups = new DatabaseBackup(store, directory.resolve("backups"));
+	}
+
+	@AfterEach
+	void close() throws IOException {
+		Database.useStore(null);
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	//restoring takes a backup of the current database first, which used to prune the oldest backup -- the one being restored
+	@Test
+	void restoreOldestBackup() throws InterruptedException {
+		Database.addEnvelope(new Envelope(1, "food", new BigDecimal("10.00"), EnvelopeSettings.fill, 0, false, 0, false, false));
+		for(int backup = 0; backup < DatabaseSettings.backupsKept; backup++) {
+			assertTrue(backups.backup().isSucceeded(), "backup " + backup + " failed");
+			Database.editAmount("food", new BigDecimal(20 + backup));
+			//backups are named by the millisecond they were taken
+			Thread.sleep(5);
+		}
+
+		List<Path> kept = backups.listBackups();
+		assertEquals(DatabaseSettings.backupsKept, kept.size(), "backups kept");
+		Path oldest = kept.get(kept.size() - 1);
+
+		assertTrue(backups.restore(oldest), "restore of the oldest backup failed");
+		assertTrue(Files.exists(oldest), "the restored backup was deleted");
+		assertEquals(0, new BigDecimal("10.00").compareTo(Database.getEnvelope("food").getAmount()), "food has $" + Database.getEnvelope("food").getAmount());
+		//the copy taken before the restore is added and nothing is pruned, the restored backup is older than every other
+		assertEquals(DatabaseSettings.backupsKept + 1, backups.listBackups().size(), "backups kept after the restore");
+	}
+}
@@ -0,0 +1,119 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import actions.Actions;
+import benchmarks.BudgetWorkload;
+import data.Database;
+import data.EnvelopeCache;
+import data.GroupCommit;
+import data.SqliteEnvelopeStore;
+import dataObjects.Envelope;
+
+//actions on a scratch SQLite file read from the envelope cache, with their own uncommitted writes on top
+//whatever they read, the cache must end up agreeing with the database
+class EnvelopeCacheTests {
+
+	private static final int ENVELOPES = 40;
+
+	private final Random random = new Random(8);
+	private Path directory;
+	private SqliteEnvelopeStore store;
+
+	@BeforeEach
+	void open() throws IOException {
+		directory = Files.createTempDirectory("eba-cache-test-");
+		store = new SqliteEnvelopeStore("jdbc:sqlite:" + directory.resolve("budget.db"));
+		store.setCacheEnabled(true);
+		Database.useStore(store);
+		Database.createNewDatabase();
+		assertTrue(Database.addEnvelopes(BudgetWorkload.budget(ENVELOPES, random)), "budget was not added");
+	}
+
+	@AfterEach
+	void close() throws IOException {
+		Database.useStore(null);
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	void actionsReadFromTheCache() {
+		EnvelopeCache cache = store.getCache();
+		Database.getEnvelopes();
+		long hits = cache.getHits();
+		long bypasses = cache.getBypasses();
+
+		for(int operation = 0; operation < 100; operation++) {
+			Envelope e = Database.getEnvelope("envelope " + random.nextInt(ENVELOPES));
+			BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(20_000), 2);
+			switch(random.nextInt(3)) {
+				case 0: Actions.Deposit(random.nextBoolean() ? e : null, amount); break;
+				case 1: Actions.Withdraw("", e, amount); break;
+				default: Actions.Transfer(e, Database.getEnvelope("envelope " + random.nextInt(ENVELOPES)), amount.min(e.getAmount()));
+			}
+		}
+
+		assertEquals(bypasses, cache.getBypasses(), "reads inside the actions went to the database");
+		assertTrue(cache.getHits() > hits + 100, "the actions did not read from the cache");
+		assertCacheMatchesDatabase();
+	}
+
+	//the first member of the group writes and then fails, so only its savepoint is rolled back
+	@Test
+	void rolledBackMemberLeavesTheCacheAlone() {
+		GroupCommit committer = new GroupCommit(50, 10);
+		try {
+			CompletableFuture<Object> failed = committer.submit("edit", () -> {
+				Database.editAmount("envelope 0", new BigDecimal("123456.78"));
+				assertEquals(0, new BigDecimal("123456.78").compareTo(Database.getEnvelope("envelope 0").getAmount()), "the member did not read its own write");
+				throw new IllegalStateException("rolled back on purpose");
+			});
+			CompletableFuture<Object> kept = committer.submit("deposit", () -> Actions.Deposit(Database.getEnvelope("envelope 1"), new BigDecimal("5.00")));
+
+			assertTrue(kept.handle((result, e) -> e == null).join(), "the deposit was not kept");
+			assertFalse(failed.handle((result, e) -> e == null).join(), "the failed member was kept");
+		} finally {
+			committer.shutdown();
+		}
+
+		assertFalse(new BigDecimal("123456.78").compareTo(Database.getEnvelope("envelope 0").getAmount()) == 0, "the cache kept the rolled back edit");
+		assertCacheMatchesDatabase();
+	}
+
+	private void assertCacheMatchesDatabase() {
+		Map<String, BigDecimal> cached = amounts();
+		BigDecimal cachedBalance = Database.getBalance();
+		store.setCacheEnabled(false);
+		Map<String, BigDecimal> stored = amounts();
+
+		assertEquals(stored.keySet(), cached.keySet(), "the cache holds other envelopes than the database");
+		for(Map.Entry<String, BigDecimal> entry : stored.entrySet()) {
+			assertTrue(entry.getValue().compareTo(cached.get(entry.getKey())) == 0, entry.getKey() + " has $" + entry.getValue()
+					+ ", the cache says $" + cached.get(entry.getKey()));
+		}
+		assertTrue(Database.getBalance().compareTo(cachedBalance) == 0, "the balance is $" + Database.getBalance() + ", the cache says $" + cachedBalance);
+	}
+
+	private static Map<String, BigDecimal> amounts() {
+		Map<String, BigDecimal> amounts = new HashMap<>();
+		for(Envelope e : Database.getEnvelopes()) amounts.put(e.getName(), e.getAmount());
+		return amounts;
+	}
+}
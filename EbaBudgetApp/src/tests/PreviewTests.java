@@ -0,0 +1,109 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import actions.Actions;
+import actions.EnvelopeSnapshot;
+import actions.Preview;
+import benchmarks.BudgetWorkload;
+import data.Database;
+import data.InMemoryEnvelopeStore;
+import dataObjects.Envelope;
+import tickets.ResponseTicket;
+
+//EnvelopeSnapshot works deposits and withdrawals out again without saving anything
+//every preview must move the same money as the action run right after it, and fail when the action does
+class PreviewTests {
+
+	private final Random random = new Random(25);
+
+	@AfterEach
+	void closeStore() {
+		Database.useStore(null);
+	}
+
+	@Test
+	void smallBudgets() {
+		for(int trial = 0; trial < 200; trial++) {
+			compare(1 + random.nextInt(25), 20);
+		}
+	}
+
+	@Test
+	void largeBudgets() {
+		for(int trial = 0; trial < 4; trial++) {
+			compare(500 + random.nextInt(1500), 100);
+		}
+	}
+
+	//a generated budget and a mix of previewed deposits and withdrawals, with transfers in between to move money around
+	private void compare(int envelopes, int operations) {
+		Database.useStore(new InMemoryEnvelopeStore());
+		Database.createNewDatabase();
+		assertTrue(Database.addEnvelopes(BudgetWorkload.budget(envelopes, random)), "budget was not added");
+
+		for(int operation = 0; operation < operations; operation++) {
+			String name = "envelope " + random.nextInt(envelopes);
+			switch(random.nextInt(4)) {
+				case 0: {
+					BigDecimal amount = money(1 + random.nextInt(50_000));
+					check("deposit into " + name, EnvelopeSnapshot.take().previewDeposit(name, amount), () -> Actions.Deposit(Database.getEnvelope(name), amount));
+				} break;
+				case 1: {
+					BigDecimal amount = money(1 + random.nextInt(random.nextBoolean() ? 5_000 : 2_000_000));
+					check("deposit into all", EnvelopeSnapshot.take().previewDeposit(null, amount), () -> Actions.Deposit(null, amount));
+				} break;
+				case 2: {
+					//sometimes more than the whole balance, so the withdrawal overdrafts
+					BigDecimal amount = random.nextInt(10) == 0 ? Database.getBalance().add(money(1 + random.nextInt(10_000))) : money(1 + random.nextInt(30_000));
+					check("withdraw from " + name, EnvelopeSnapshot.take().previewWithdraw(name, amount), () -> Actions.Withdraw("", Database.getEnvelope(name), amount));
+				} break;
+				default: {
+					Envelope from = Database.getEnvelope(name);
+					if(from.getAmount().signum() == 0) break;
+					BigDecimal amount = money(1 + random.nextInt((int) Math.min(from.getAmount().movePointRight(2).longValue(), 20_000)));
+					Actions.Transfer(from, Database.getEnvelope("envelope " + random.nextInt(envelopes)), amount);
+				}
+			}
+		}
+	}
+
+	//runs the action and compares what it did to every envelope with the preview taken just before it
+	private void check(String operation, Preview preview, Supplier<ResponseTicket> action) {
+		Map<String, BigDecimal> before = amounts();
+		ResponseTicket response = action.get();
+		Map<String, BigDecimal> after = amounts();
+
+		for(Map.Entry<String, BigDecimal> entry : after.entrySet()) {
+			BigDecimal moved = entry.getValue().subtract(before.get(entry.getKey()));
+			BigDecimal previewed = preview.getDelta(entry.getKey());
+			assertTrue(moved.compareTo(previewed) == 0, operation + " of $" + preview.getAmount() + ": " + entry.getKey() + " moved $" + moved
+					+ ", the preview said $" + previewed);
+		}
+
+		assertEquals(!preview.isValid(), response.hasErrorMessage(), operation + " of $" + preview.getAmount() + ": preview error " + preview.getError()
+				+ ", action errors " + response.getErrorMessages());
+		if(!preview.isValid()) {
+			assertTrue(response.getErrorMessages().contains(preview.getError()), operation + ": the action did not report " + preview.getError());
+		}
+	}
+
+	private static Map<String, BigDecimal> amounts() {
+		Map<String, BigDecimal> amounts = new HashMap<>();
+		for(Envelope e : Database.getEnvelopes()) amounts.put(e.getName(), e.getAmount());
+		return amounts;
+	}
+
+	private static BigDecimal money(long cents) {
+		return BigDecimal.valueOf(cents, 2);
+	}
+}